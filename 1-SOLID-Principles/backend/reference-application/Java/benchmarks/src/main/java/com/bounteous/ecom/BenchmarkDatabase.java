@@ -0,0 +1,122 @@
+package com.bounteous.ecom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// One manager shared by all benchmark threads, on a catalog padded to catalogSize with BENCH- products.
+// backend=postgres runs every cart operation against the tables; backend=write-behind keeps carts in the
+// in-process CartStore so cart operations never leave the JVM; backend=memory runs on InMemoryStore with no
+// database at all. checkoutBatch > 0 group-commits checkouts, up to that many per transaction, on
+// checkoutCommitters connections. Everything created in the database is removed on tear-down.
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+    @Param({"postgres", "write-behind", "memory"})
+    public String backend;
+
+    @Param({"100", "10000"})
+    public int catalogSize;
+
+    @Param({"0"})
+    public int checkoutBatch;
+
+    @Param({"1"})
+    public int checkoutCommitters;
+
+    ConnectionPool pool;
+    EcommerceManager manager;
+    int[] productIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        if (backend.equals("memory")) {
+            setUpInMemory();
+            return;
+        }
+        ConnectionPoolSettings settings = new ConnectionPoolSettings();
+        settings.setMaxSize(64);
+        pool = new ConnectionPool(settings);
+        cleanUp();
+        seedProducts();
+        manager = new EcommerceManager(pool);
+        if (backend.equals("write-behind")) {
+            manager.enableWriteBehindCarts(Duration.ofSeconds(1));
+        }
+        if (checkoutBatch > 0) {
+            manager.enableCheckoutBatching(checkoutCommitters, checkoutBatch, Duration.ZERO);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        manager.close();
+        if (pool == null) return;
+        cleanUp();
+        pool.close();
+    }
+
+    int newCustomerWithCart() throws SQLException {
+        String email = "bench-" + UUID.randomUUID() + "@example.com";
+        int customerId = manager.createCustomer(email, "Bench", "Shopper", "555-0400", "1 Benchmark Rd");
+        manager.createCart(customerId);
+        return customerId;
+    }
+
+    private void setUpInMemory() throws SQLException {
+        InMemoryStore store = InMemoryStore.withSampleData();
+        for (int n = 1; n <= catalogSize - 8; n++) {
+            store.insertProduct("Bench product " + n, "Benchmark filler", (1 + n % 500) * 100 + 99, "BENCH-" + n, "Bench", 1000);
+        }
+        productIds = new int[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            productIds[i] = i + 1;
+        }
+        manager = new EcommerceManager(store);
+    }
+
+    private void seedProducts() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            PreparedStatement insert = conn.prepareStatement(
+                "INSERT INTO products (name, description, price, sku, category, stock_quantity) " +
+                "SELECT 'Bench product ' || n, 'Benchmark filler', 1 + (n % 500) + 0.99, 'BENCH-' || n, 'Bench', 1000 " +
+                "FROM generate_series(1, GREATEST(0, ? - (SELECT COUNT(*) FROM products))) AS n");
+            insert.setInt(1, catalogSize);
+            insert.executeUpdate();
+
+            ResultSet rs = conn.createStatement().executeQuery("SELECT id FROM products ORDER BY id LIMIT " + catalogSize);
+            List<Integer> ids = new ArrayList<>();
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+            productIds = ids.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    private void cleanUp() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            Statement stmt = conn.createStatement();
+            String benchOrders = "SELECT o.id FROM orders o JOIN customers c ON o.customer_id = c.id WHERE c.email LIKE 'bench-%'";
+            String benchCarts = "SELECT ca.id FROM carts ca JOIN customers c ON ca.customer_id = c.id WHERE c.email LIKE 'bench-%'";
+            stmt.executeUpdate("DELETE FROM invoices WHERE order_id IN (" + benchOrders + ")");
+            stmt.executeUpdate("DELETE FROM order_items WHERE order_id IN (" + benchOrders + ")");
+            stmt.executeUpdate("DELETE FROM orders WHERE id IN (" + benchOrders + ")");
+            stmt.executeUpdate("DELETE FROM cart_items WHERE cart_id IN (" + benchCarts + ")");
+            stmt.executeUpdate("DELETE FROM carts WHERE id IN (" + benchCarts + ")");
+            stmt.executeUpdate("DELETE FROM customers WHERE email LIKE 'bench-%'");
+            stmt.executeUpdate("DELETE FROM products WHERE sku LIKE 'BENCH-%'");
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.bounteous.ecom;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the benchmarks once per thread count with the GC profiler attached, so every result row carries its
+// allocation rate (gc.alloc.rate.norm = bytes per operation). JMH cannot sweep thread counts through @Param.
+//   java -cp target/benchmarks.jar com.bounteous.ecom.BenchmarkMain [threads, e.g. 1,4,16] [include regex]
+public class BenchmarkMain {
+    public static void main(String[] args) throws RunnerException {
+        String threadCounts = args.length > 0 ? args[0] : "1,4,16";
+        String include = args.length > 1 ? args[1] : "com.bounteous.ecom.*Benchmarks";
+        for (String threads : threadCounts.split(",")) {
+            Options options = new OptionsBuilder()
+                .include(include)
+                .threads(Integer.parseInt(threads.trim()))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-result-" + threads.trim() + "-threads.json")
+                .build();
+            new Runner(options).run();
+        }
+    }
+}
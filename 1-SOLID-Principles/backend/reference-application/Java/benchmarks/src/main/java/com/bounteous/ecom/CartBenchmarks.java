@@ -0,0 +1,105 @@
+package com.bounteous.ecom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Cart hot paths. Every benchmark thread shops as its own customer whose cart holds cartSize distinct products.
+// addToCart changes the quantity of a product already in the cart, alternating +1 and -1, so neither the cart
+// size nor the line totals grow however many millions of operations run. reorderOneByOne and addAllToCart do the
+// same to every line of the cart at once, as a reorder does: one addToCart per line against one addAllToCart.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Decom.log.level=WARN")
+public class CartBenchmarks {
+
+    @State(Scope.Thread)
+    public static class Shopper {
+        @Param({"1", "10", "50"})
+        public int cartSize;
+
+        int customerId;
+        int[] cartProductIds;
+        int next;
+        int delta = 1;
+        // Every cart line +1, and every cart line -1
+        Map<Integer, Integer> reorderUp;
+        Map<Integer, Integer> reorderDown;
+        boolean up = true;
+
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkDatabase db) throws SQLException {
+            customerId = db.newCustomerWithCart();
+            cartProductIds = new int[cartSize];
+            int offset = (int) (Math.random() * db.productIds.length);
+            for (int i = 0; i < cartSize; i++) {
+                cartProductIds[i] = db.productIds[(offset + i) % db.productIds.length];
+                db.manager.addToCart(customerId, cartProductIds[i], 1);
+            }
+            reorderUp = new LinkedHashMap<>();
+            reorderDown = new LinkedHashMap<>();
+            for (int productId : cartProductIds) {
+                reorderUp.put(productId, 1);
+                reorderDown.put(productId, -1);
+            }
+        }
+
+        Map<Integer, Integer> nextReorder() {
+            up = !up;
+            return up ? reorderDown : reorderUp;
+        }
+
+        // Every product gets +1 on one pass over the cart and -1 on the next
+        void advance() {
+            if (++next == cartProductIds.length) {
+                next = 0;
+                delta = -delta;
+            }
+        }
+    }
+
+    @Benchmark
+    public void addToCart(BenchmarkDatabase db, Shopper shopper) throws SQLException {
+        db.manager.addToCart(shopper.customerId, shopper.cartProductIds[shopper.next], shopper.delta);
+        shopper.advance();
+    }
+
+    @Benchmark
+    public void reorderOneByOne(BenchmarkDatabase db, Shopper shopper) throws SQLException {
+        for (Map.Entry<Integer, Integer> line : shopper.nextReorder().entrySet()) {
+            db.manager.addToCart(shopper.customerId, line.getKey(), line.getValue());
+        }
+    }
+
+    @Benchmark
+    public void addAllToCart(BenchmarkDatabase db, Shopper shopper, Blackhole blackhole) throws SQLException {
+        blackhole.consume(db.manager.addAllToCart(shopper.customerId, shopper.nextReorder()));
+    }
+
+    @Benchmark
+    public void getCartByCustomerId(BenchmarkDatabase db, Shopper shopper, Blackhole blackhole) throws SQLException {
+        blackhole.consume(db.manager.getCartByCustomerId(shopper.customerId));
+    }
+
+    @Benchmark
+    public double calculateCartTotal(BenchmarkDatabase db, Shopper shopper) throws SQLException {
+        return db.manager.calculateCartTotal(shopper.customerId);
+    }
+}
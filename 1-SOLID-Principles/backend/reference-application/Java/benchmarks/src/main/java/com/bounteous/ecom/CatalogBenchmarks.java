@@ -0,0 +1,38 @@
+package com.bounteous.ecom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Catalog reads: the in-memory lookup that addToCart relies on, and a keyset page straight from the table
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Decom.log.level=WARN")
+@State(Scope.Benchmark)
+public class CatalogBenchmarks {
+
+    @Benchmark
+    public void findById(BenchmarkDatabase db, Blackhole blackhole) throws SQLException {
+        int[] ids = db.productIds;
+        blackhole.consume(db.manager.getProductCatalog().findById(ids[ThreadLocalRandom.current().nextInt(ids.length)]));
+    }
+
+    @Benchmark
+    public void getProductsPage(BenchmarkDatabase db, Blackhole blackhole) throws SQLException {
+        int[] ids = db.productIds;
+        blackhole.consume(db.manager.getProductsPage(ids[ThreadLocalRandom.current().nextInt(ids.length)], 50, null));
+    }
+}
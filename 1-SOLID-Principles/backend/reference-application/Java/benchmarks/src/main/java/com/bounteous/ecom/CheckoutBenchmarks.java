@@ -0,0 +1,55 @@
+package com.bounteous.ecom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// Full checkout of a cartSize-line cart. The cart is refilled before every invocation, outside the measurement;
+// a checkout takes milliseconds, so the per-invocation setup overhead JMH warns about does not matter here.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Decom.log.level=WARN")
+public class CheckoutBenchmarks {
+
+    @State(Scope.Thread)
+    public static class Checkout {
+        @Param({"1", "10", "50"})
+        public int cartSize;
+
+        int customerId;
+        int offset;
+
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkDatabase db) throws SQLException {
+            customerId = db.newCustomerWithCart();
+            offset = (int) (Math.random() * db.productIds.length);
+        }
+
+        @Setup(Level.Invocation)
+        public void fillCart(BenchmarkDatabase db) throws SQLException {
+            for (int i = 0; i < cartSize; i++) {
+                db.manager.addToCart(customerId, db.productIds[(offset + i) % db.productIds.length], 1);
+            }
+        }
+    }
+
+    @Benchmark
+    public void processOrder(BenchmarkDatabase db, Checkout checkout, Blackhole blackhole) throws SQLException {
+        blackhole.consume(db.manager.processOrder(checkout.customerId));
+    }
+}
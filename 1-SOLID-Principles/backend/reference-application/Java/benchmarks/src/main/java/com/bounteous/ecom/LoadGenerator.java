@@ -0,0 +1,263 @@
+package com.bounteous.ecom;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs many simulated shoppers against one EcommerceManager and reports p50/p99/p99.9 latency per operation.
+// mode=open starts operations at a fixed arrival rate no matter how slow the responses are, and times each one
+// from the moment it was scheduled, so time spent queued behind a slow call lands in the tail instead of being
+// hidden (coordinated omission). mode=closed runs each shopper back to back; with rate set, every shopper is paced
+// to rate/shoppers and a call that overruns its slot is back-filled with the samples the stall kept from being taken.
+//   java -cp target/benchmarks.jar com.bounteous.ecom.LoadGenerator [key=value ...]
+//   mode=open|closed rate=500 shoppers=200 duration=60 warmup=10 backend=postgres|write-behind|memory catalog=1000
+//   mix=browse:40,add:25,remove:10,view:20,checkout:5
+public class LoadGenerator {
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int PAGE_SIZE = 20;
+
+    enum Operation { BROWSE, ADD, REMOVE, VIEW, CHECKOUT }
+
+    private final EcommerceManager manager;
+    private final int[] productIds;
+    private final List<Shopper> shoppers;
+    private final Operation[] operations;
+    private final double[] cumulativeWeights;
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+
+    LoadGenerator(EcommerceManager manager, int[] productIds, List<Shopper> shoppers, Map<Operation, Double> mix) {
+        this.manager = manager;
+        this.productIds = productIds;
+        this.shoppers = shoppers;
+        this.operations = mix.keySet().toArray(new Operation[0]);
+        this.cumulativeWeights = new double[operations.length];
+        double total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += mix.get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(HIGHEST_TRACKABLE_NANOS, 3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("ecom.log.level") == null) {
+            System.setProperty("ecom.log.level", "WARN");
+        }
+        Map<String, String> options = parseOptions(args);
+        String mode = options.getOrDefault("mode", "open");
+        int rate = Integer.parseInt(options.getOrDefault("rate", "500"));
+        int shopperCount = Integer.parseInt(options.getOrDefault("shoppers", "200"));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "60")));
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup", "10")));
+        Map<Operation, Double> mix = parseMix(options.getOrDefault("mix", "browse:40,add:25,remove:10,view:20,checkout:5"));
+
+        BenchmarkDatabase database = new BenchmarkDatabase();
+        database.backend = options.getOrDefault("backend", "postgres");
+        database.catalogSize = Integer.parseInt(options.getOrDefault("catalog", "1000"));
+        database.setUp();
+        try {
+            List<Shopper> shoppers = new ArrayList<>();
+            for (int i = 0; i < shopperCount; i++) {
+                shoppers.add(new Shopper(database.newCustomerWithCart()));
+            }
+            LoadGenerator generator = new LoadGenerator(database.manager, database.productIds, shoppers, mix);
+            System.out.printf("%s loop, %s, %d shoppers, %d products, warm-up %ds, measuring %ds%n",
+                mode, rate > 0 ? rate + " ops/s" : "unpaced", shopperCount, database.productIds.length,
+                TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+            if (mode.equals("open")) {
+                if (rate <= 0) throw new IllegalArgumentException("mode=open needs rate > 0");
+                generator.runOpenLoop(rate, warmupNanos, durationNanos);
+            } else if (mode.equals("closed")) {
+                generator.runClosedLoop(rate, warmupNanos, durationNanos);
+            } else {
+                throw new IllegalArgumentException("mode must be open or closed, not " + mode);
+            }
+        } finally {
+            database.tearDown();
+        }
+    }
+
+    // One dispatcher issues operations on schedule; each runs on its own (virtual, when available) thread so a
+    // stalled call never delays the next arrival. Latency is measured from the scheduled start.
+    void runOpenLoop(int rate, long warmupNanos, long durationNanos) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        ExecutorService workers = VirtualThreads.newPerTaskExecutor("ecom-load", 512);
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        for (long i = 0; ; i++) {
+            long scheduledAt = start + i * intervalNanos;
+            if (scheduledAt >= end) break;
+            parkUntil(scheduledAt);
+            Operation operation = pickOperation();
+            Shopper shopper = shoppers.get(ThreadLocalRandom.current().nextInt(shoppers.size()));
+            boolean measured = scheduledAt >= measureFrom;
+            workers.execute(() -> {
+                boolean ok = execute(operation, shopper);
+                if (measured) {
+                    record(operation, System.nanoTime() - scheduledAt, 0, ok);
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+        report(System.nanoTime() - measureFrom);
+    }
+
+    // Each shopper waits for its previous call before issuing the next. Unpaced (rate=0) this measures capacity;
+    // service time is all it can report, since there is no schedule to fall behind.
+    void runClosedLoop(int rate, long warmupNanos, long durationNanos) throws InterruptedException {
+        long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) * shoppers.size() / rate : 0;
+        ExecutorService workers = VirtualThreads.newPerTaskExecutor("ecom-load", shoppers.size());
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        for (Shopper shopper : shoppers) {
+            workers.execute(() -> {
+                // Stagger the first call so paced shoppers do not all fire together
+                long next = start + (intervalNanos > 0 ? ThreadLocalRandom.current().nextLong(intervalNanos) : 0);
+                while (next < end) {
+                    parkUntil(next);
+                    Operation operation = pickOperation();
+                    long startedAt = System.nanoTime();
+                    boolean ok = execute(operation, shopper);
+                    if (startedAt >= measureFrom) {
+                        record(operation, System.nanoTime() - startedAt, intervalNanos, ok);
+                    }
+                    next = intervalNanos > 0 ? next + intervalNanos : System.nanoTime();
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(durationNanos + warmupNanos + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS);
+        report(System.nanoTime() - measureFrom);
+    }
+
+    private boolean execute(Operation operation, Shopper shopper) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            switch (operation) {
+                case BROWSE -> manager.getProductsPage(productIds[random.nextInt(productIds.length)] - 1, PAGE_SIZE, null);
+                case ADD -> {
+                    int productId = productIds[random.nextInt(productIds.length)];
+                    manager.addToCart(shopper.customerId, productId, 1);
+                    shopper.inCart.push(productId);
+                }
+                case REMOVE -> {
+                    Integer productId = shopper.inCart.poll();
+                    manager.removeFromCart(shopper.customerId, productId != null ? productId : productIds[random.nextInt(productIds.length)]);
+                }
+                case VIEW -> manager.getCartView(shopper.customerId);
+                case CHECKOUT -> {
+                    manager.processOrder(shopper.customerId);
+                    shopper.inCart.clear();
+                }
+            }
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void record(Operation operation, long latencyNanos, long expectedIntervalNanos, boolean ok) {
+        if (!ok) errors.get(operation).increment();
+        long value = Math.min(latencyNanos, HIGHEST_TRACKABLE_NANOS);
+        if (expectedIntervalNanos > 0) {
+            recorders.get(operation).recordValueWithExpectedInterval(value, expectedIntervalNanos);
+        } else {
+            recorders.get(operation).recordValue(value);
+        }
+    }
+
+    private Operation pickOperation() {
+        double roll = ThreadLocalRandom.current().nextDouble(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < operations.length; i++) {
+            if (roll < cumulativeWeights[i]) return operations[i];
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        Histogram all = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        long allErrors = 0;
+        System.out.printf("%-10s %9s %7s %9s %10s %10s %10s %10s%n",
+            "operation", "count", "errors", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Operation operation : operations) {
+            Histogram histogram = recorders.get(operation).getIntervalHistogram();
+            long operationErrors = errors.get(operation).sum();
+            printRow(operation.name().toLowerCase(), histogram, operationErrors, seconds);
+            all.add(histogram);
+            allErrors += operationErrors;
+        }
+        printRow("all", all, allErrors, seconds);
+    }
+
+    private static void printRow(String name, Histogram histogram, long errorCount, double seconds) {
+        System.out.printf("%-10s %9d %7d %9.1f %10.2f %10.2f %10.2f %10.2f%n",
+            name, histogram.getTotalCount(), errorCount, histogram.getTotalCount() / seconds,
+            millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+            millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Expected key=value, got " + arg);
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    // "browse:40,add:25" -> weights; operations left out are never issued
+    static Map<Operation, Double> parseMix(String spec) {
+        Map<Operation, Double> mix = new EnumMap<>(Operation.class);
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.split(":");
+            double weight = Double.parseDouble(parts[1].trim());
+            if (weight > 0) {
+                mix.put(Operation.valueOf(parts[0].trim().toUpperCase()), weight);
+            }
+        }
+        if (mix.isEmpty()) throw new IllegalArgumentException("Operation mix is empty: " + spec);
+        return mix;
+    }
+
+    // A customer with a cart, plus the products it added and has not removed yet (so removes mostly hit)
+    static final class Shopper {
+        private final int customerId;
+        private final ConcurrentLinkedDeque<Integer> inCart = new ConcurrentLinkedDeque<>();
+
+        Shopper(int customerId) {
+            this.customerId = customerId;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.bounteous.ecom;
+
+// Outcome of a single-statement add-to-cart
+public enum AddToCartResult {
+    ADDED,
+    UPDATED,
+    CUSTOMER_NOT_FOUND,
+    CART_NOT_FOUND,
+    PRODUCT_NOT_FOUND
+}
@@ -0,0 +1,251 @@
+package com.bounteous.ecom;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Leveled logger that never blocks the caller. Messages are "{}" templates whose arguments are copied as-is into a
+// preallocated ring buffer slot; a single background thread formats and writes them, so no string is built on the
+// calling thread. Disabled levels return before anything is touched, and a full buffer drops the message and
+// counts it instead of waiting.
+// The ring is a bounded multi-producer queue with per-slot sequence numbers, so producers only CAS the tail.
+// An idle writer parks until a producer unparks it, so a quiet logger costs no wakeups.
+public final class AsyncLogger implements AutoCloseable {
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final int MAX_ARGS = 8;
+    private static final long FLUSH_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final DateTimeFormatter TIMESTAMP =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final LongAdder dropped = new LongAdder();
+    private final Writer out;
+    private final Thread writerThread;
+    private final StringBuilder line = new StringBuilder(256);
+    private volatile Level threshold;
+    private volatile boolean running = true;
+    private volatile boolean writerParked;
+
+    public AsyncLogger(Level threshold, int capacity, Writer out) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(i);
+        }
+        this.mask = size - 1;
+        this.threshold = threshold;
+        this.out = out;
+        this.writerThread = new Thread(this::drainLoop, "ecom-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // Process-wide logger; level and destination come from -Decom.log.level and -Decom.log.file (default stdout)
+    public static AsyncLogger getDefault() {
+        return DefaultLogger.INSTANCE;
+    }
+
+    private static final class DefaultLogger {
+        static final AsyncLogger INSTANCE = create();
+
+        private static AsyncLogger create() {
+            Level level = Level.valueOf(System.getProperty("ecom.log.level", "INFO").toUpperCase());
+            String file = System.getProperty("ecom.log.file");
+            Writer writer;
+            try {
+                writer = file == null
+                    ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                    : new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open log file " + file, e);
+            }
+            AsyncLogger logger = new AsyncLogger(level, 8192, new BufferedWriter(writer, 64 * 1024));
+            Runtime.getRuntime().addShutdownHook(new Thread(logger::close, "ecom-log-shutdown"));
+            return logger;
+        }
+    }
+
+    public boolean isEnabled(Level level) { return level.compareTo(threshold) >= 0; }
+    public void setLevel(Level level) { this.threshold = level; }
+    public long getDropped() { return dropped.sum(); }
+
+    public void debug(String template, Object... args) { log(Level.DEBUG, null, template, args); }
+    public void info(String template, Object... args) { log(Level.INFO, null, template, args); }
+    public void warn(String template, Object... args) { log(Level.WARN, null, template, args); }
+    public void error(String template, Object... args) { log(Level.ERROR, null, template, args); }
+
+    // Structured record written as "event=<name> key=value ..."; keysAndValues alternate key, value
+    public void event(Level level, String name, Object... keysAndValues) {
+        log(level, name, null, keysAndValues);
+    }
+
+    private void log(Level level, String event, String template, Object... args) {
+        if (!isEnabled(level)) return;
+        long timestamp = System.currentTimeMillis();
+        while (true) {
+            long position = tail.get();
+            Slot slot = slots[(int) position & mask];
+            long difference = slot.sequence - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slot.level = level;
+                    slot.event = event;
+                    slot.template = template;
+                    slot.timestamp = timestamp;
+                    slot.thread = Thread.currentThread().getName();
+                    int count = Math.min(args.length, MAX_ARGS);
+                    System.arraycopy(args, 0, slot.args, 0, count);
+                    slot.argCount = count;
+                    slot.sequence = position + 1;
+                    if (writerParked) {
+                        LockSupport.unpark(writerThread);
+                    }
+                    return;
+                }
+            } else if (difference < 0) {
+                // The writer has not freed this slot yet: the buffer is full
+                dropped.increment();
+                return;
+            }
+        }
+    }
+
+    // Blocks until everything logged so far has been written (for tests and orderly shutdown)
+    public void flush() {
+        long target = tail.get();
+        while (head < target && writerThread.isAlive()) {
+            LockSupport.parkNanos(FLUSH_PARK_NANOS);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        while (true) {
+            boolean wrote = false;
+            long position = head;
+            Slot slot = slots[(int) position & mask];
+            while (slot.sequence == position + 1) {
+                write(slot);
+                slot.clear();
+                slot.sequence = position + slots.length;
+                head = ++position;
+                slot = slots[(int) position & mask];
+                wrote = true;
+            }
+            if (wrote) {
+                flushQuietly();
+            } else if (!running) {
+                return;
+            } else {
+                parkUntilPublished(slot, position);
+            }
+        }
+    }
+
+    // Announces the park before re-checking the slot: a producer either publishes before the re-check, or sees
+    // writerParked after publishing and unparks (a permit given before park() is not lost)
+    private void parkUntilPublished(Slot slot, long position) {
+        writerParked = true;
+        if (slot.sequence != position + 1 && running) {
+            LockSupport.park(this);
+        }
+        writerParked = false;
+    }
+
+    private void write(Slot slot) {
+        line.setLength(0);
+        TIMESTAMP.formatTo(Instant.ofEpochMilli(slot.timestamp), line);
+        line.append(' ').append(slot.level).append(" [").append(slot.thread).append("] ");
+        if (slot.event != null) {
+            line.append("event=").append(slot.event);
+            for (int i = 0; i + 1 < slot.argCount; i += 2) {
+                line.append(' ').append(slot.args[i]).append('=').append(slot.args[i + 1]);
+            }
+        } else {
+            appendFormatted(slot.template, slot.args, slot.argCount);
+        }
+        line.append(System.lineSeparator());
+        try {
+            out.append(line);
+        } catch (IOException e) {
+            dropped.increment();
+        }
+    }
+
+    private void appendFormatted(String template, Object[] args, int argCount) {
+        int argIndex = 0;
+        int start = 0;
+        int placeholder;
+        while (argIndex < argCount && (placeholder = template.indexOf("{}", start)) >= 0) {
+            line.append(template, start, placeholder).append(args[argIndex++]);
+            start = placeholder + 2;
+        }
+        line.append(template, start, template.length());
+        // A Throwable left over after the placeholders is written with its stack trace, as SLF4J does
+        if (argIndex < argCount && args[argCount - 1] instanceof Throwable throwable) {
+            StringWriter trace = new StringWriter();
+            throwable.printStackTrace(new PrintWriter(trace));
+            line.append(System.lineSeparator()).append(trace.toString().stripTrailing());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            // Nothing sensible to report to; the next write will try again
+        }
+    }
+
+    private static final class Slot {
+        private volatile long sequence;
+        private final Object[] args = new Object[MAX_ARGS];
+        private int argCount;
+        private Level level;
+        private String event;
+        private String template;
+        private String thread;
+        private long timestamp;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        // Drop references so logged objects are not kept alive by the buffer
+        void clear() {
+            for (int i = 0; i < argCount; i++) {
+                args[i] = null;
+            }
+            event = null;
+            template = null;
+            thread = null;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.bounteous.ecom;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Write-behind store for shopping carts. While enabled, the in-memory Cart is the source of truth: cart mutations
+// only touch memory and mark the cart dirty, and a background flusher rewrites the lines of all dirty carts in one
+// replaceCartItems call (one batched transaction with PostgresStore) per interval. Repeated add/remove churn on a
+// cart therefore costs one write per flush. Carts are recovered from the store on startup and loaded on demand if
+// they were created elsewhere. If the batch fails, each cart is retried on its own so one bad cart cannot hold back
+// the rest; a cart that breaks a constraint (its cart or a product was deleted) is dropped to the dead-letter list.
+public class CartStore implements AutoCloseable {
+    private static final AsyncLogger log = AsyncLogger.getDefault();
+
+    public record DeadLetter(Cart cart, SQLException error) {
+    }
+
+    private final EcommerceStore store;
+    private final ConcurrentHashMap<Integer, Cart> cartsByCustomer = new ConcurrentHashMap<>();
+    private final Set<Integer> dirtyCustomers = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<DeadLetter> deadLetters = new ConcurrentLinkedQueue<>();
+    // Serializes flushes so an older snapshot of a cart can never be committed after a newer one
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+
+    public CartStore(EcommerceStore store, Duration flushInterval) {
+        this.store = store;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ecom-cart-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushInBackground, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // Loads every cart and its lines in one pass
+    public void recover() throws SQLException {
+        for (Cart cart : store.findAllCarts()) {
+            cartsByCustomer.putIfAbsent(cart.getCustomerId(), cart);
+        }
+    }
+
+    // Returns a copy of the customer's cart, or null if the customer has none
+    public Cart get(int customerId) throws SQLException {
+        Cart cart = cartFor(customerId);
+        if (cart == null) return null;
+        synchronized (cart) {
+            List<CartItem> items = new ArrayList<>(cart.getItems().size());
+            for (CartItem item : cart.getItems()) {
+                items.add(copy(item));
+            }
+            return new Cart(cart.getId(), cart.getCustomerId(), items);
+        }
+    }
+
+    public void register(Cart cart) {
+        cartsByCustomer.putIfAbsent(cart.getCustomerId(), new Cart(cart.getId(), cart.getCustomerId(), new ArrayList<>()));
+    }
+
+    public AddToCartResult add(int customerId, Product product, int quantity) throws SQLException {
+        Cart cart = cartFor(customerId);
+        if (cart == null) return AddToCartResult.CART_NOT_FOUND;
+        AddToCartResult result;
+        synchronized (cart) {
+            CartItem existing = find(cart, product.getId());
+            if (existing != null) {
+                existing.setQuantity(existing.getQuantity() + quantity);
+                existing.setUnitPriceCents(product.getPriceCents());
+                existing.setTotalPriceCents(existing.getQuantity() * product.getPriceCents());
+                result = AddToCartResult.UPDATED;
+            } else {
+                cart.getItems().add(new CartItem(0, product.getId(), quantity, product.getPriceCents(),
+                    product.getPriceCents() * quantity, product.getName()));
+                result = AddToCartResult.ADDED;
+            }
+        }
+        dirtyCustomers.add(customerId);
+        return result;
+    }
+
+    public boolean remove(int customerId, int productId) throws SQLException {
+        Cart cart = cartFor(customerId);
+        if (cart == null) return false;
+        synchronized (cart) {
+            cart.getItems().removeIf(item -> item.getProductId() == productId);
+        }
+        dirtyCustomers.add(customerId);
+        return true;
+    }
+
+    // Takes ordered quantities out of the in-memory cart after checkout has cleared cart_items. Anything added
+    // after the order snapshot was taken stays in the cart and is written back by the next flush.
+    public void removeOrdered(int customerId, List<CartItem> orderedItems) throws SQLException {
+        Cart cart = cartFor(customerId);
+        if (cart == null) return;
+        boolean remaining;
+        synchronized (cart) {
+            for (CartItem ordered : orderedItems) {
+                CartItem item = find(cart, ordered.getProductId());
+                if (item == null) continue;
+                int left = item.getQuantity() - ordered.getQuantity();
+                if (left > 0) {
+                    item.setQuantity(left);
+                    item.setTotalPriceCents(left * item.getUnitPriceCents());
+                } else {
+                    cart.getItems().remove(item);
+                }
+            }
+            remaining = !cart.getItems().isEmpty();
+        }
+        if (remaining) {
+            dirtyCustomers.add(customerId);
+        }
+    }
+
+    // Drops a cart whose rows are gone (e.g. the customer was deleted) without writing it back
+    public void forget(int customerId) {
+        cartsByCustomer.remove(customerId);
+        dirtyCustomers.remove(customerId);
+    }
+
+    public int getDirtyCartCount() {
+        return dirtyCustomers.size();
+    }
+
+    public List<DeadLetter> getDeadLetters() {
+        return new ArrayList<>(deadLetters);
+    }
+
+    // Synchronously writes one customer's cart if it has unflushed changes (used before checkout reads it)
+    public void flush(int customerId) throws SQLException {
+        flushLock.lock();
+        try {
+            if (dirtyCustomers.remove(customerId)) {
+                writeCarts(List.of(customerId));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public void flushAll() throws SQLException {
+        flushLock.lock();
+        try {
+            List<Integer> customerIds = new ArrayList<>();
+            for (Iterator<Integer> it = dirtyCustomers.iterator(); it.hasNext(); ) {
+                customerIds.add(it.next());
+                it.remove();
+            }
+            if (!customerIds.isEmpty()) {
+                writeCarts(customerIds);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        flusher.shutdownNow();
+        flushAll();
+    }
+
+    private void flushInBackground() {
+        try {
+            flushAll();
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Cart flush failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    // Replaces the stored lines of the given carts with their current in-memory lines in one batch, falling back to
+    // one cart at a time if the batch fails. Throws the first failure once every cart has been tried.
+    private void writeCarts(List<Integer> customerIds) throws SQLException {
+        List<Cart> snapshots = new ArrayList<>(customerIds.size());
+        for (int customerId : customerIds) {
+            Cart snapshot = get(customerId);
+            if (snapshot != null) {
+                snapshots.add(snapshot);
+            }
+        }
+        if (snapshots.isEmpty()) return;
+        try {
+            store.replaceCartItems(snapshots);
+            return;
+        } catch (SQLException | RuntimeException e) {
+            if (snapshots.size() == 1) {
+                failed(snapshots.get(0), e);
+                throw e;
+            }
+        }
+        Exception firstFailure = null;
+        for (Cart snapshot : snapshots) {
+            try {
+                store.replaceCartItems(List.of(snapshot));
+            } catch (SQLException | RuntimeException e) {
+                failed(snapshot, e);
+                if (firstFailure == null) firstFailure = e;
+            }
+        }
+        if (firstFailure instanceof SQLException sqlException) throw sqlException;
+        if (firstFailure instanceof RuntimeException runtimeException) throw runtimeException;
+    }
+
+    // Nothing of the cart was written. Integrity violations (SQLState class 23) fail the same way on every retry, so
+    // the cart is dead-lettered and forgotten, and the next access reloads what the store holds; anything else
+    // leaves it dirty for the next flush.
+    private void failed(Cart snapshot, Exception e) {
+        if (e instanceof SQLException sqlException && sqlException.getSQLState() != null
+            && sqlException.getSQLState().startsWith("23")) {
+            deadLetters.add(new DeadLetter(snapshot, sqlException));
+            forget(snapshot.getCustomerId());
+            log.error("Cart {} dropped, it cannot be written: {}", snapshot.getId(), e.getMessage());
+        } else {
+            dirtyCustomers.add(snapshot.getCustomerId());
+        }
+    }
+
+    private Cart cartFor(int customerId) throws SQLException {
+        Cart cart = cartsByCustomer.get(customerId);
+        if (cart != null) return cart;
+        // Not recovered at startup (e.g. created by another instance): load it once
+        Cart loaded = store.findCart(customerId);
+        if (loaded == null) return null;
+        Cart existing = cartsByCustomer.putIfAbsent(customerId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private static CartItem find(Cart cart, int productId) {
+        for (CartItem item : cart.getItems()) {
+            if (item.getProductId() == productId) return item;
+        }
+        return null;
+    }
+
+    private static CartItem copy(CartItem item) {
+        return new CartItem(item.getId(), item.getProductId(), item.getQuantity(),
+            item.getUnitPriceCents(), item.getTotalPriceCents(), item.getProductName());
+    }
+}
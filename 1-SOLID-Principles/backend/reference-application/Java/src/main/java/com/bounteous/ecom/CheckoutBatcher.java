@@ -0,0 +1,162 @@
+package com.bounteous.ecom;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Group commit for checkouts. Callers queue their checkout and wait; a committer thread takes the first queued
+// checkout, gathers whatever else arrives within maxWait (up to maxBatchSize) and runs them all through
+// checkoutAll as a single transaction. Under load the cost of a commit is shared by the whole batch, so
+// throughput stops being bounded by commit latency; a checkout that fails is undone on its own and only its
+// caller sees the error. With maxWait zero a batch is whatever queued up while the previous one committed, so an
+// idle system pays nothing; a longer wait builds bigger batches at the price of that much latency. Several
+// committers, each on its own connection, keep the database busy while one of them waits on its commit.
+public class CheckoutBatcher implements AutoCloseable {
+    private static final AsyncLogger log = AsyncLogger.getDefault();
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final EcommerceStore store;
+    private final SalesMetrics salesMetrics;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread[] committers;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder checkouts = new LongAdder();
+    private volatile boolean closed;
+
+    private record Pending(EcommerceStore.CheckoutRequest request, CompletableFuture<EcommerceStore.Checkout> result) {
+    }
+
+    public CheckoutBatcher(EcommerceStore store, SalesMetrics salesMetrics, int committers, int maxBatchSize, Duration maxWait) {
+        if (committers < 1) {
+            throw new IllegalArgumentException("Committer count must be positive: " + committers);
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        }
+        this.store = store;
+        this.salesMetrics = salesMetrics;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.committers = new Thread[committers];
+        for (int i = 0; i < committers; i++) {
+            this.committers[i] = new Thread(this::run, "ecom-checkout-committer-" + (i + 1));
+            this.committers[i].setDaemon(true);
+            this.committers[i].start();
+        }
+    }
+
+    // Same contract as EcommerceStore.checkout. Waits for the batch, uninterruptibly: once queued the checkout
+    // may commit, and the caller must not be told otherwise.
+    public EcommerceStore.Checkout checkout(int customerId, EcommerceStore.CheckoutRules rules) throws SQLException {
+        CompletableFuture<EcommerceStore.Checkout> result = new CompletableFuture<>();
+        // Queued under the same monitor close() takes, so a committer sees it before they can stop
+        synchronized (this) {
+            if (closed) {
+                result = null;
+            } else {
+                queue.add(new Pending(new EcommerceStore.CheckoutRequest(customerId, rules), result));
+            }
+        }
+        if (result == null) {
+            return store.checkout(customerId, rules, salesMetrics);
+        }
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sqlException) throw sqlException;
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            if (cause instanceof Error error) throw error;
+            throw new SQLException("Checkout failed", cause);
+        }
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getCheckouts() {
+        return checkouts.sum();
+    }
+
+    // Commits everything already queued, then stops the committers; later checkouts run on their own
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            for (Thread committer : committers) {
+                committer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            try {
+                Pending first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed && queue.isEmpty()) return;
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Only close() stops a committer, and only once the queue is empty
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        List<EcommerceStore.CheckoutRequest> requests = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            requests.add(pending.request);
+        }
+        try {
+            List<EcommerceStore.CheckoutResult> results = store.checkoutAll(requests, salesMetrics);
+            // Counted before any caller is released, so a caller that reads the counters sees its own batch
+            batches.increment();
+            checkouts.add(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                EcommerceStore.CheckoutResult result = results.get(i);
+                if (result.error() != null) {
+                    batch.get(i).result.completeExceptionally(result.error());
+                } else {
+                    batch.get(i).result.complete(result.checkout());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Checkout batch of {} failed: {}", batch.size(), e.getMessage());
+            for (Pending pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        } finally {
+            // Nobody may be left waiting, whatever went wrong
+            for (Pending pending : batch) {
+                pending.result.completeExceptionally(new SQLException("Checkout batch aborted"));
+            }
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package com.bounteous.ecom;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded JDBC connection pool. Callers borrow with getConnection() and give the connection back with close().
+// Idle connections are kept most-recently-used first so the warmest connection is reused, and a housekeeper
+// thread evicts idle connections, tops the pool back up to minIdle and reports borrowed connections that leak.
+// Each physical connection keeps its own StatementCache, so prepareStatement() for SQL the connection has seen
+// before reuses the existing JDBC statement instead of having the driver parse and plan it again.
+public class ConnectionPool implements AutoCloseable {
+    private static final AsyncLogger log = AsyncLogger.getDefault();
+    private final ConnectionPoolSettings settings;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final LongAdder leaksDetected = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final LongAdder statementCacheEvictions = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(ConnectionPoolSettings settings) {
+        this.settings = settings;
+        this.permits = new Semaphore(settings.getMaxSize(), true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ecom-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Pre-warm; if the database is not up yet the housekeeper keeps retrying
+        fillToMinIdle();
+        long interval = settings.getHousekeepingIntervalMillis();
+        housekeeper.scheduleWithFixedDelay(this::housekeep, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        long requestedAt = System.nanoTime();
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(settings.getMaxWaitMillis(), TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("Timed out after " + settings.getMaxWaitMillis()
+                    + "ms waiting for a connection (" + borrowed.size() + " in use, max " + settings.getMaxSize() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null && !isUsable(pooled)) {
+                destroy(pooled);
+            }
+            if (pooled == null) {
+                pooled = openConnection();
+            }
+            pooled.borrowedAt = System.nanoTime();
+            pooled.leakReported = false;
+            pooled.borrowSite = settings.isCaptureBorrowSite() && settings.getLeakDetectionThresholdMillis() > 0
+                ? new Exception("Connection borrowed by " + Thread.currentThread().getName())
+                : null;
+            borrowed.add(pooled);
+            OperationMetrics.Call call = OperationMetrics.activeCall();
+            if (call != null) {
+                call.connectionAcquired(System.nanoTime() - requestedAt);
+            }
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getTotalConnections() { return totalConnections.get(); }
+    public int getIdleConnections() { return idle.size(); }
+    public int getActiveConnections() { return borrowed.size(); }
+    public int getThreadsAwaitingConnection() { return permits.getQueueLength(); }
+    public long getLeaksDetected() { return leaksDetected.sum(); }
+    public long getStatementCacheHits() { return statementCacheHits.sum(); }
+    public long getStatementCacheMisses() { return statementCacheMisses.sum(); }
+    public long getStatementCacheEvictions() { return statementCacheEvictions.sum(); }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+        // Borrowed connections are destroyed as they come back
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        long idleNanos = System.nanoTime() - pooled.lastReturnedAt;
+        if (idleNanos < TimeUnit.MILLISECONDS.toNanos(settings.getValidationBypassMillis())) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(settings.getValidationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", settings.getUsername());
+        properties.setProperty("password", settings.getPassword());
+        properties.setProperty("prepareThreshold", String.valueOf(settings.getPrepareThreshold()));
+        // Lets executeBatch() send INSERT batches as multi-row INSERTs
+        properties.setProperty("reWriteBatchedInserts", "true");
+        Connection physical = DriverManager.getConnection(settings.getUrl(), properties);
+        totalConnections.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        boolean healthy = pooled.reset();
+        if (closed || !healthy) {
+            destroy(pooled);
+        } else {
+            pooled.lastReturnedAt = System.nanoTime();
+            idle.offerFirst(pooled);
+        }
+        permits.release();
+    }
+
+    private void destroy(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            // Already broken, nothing left to release
+        }
+    }
+
+    private void housekeep() {
+        try {
+            evictIdle();
+            fillToMinIdle();
+            detectLeaks();
+        } catch (RuntimeException e) {
+            log.warn("Connection pool housekeeping failed: {}", e.getMessage());
+        }
+    }
+
+    private void evictIdle() {
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.getIdleTimeoutMillis());
+        long now = System.nanoTime();
+        // Least recently used connections sit at the tail
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && totalConnections.get() > settings.getMinIdle()) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastReturnedAt > idleTimeoutNanos && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+    }
+
+    private void fillToMinIdle() {
+        while (!closed && totalConnections.get() < settings.getMinIdle()) {
+            try {
+                PooledConnection pooled = openConnection();
+                pooled.lastReturnedAt = System.nanoTime();
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                log.warn("Connection pool could not open a connection: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void detectLeaks() {
+        long threshold = settings.getLeakDetectionThresholdMillis();
+        if (threshold <= 0) return;
+        long now = System.nanoTime();
+        for (PooledConnection pooled : borrowed) {
+            long heldMillis = TimeUnit.NANOSECONDS.toMillis(now - pooled.borrowedAt);
+            if (!pooled.leakReported && heldMillis > threshold) {
+                pooled.leakReported = true;
+                leaksDetected.increment();
+                if (pooled.borrowSite != null) {
+                    log.warn("Possible connection leak: connection held for {}ms without being closed", heldMillis,
+                        pooled.borrowSite);
+                } else {
+                    log.warn("Possible connection leak: connection held for {}ms without being closed "
+                        + "(set captureBorrowSite to see where it was borrowed)", heldMillis);
+                }
+            }
+        }
+    }
+
+    // One physical connection plus the bookkeeping the pool needs for it
+    private final class PooledConnection {
+        private final Connection physical;
+        private final List<Statement> openStatements = new ArrayList<>();
+        private final StatementCache statementCache;
+        private volatile long borrowedAt;
+        private volatile long lastReturnedAt;
+        private volatile boolean leakReported;
+        private volatile Exception borrowSite;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statementCache = new StatementCache(settings.getStatementCacheSize(), statementCacheEvictions);
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, new ConnectionHandle(this));
+        }
+
+        PreparedStatement prepareCached(Connection handle, String sql, int autoGeneratedKeys) throws SQLException {
+            StatementCache.StatementKey key = new StatementCache.StatementKey(sql, autoGeneratedKeys);
+            PreparedStatement statement = statementCache.take(key);
+            if (statement != null) {
+                statementCacheHits.increment();
+            } else {
+                statementCacheMisses.increment();
+                statement = physical.prepareStatement(sql, autoGeneratedKeys);
+            }
+            PreparedStatement statementHandle = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class },
+                new StatementHandle(this, handle, key, statement));
+            openStatements.add(statementHandle);
+            return statementHandle;
+        }
+
+        // Clears per-use state and parks the statement in the cache for the next caller with the same SQL
+        void returnToCache(StatementCache.StatementKey key, PreparedStatement statement) {
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.clearWarnings();
+                if (statement.getFetchSize() != 0) {
+                    statement.setFetchSize(0);
+                }
+                statementCache.offer(key, statement);
+            } catch (SQLException e) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                    // The statement is being discarded either way
+                }
+            }
+        }
+
+        // Puts the connection back into a clean state for the next borrower; false if it is no longer usable
+        boolean reset() {
+            for (Statement statement : openStatements) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    // Ignore, the statement is being discarded
+                }
+            }
+            openStatements.clear();
+            try {
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                physical.clearWarnings();
+                return !physical.isClosed();
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+    }
+
+    // The Connection handed to callers. close() returns the physical connection to the pool instead of closing it,
+    // and any use after close() fails so a stale reference cannot touch another borrower's connection.
+    private final class ConnectionHandle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean closed;
+
+        ConnectionHandle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (isCacheablePrepare(method, args)) {
+                int autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                return pooled.prepareCached((Connection) proxy, (String) args[0], autoGeneratedKeys);
+            }
+            Object result = invokeMetered(pooled.physical, method, args);
+            if (result instanceof Statement) {
+                pooled.openStatements.add((Statement) result);
+                if (OperationMetrics.activeCall() != null) {
+                    return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { method.getReturnType() },
+                        (statementProxy, statementMethod, statementArgs) -> invokeMetered(result, statementMethod, statementArgs));
+                }
+            }
+            return result;
+        }
+
+        // Only prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys) go through the cache
+        private boolean isCacheablePrepare(Method method, Object[] args) {
+            if (!method.getName().equals("prepareStatement")) return false;
+            Class<?>[] types = method.getParameterTypes();
+            return types.length == 1 || (types.length == 2 && types[1] == int.class);
+        }
+    }
+
+    // The PreparedStatement handed to callers for a cached statement. close() returns it to the connection's cache.
+    private static final class StatementHandle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final Connection connectionHandle;
+        private final StatementCache.StatementKey key;
+        private final PreparedStatement statement;
+        private boolean closed;
+
+        StatementHandle(PooledConnection pooled, Connection connectionHandle, StatementCache.StatementKey key, PreparedStatement statement) {
+            this.pooled = pooled;
+            this.connectionHandle = connectionHandle;
+            this.key = key;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        pooled.returnToCache(key, statement);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return connectionHandle;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return statement.toString();
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            return invokeMetered(statement, method, args);
+        }
+    }
+
+    // Invokes a JDBC method; inside an instrumented operation, statement executions, commits and rollbacks are
+    // added to its OperationMetrics call as round trips, with their time and rows written. Rows read are counted by
+    // the code reading them (OperationMetrics.readRow), so ResultSets are handed out unwrapped.
+    private static Object invokeMetered(Object target, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        OperationMetrics.Call call = name.startsWith("execute") || name.equals("commit") || name.equals("rollback")
+            ? OperationMetrics.activeCall()
+            : null;
+        long started = call != null ? System.nanoTime() : 0;
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            if (call != null) {
+                call.roundTrip(System.nanoTime() - started);
+            }
+        }
+        if (call == null) {
+            return result;
+        }
+        if (result instanceof Integer || result instanceof Long) {
+            call.rowsWritten(Math.max(0, ((Number) result).longValue()));
+        } else if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                call.rowsWritten(updatedRows(count));
+            }
+        } else if (result instanceof long[]) {
+            for (long count : (long[]) result) {
+                call.rowsWritten(updatedRows(count));
+            }
+        }
+        return result;
+    }
+
+    // Rewritten batch inserts report SUCCESS_NO_INFO per statement; each of ours inserts one row
+    private static long updatedRows(long count) {
+        return count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, count);
+    }
+}
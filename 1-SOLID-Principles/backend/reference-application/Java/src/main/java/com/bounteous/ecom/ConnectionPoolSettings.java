@@ -0,0 +1,55 @@
+package com.bounteous.ecom;
+
+// Tunables for ConnectionPool. Defaults match the docker-compose database used by the course.
+public class ConnectionPoolSettings {
+    private String url = "jdbc:postgresql://localhost:5432/bounteous_ecom";
+    private String username = "postgres";
+    private String password = "postgres123";
+    private int minIdle = 2;
+    private int maxSize = 10;
+    private long maxWaitMillis = 30_000;
+    private long idleTimeoutMillis = 600_000;
+    // Connections returned more recently than this are handed out without a validation round trip
+    private long validationBypassMillis = 500;
+    private int validationTimeoutSeconds = 5;
+    // 0 disables leak detection
+    private long leakDetectionThresholdMillis = 60_000;
+    // Records a stack trace on every borrow so leak reports show where the connection was taken; that is an
+    // allocation and a stack walk per getConnection(), so turn it on while hunting a leak
+    private boolean captureBorrowSite = false;
+    private long housekeepingIntervalMillis = 30_000;
+    // Prepared statements kept per connection; 0 disables statement caching
+    private int statementCacheSize = 32;
+    // Executions of a statement before the driver switches it to a server-side prepared statement
+    private int prepareThreshold = 5;
+
+    // Getters and setters
+    public String getUrl() { return url; }
+    public void setUrl(String url) { this.url = url; }
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+    public String getPassword() { return password; }
+    public void setPassword(String password) { this.password = password; }
+    public int getMinIdle() { return minIdle; }
+    public void setMinIdle(int minIdle) { this.minIdle = minIdle; }
+    public int getMaxSize() { return maxSize; }
+    public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
+    public long getMaxWaitMillis() { return maxWaitMillis; }
+    public void setMaxWaitMillis(long maxWaitMillis) { this.maxWaitMillis = maxWaitMillis; }
+    public long getIdleTimeoutMillis() { return idleTimeoutMillis; }
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) { this.idleTimeoutMillis = idleTimeoutMillis; }
+    public long getValidationBypassMillis() { return validationBypassMillis; }
+    public void setValidationBypassMillis(long validationBypassMillis) { this.validationBypassMillis = validationBypassMillis; }
+    public int getValidationTimeoutSeconds() { return validationTimeoutSeconds; }
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) { this.validationTimeoutSeconds = validationTimeoutSeconds; }
+    public long getLeakDetectionThresholdMillis() { return leakDetectionThresholdMillis; }
+    public void setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis) { this.leakDetectionThresholdMillis = leakDetectionThresholdMillis; }
+    public boolean isCaptureBorrowSite() { return captureBorrowSite; }
+    public void setCaptureBorrowSite(boolean captureBorrowSite) { this.captureBorrowSite = captureBorrowSite; }
+    public long getHousekeepingIntervalMillis() { return housekeepingIntervalMillis; }
+    public void setHousekeepingIntervalMillis(long housekeepingIntervalMillis) { this.housekeepingIntervalMillis = housekeepingIntervalMillis; }
+    public int getStatementCacheSize() { return statementCacheSize; }
+    public void setStatementCacheSize(int statementCacheSize) { this.statementCacheSize = statementCacheSize; }
+    public int getPrepareThreshold() { return prepareThreshold; }
+    public void setPrepareThreshold(int prepareThreshold) { this.prepareThreshold = prepareThreshold; }
+}
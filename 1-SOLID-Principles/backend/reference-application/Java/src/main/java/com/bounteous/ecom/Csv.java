@@ -0,0 +1,112 @@
+package com.bounteous.ecom;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// RFC 4180 CSV, as PostgreSQL's COPY ... WITH (FORMAT csv) reads and writes it: comma separated, fields quoted
+// with " when they contain a comma, quote or line break, quotes doubled inside quotes. An empty unquoted field is
+// NULL and "" is the empty string, so null survives the round trip.
+final class Csv {
+    private Csv() {
+    }
+
+    static void appendField(StringBuilder out, String value) {
+        if (value == null) return;
+        if (value.isEmpty() || needsQuotes(value)) {
+            out.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') out.append('"');
+                out.append(c);
+            }
+            out.append('"');
+        } else {
+            out.append(value);
+        }
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') return true;
+        }
+        // A lone \. is COPY's end-of-data marker
+        return value.equals("\\.");
+    }
+
+    // Streams records from a character source one at a time, through a fixed-size buffer
+    static final class Reader {
+        private final java.io.Reader in;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder field = new StringBuilder();
+        private int position;
+        private int limit;
+        private long records;
+
+        Reader(java.io.Reader in) {
+            this.in = in;
+        }
+
+        // The next record's fields (null for an empty unquoted field), or null at end of input
+        List<String> next() throws IOException {
+            int c = read();
+            if (c == -1) return null;
+            List<String> fields = new ArrayList<>();
+            while (true) {
+                field.setLength(0);
+                boolean quoted = false;
+                if (c == '"') {
+                    quoted = true;
+                    while (true) {
+                        c = read();
+                        if (c == -1) {
+                            throw new IOException("Unterminated quoted field in CSV record " + (records + 1));
+                        }
+                        if (c == '"') {
+                            c = read();
+                            if (c != '"') break;
+                        }
+                        field.append((char) c);
+                    }
+                    if (c != ',' && c != '\n' && c != '\r' && c != -1) {
+                        throw new IOException("Text after closing quote in CSV record " + (records + 1));
+                    }
+                } else {
+                    while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+                        field.append((char) c);
+                        c = read();
+                    }
+                }
+                fields.add(quoted || field.length() > 0 ? field.toString() : null);
+                if (c == ',') {
+                    c = read();
+                    continue;
+                }
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                records++;
+                return fields;
+            }
+        }
+
+        private int read() throws IOException {
+            if (position == limit && !fill()) return -1;
+            return buffer[position++];
+        }
+
+        private int peek() throws IOException {
+            if (position == limit && !fill()) return -1;
+            return buffer[position];
+        }
+
+        private boolean fill() throws IOException {
+            int read = in.read(buffer);
+            if (read <= 0) return false;
+            position = 0;
+            limit = read;
+            return true;
+        }
+    }
+}
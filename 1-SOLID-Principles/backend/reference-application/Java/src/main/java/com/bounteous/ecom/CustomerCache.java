@@ -0,0 +1,140 @@
+package com.bounteous.ecom;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded read-through cache of customers. Entries expire after a TTL, and once the cache is full an entry is
+// evicted by CLOCK: a hand sweeps the slots, sparing (and clearing the bit of) entries read since it last passed and
+// evicting the first one that was not. Hits only set the entry's bit, so reads take no lock; admissions and
+// evictions, which follow a database load or write anyway, share one.
+// Callers always get their own copy, so nothing outside the cache can change a cached customer.
+public class CustomerCache {
+    private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    // Customer id per slot, guarded by clock; a slot whose id no longer maps to an entry in that slot is free
+    private final Object clock = new Object();
+    private final int[] slots;
+    private int slotsUsed;
+    private int hand;
+    private final long ttlNanos;
+    // Bumped by every write so a load that raced with it does not cache the pre-write row
+    private final AtomicLong writeEpoch = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CustomerCache(int maxSize, Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.slots = new int[maxSize];
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public interface Loader {
+        Customer load(int customerId) throws SQLException;
+    }
+
+    public Customer get(int customerId, Loader loader) throws SQLException {
+        Entry entry = entries.get(customerId);
+        long now = System.nanoTime();
+        if (entry != null && now - entry.loadedAt < ttlNanos) {
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            hits.increment();
+            return copy(entry.customer);
+        }
+        misses.increment();
+
+        long epoch = writeEpoch.get();
+        Customer loaded = loader.load(customerId);
+        if (loaded == null) {
+            entries.remove(customerId);
+            return null;
+        }
+        synchronized (clock) {
+            if (writeEpoch.get() == epoch) {
+                admit(customerId, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    // Write-through after the database row has been written
+    public void put(Customer customer) {
+        writeEpoch.incrementAndGet();
+        synchronized (clock) {
+            admit(customer.getId(), customer);
+        }
+    }
+
+    public void invalidate(int customerId) {
+        writeEpoch.incrementAndGet();
+        entries.remove(customerId);
+    }
+
+    public int size() { return entries.size(); }
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    // Caller holds clock. A customer already cached keeps its slot; a new one takes a free slot or the victim's.
+    private void admit(int customerId, Customer customer) {
+        Entry existing = entries.get(customerId);
+        int slot = existing != null ? existing.slot : claimSlot();
+        slots[slot] = customerId;
+        entries.put(customerId, new Entry(copy(customer), System.nanoTime(), slot));
+    }
+
+    // Caller holds clock
+    private int claimSlot() {
+        if (slotsUsed < maxSize) {
+            return slotsUsed++;
+        }
+        while (true) {
+            int slot = hand;
+            hand = (hand + 1) % maxSize;
+            int customerId = slots[slot];
+            Entry entry = entries.get(customerId);
+            if (entry == null || entry.slot != slot) {
+                // Invalidated since, or moved on to a newer slot
+                return slot;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+            } else if (entries.remove(customerId, entry)) {
+                evictions.increment();
+                return slot;
+            }
+        }
+    }
+
+    private static Customer copy(Customer customer) {
+        return new Customer(customer.getId(), customer.getEmail(), customer.getFirstName(),
+            customer.getLastName(), customer.getPhone(), customer.getAddress());
+    }
+
+    private static final class Entry {
+        private final Customer customer;
+        private final long loadedAt;
+        private final int slot;
+        private volatile boolean referenced;
+
+        Entry(Customer customer, long loadedAt, int slot) {
+            this.customer = customer;
+            this.loadedAt = loadedAt;
+            this.slot = slot;
+        }
+    }
+}
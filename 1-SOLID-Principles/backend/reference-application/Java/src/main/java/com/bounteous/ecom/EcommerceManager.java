@@ -1,459 +1,1077 @@
 package com.bounteous.ecom;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.Duration;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.concurrent.locks.Lock;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.sql.Date;
 
 // VIOLATION: Single Responsibility Principle
 // This class handles products, database operations, cart management, order processing, invoice generation, email sending, logging, customer management, inventory management, and reporting
-public class EcommerceManager {
-    private String connectionString = "jdbc:postgresql://localhost:5432/bounteous_ecom";
-    private String username = "postgres";
-    private String password = "postgres123";
-    private List<Product> products = new ArrayList<>();
-    private List<Customer> customers = new ArrayList<>();
-    private List<Cart> carts = new ArrayList<>();
-    private List<Order> orders = new ArrayList<>();
-    private List<Invoice> invoices = new ArrayList<>();
+public class EcommerceManager implements AutoCloseable {
+    private static final AsyncLogger log = AsyncLogger.getDefault();
+    // Checkouts whose cart keeps changing between reservation and transaction give up after this many tries
+    private static final int MAX_RESERVE_ATTEMPTS = 3;
+
+    // Every public operation plus the checkout side effects, reported under these names
+    public enum Operation {
+        GET_PRODUCTS("getProducts"),
+        GET_PRODUCTS_PAGE("getProductsPage"),
+        FOR_EACH_PRODUCT("forEachProduct"),
+        STREAM_PRODUCTS("streamProducts"),
+        CREATE_CUSTOMER("createCustomer"),
+        IMPORT_CUSTOMERS("importCustomers"),
+        UPDATE_CUSTOMER("updateCustomer"),
+        DELETE_CUSTOMER("deleteCustomer"),
+        GET_CUSTOMER("getCustomer"),
+        CREATE_CART("createCart"),
+        GET_CART_BY_CUSTOMER_ID("getCartByCustomerId"),
+        GET_CART_VIEW("getCartView"),
+        GET_CART_TOTALS("getCartTotals"),
+        ADD_TO_CART("addToCart"),
+        ADD_TO_CART_ATOMIC("addToCartAtomic"),
+        ADD_ALL_TO_CART("addAllToCart"),
+        REMOVE_FROM_CART("removeFromCart"),
+        CALCULATE_CART_TOTAL("calculateCartTotal"),
+        DISPLAY_CART("displayCart"),
+        PROCESS_ORDER("processOrder"),
+        GENERATE_INVOICE("generateInvoice"),
+        UPDATE_PRODUCT_STOCK("updateProductStock"),
+        GENERATE_SALES_REPORT("generateSalesReport"),
+        INVOICE_PDF("sideEffect.invoicePdf"),
+        CONFIRMATION_EMAIL("sideEffect.confirmationEmail"),
+        ORDER_LOG("sideEffect.orderLog");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final EcommerceStore store;
+    private final ProductCatalog productCatalog;
+    private final CustomerCache customerCache;
+    private final SideEffectPipeline sideEffects;
+    private final SalesMetrics salesMetrics = new SalesMetrics();
+    private final OperationMetrics<Operation> operationMetrics = new OperationMetrics<>(Operation.class);
+    // Cart and checkout operations of one customer run one at a time; other customers are not held up
+    private final StripedLocks customerLocks = new StripedLocks(1024);
+    private final EcommerceStore.CheckoutRules checkoutRules = new EcommerceStore.CheckoutRules() {
+        @Override
+        public Order createOrder(Cart cart) {
+            return newOrder(cart);
+        }
+
+        @Override
+        public Invoice createInvoice(Order order) {
+            return newInvoice(order);
+        }
+    };
+    private volatile boolean atomicAddToCart;
+    private volatile int importChunkSize = 50_000;
+    private volatile CartStore cartStore;
+    private volatile InventoryLedger inventoryLedger;
+    private volatile CheckoutBatcher checkoutBatcher;
+    private volatile ReplicaRouter replicaRouter;
+
+    public EcommerceManager() {
+        this(DefaultPool.INSTANCE);
+    }
+
+    public EcommerceManager(ConnectionPool connectionPool) {
+        this(new PostgresStore(connectionPool));
+    }
+
+    // e.g. new EcommerceManager(InMemoryStore.withSampleData()) for a manager without a database
+    public EcommerceManager(EcommerceStore store) {
+        this.store = store;
+        this.productCatalog = new ProductCatalog(store, Duration.ofMinutes(5));
+        this.customerCache = new CustomerCache(10_000, Duration.ofSeconds(60));
+        this.sideEffects = new SideEffectPipeline(1_000, 3, Duration.ofMillis(200));
+    }
+
+    public EcommerceStore getStore() {
+        return store;
+    }
+
+    public ProductCatalog getProductCatalog() {
+        return productCatalog;
+    }
+
+    public CustomerCache getCustomerCache() {
+        return customerCache;
+    }
+
+    public SideEffectPipeline getSideEffects() {
+        return sideEffects;
+    }
+
+    public SalesMetrics getSalesMetrics() {
+        return salesMetrics;
+    }
+
+    public OperationMetrics<Operation> getOperationMetrics() {
+        return operationMetrics;
+    }
+
+    // Managers created with the no-arg constructor share one process-wide pool
+    private static final class DefaultPool {
+        static final ConnectionPool INSTANCE = new ConnectionPool(new ConnectionPoolSettings());
+    }
+
+    // When enabled, addToCart runs as the single upsert in addToCartAtomic instead of read-then-write
+    public void setAtomicAddToCart(boolean atomicAddToCart) {
+        this.atomicAddToCart = atomicAddToCart;
+    }
+
+    // Switches carts to write-behind mode: carts are recovered into memory, cart mutations stay in memory and
+    // dirty carts are flushed to the store every flushInterval and before checkout
+    public void enableWriteBehindCarts(Duration flushInterval) throws SQLException {
+        CartStore carts = new CartStore(store, flushInterval);
+        carts.recover();
+        this.cartStore = carts;
+    }
+
+    // Rows per transaction (and held in memory at once) in importCustomers
+    public void setImportChunkSize(int importChunkSize) {
+        if (importChunkSize < 1) {
+            throw new IllegalArgumentException("Import chunk size must be positive: " + importChunkSize);
+        }
+        this.importChunkSize = importChunkSize;
+    }
+
+    public CartStore getCartStore() {
+        return cartStore;
+    }
+
+    // Makes checkout reserve stock: an order is only placed if InventoryLedger can cover every line. The ledger
+    // leases leaseSize units of a product at a time from stock_quantity, so any number of instances can run it.
+    public void enableInventoryLedger(int leaseSize) {
+        enableInventoryLedger(leaseSize, 0);
+    }
+
+    // As above, never selling the last safetyBuffer units of any product
+    public void enableInventoryLedger(int leaseSize, int safetyBuffer) {
+        this.inventoryLedger = new InventoryLedger(store, leaseSize, safetyBuffer);
+    }
+
+    public InventoryLedger getInventoryLedger() {
+        return inventoryLedger;
+    }
+
+    // Group-commits checkouts: concurrent processOrder calls are queued and committed together by the given number
+    // of committer threads, up to maxBatchSize per transaction, waiting at most maxWait after the first for others
+    // to join. Each caller still gets its own order or its own error.
+    public void enableCheckoutBatching(int committers, int maxBatchSize, Duration maxWait) {
+        this.checkoutBatcher = new CheckoutBatcher(store, salesMetrics, committers, maxBatchSize, maxWait);
+    }
+
+    public CheckoutBatcher getCheckoutBatcher() {
+        return checkoutBatcher;
+    }
+
+    // Serves the catalog, customer and cart reads of read-only operations from PostgreSQL read replicas. A customer's
+    // reads stay on the primary for readYourWritesWindow after their own writes, which must cover the replication
+    // lag; write paths always read from the primary.
+    public void enableReadReplicas(List<ConnectionPool> replicaPools, ReplicaRouter.Selection selection, Duration readYourWritesWindow) {
+        if (!(store instanceof PostgresStore)) {
+            throw new IllegalStateException("Read replicas need a PostgresStore primary");
+        }
+        this.replicaRouter = new ReplicaRouter(store, replicaPools, selection, readYourWritesWindow);
+    }
+
+    public ReplicaRouter getReplicaRouter() {
+        return replicaRouter;
+    }
+
+    // Commits queued checkouts, drains pending side effects and flushes any write-behind carts; the connection pool
+    // belongs to whoever created it and stays open
+    @Override
+    public void close() throws SQLException {
+        if (checkoutBatcher != null) {
+            checkoutBatcher.close();
+        }
+        sideEffects.close();
+        productCatalog.close();
+        if (cartStore != null) {
+            cartStore.close();
+        }
+        if (inventoryLedger != null) {
+            inventoryLedger.close();
+        }
+        operationMetrics.close();
+        log.flush();
+    }
 
     // VIOLATION: Single Responsibility - Product management
     public List<Product> getProducts() throws SQLException {
-        Connection conn = DriverManager.getConnection(connectionString, username, password);
-        Statement stmt = conn.createStatement();
-        ResultSet rs = stmt.executeQuery("SELECT id, name, price, sku FROM products");
-        products.clear();
-        while (rs.next()) {
-            products.add(new Product(
-                rs.getInt("id"),
-                rs.getString("name"),
-                rs.getDouble("price"),
-                rs.getString("sku")
-            ));
-        }
-        conn.close();
-        return products;
+        OperationMetrics.Call call = operationMetrics.begin(Operation.GET_PRODUCTS);
+        try {
+            // A fresh list per call, so callers can neither see nor cause each other's changes
+            List<Product> products = new ArrayList<>();
+            forEachProduct(new ProductQuery(), products::add);
+            return products;
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    // One keyset page in id order, e.g. getProductsPage(lastIdOfPreviousPage, 100, "Electronics"). limit must be
+    // positive: a limit of 0 would mean the whole catalog to ProductQuery.
+    public List<Product> getProductsPage(int afterId, int limit, String category) throws SQLException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+        OperationMetrics.Call call = operationMetrics.begin(Operation.GET_PRODUCTS_PAGE);
+        try {
+            ProductQuery query = new ProductQuery();
+            query.setAfterId(afterId);
+            query.setLimit(limit);
+            query.setCategory(category);
+            // A huge page still comes through the cursor a bounded number of rows at a time
+            int fetchSize = Math.min(limit, ProductQuery.DEFAULT_FETCH_SIZE);
+            query.setFetchSize(fetchSize);
+            List<Product> page = new ArrayList<>(fetchSize);
+            forEachProduct(query, page::add);
+            return page;
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    public void forEachProduct(ProductQuery query, Consumer<Product> consumer) throws SQLException {
+        OperationMetrics.Call call = operationMetrics.begin(Operation.FOR_EACH_PRODUCT);
+        try {
+            try (Stream<Product> products = streamProducts(query)) {
+                products.forEach(consumer);
+            }
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    // With PostgresStore rows are read lazily through a server-side cursor, fetchSize at a time, and the stream
+    // holds a pooled connection until it is closed: always use try-with-resources.
+    public Stream<Product> streamProducts(ProductQuery query) throws SQLException {
+        OperationMetrics.Call call = operationMetrics.begin(Operation.STREAM_PRODUCTS);
+        try {
+            return read(reader -> reader.streamProducts(query));
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
     }
 
     // VIOLATION: Single Responsibility - Customer management
     public int createCustomer(String email, String firstName, String lastName, String phone, String address) throws SQLException {
-        Connection conn = DriverManager.getConnection(connectionString, username, password);
-        PreparedStatement stmt = conn.prepareStatement(
-            "INSERT INTO customers (email, first_name, last_name, phone, address) VALUES (?, ?, ?, ?, ?)",
-            Statement.RETURN_GENERATED_KEYS);
-        stmt.setString(1, email);
-        stmt.setString(2, firstName);
-        stmt.setString(3, lastName);
-        stmt.setString(4, phone);
-        stmt.setString(5, address);
-        stmt.executeUpdate();
-        
-        ResultSet generatedKeys = stmt.getGeneratedKeys();
-        int customerId = 0;
-        if (generatedKeys.next()) {
-            customerId = generatedKeys.getInt(1);
-        }
-        
-        Customer customer = new Customer(customerId, email, firstName, lastName, phone, address);
-        customers.add(customer);
-        
-        System.out.println("Customer " + firstName + " " + lastName + " created successfully with ID " + customerId);
-        conn.close();
-        return customerId;
+        OperationMetrics.Call call = operationMetrics.begin(Operation.CREATE_CUSTOMER);
+        try {
+            int customerId = store.insertCustomer(email, firstName, lastName, phone, address);
+            wrote(customerId);
+
+            Customer customer = new Customer(customerId, email, firstName, lastName, phone, address);
+            customerCache.put(customer);
+
+            log.info("Customer {} {} created successfully with ID {}", firstName, lastName, customerId);
+            return customerId;
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    // Bulk-loads customers from CSV: a header row, then email, first_name, last_name, phone, address. The input is
+    // read one chunk at a time, so it can be larger than memory.
+    public EcommerceStore.ImportResult importCustomers(Reader csv, Path rejectsFile) throws SQLException, IOException {
+        Csv.Reader records = new Csv.Reader(csv);
+        records.next();
+        Iterator<Customer> customers = new Iterator<>() {
+            private List<String> next = read();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Customer next() {
+                if (next == null) throw new NoSuchElementException();
+                List<String> fields = next;
+                next = read();
+                return new Customer(0, field(fields, 0), field(fields, 1), field(fields, 2), field(fields, 3), field(fields, 4));
+            }
+
+            private List<String> read() {
+                try {
+                    return records.next();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        try {
+            return importCustomers(customers, rejectsFile);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index < fields.size() ? fields.get(index) : null;
+    }
+
+    // Rows the store cannot insert (missing or over-long required fields, an email already taken) are written to
+    // rejectsFile as CSV with their 1-based position and the reason, and the load carries on
+    public EcommerceStore.ImportResult importCustomers(Iterator<Customer> customers, Path rejectsFile) throws SQLException, IOException {
+        OperationMetrics.Call call = operationMetrics.begin(Operation.IMPORT_CUSTOMERS);
+        long start = System.nanoTime();
+        try (BufferedWriter rejects = Files.newBufferedWriter(rejectsFile, StandardCharsets.UTF_8)) {
+            rejects.write("position,reason,email,first_name,last_name,phone,address\n");
+            StringBuilder line = new StringBuilder();
+            EcommerceStore.ImportResult result = store.importCustomers(customers, importChunkSize, (position, row, reason) -> {
+                line.setLength(0);
+                line.append(position).append(',');
+                Csv.appendField(line, reason);
+                for (String value : new String[] {row.getEmail(), row.getFirstName(), row.getLastName(), row.getPhone(), row.getAddress()}) {
+                    line.append(',');
+                    Csv.appendField(line, value);
+                }
+                rejects.append(line).append('\n');
+            });
+
+            log.info("Imported {} customers ({} rejected) in {} ms", result.imported(), result.rejected(),
+                (System.nanoTime() - start) / 1_000_000);
+            return result;
+        } catch (SQLException | IOException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
     }
 
     public void updateCustomer(int customerId, String email, String firstName, String lastName, String phone, String address) throws SQLException {
-        Connection conn = DriverManager.getConnection(connectionString, username, password);
-        PreparedStatement stmt = conn.prepareStatement(
-            "UPDATE customers SET email = ?, first_name = ?, last_name = ?, phone = ?, address = ? WHERE id = ?");
-        stmt.setString(1, email);
-        stmt.setString(2, firstName);
-        stmt.setString(3, lastName);
-        stmt.setString(4, phone);
-        stmt.setString(5, address);
-        stmt.setInt(6, customerId);
-        stmt.executeUpdate();
-        
-        Customer customer = customers.stream()
-            .filter(c -> c.getId() == customerId)
-            .findFirst()
-            .orElse(null);
-        if (customer != null) {
-            customer.setEmail(email);
-            customer.setFirstName(firstName);
-            customer.setLastName(lastName);
-            customer.setPhone(phone);
-            customer.setAddress(address);
-        }
-        
-        System.out.println("Customer " + customerId + " updated successfully");
-        conn.close();
+        OperationMetrics.Call call = operationMetrics.begin(Operation.UPDATE_CUSTOMER);
+        try {
+            Customer customer = new Customer(customerId, email, firstName, lastName, phone, address);
+            boolean updated = store.updateCustomer(customer);
+            wrote(customerId);
+            if (updated) {
+                customerCache.put(customer);
+            } else {
+                customerCache.invalidate(customerId);
+            }
+
+            log.info("Customer {} updated successfully", customerId);
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
     }
 
     public void deleteCustomer(int customerId) throws SQLException {
-        Connection conn = DriverManager.getConnection(connectionString, username, password);
-        PreparedStatement stmt = conn.prepareStatement("DELETE FROM customers WHERE id = ?");
-        stmt.setInt(1, customerId);
-        stmt.executeUpdate();
-        
-        customers.removeIf(c -> c.getId() == customerId);
-        System.out.println("Customer " + customerId + " deleted successfully");
-        conn.close();
+        OperationMetrics.Call call = operationMetrics.begin(Operation.DELETE_CUSTOMER);
+        try {
+            store.deleteCustomer(customerId);
+            wrote(customerId);
+
+            customerCache.invalidate(customerId);
+            if (cartStore != null) {
+                cartStore.forget(customerId);
+            }
+            log.info("Customer {} deleted successfully", customerId);
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
     }
 
     public Customer getCustomer(int customerId) throws SQLException {
-        Connection conn = DriverManager.getConnection(connectionString, username, password);
-        PreparedStatement stmt = conn.prepareStatement(
-            "SELECT id, email, first_name, last_name, phone, address FROM customers WHERE id = ?");
-        stmt.setInt(1, customerId);
-        ResultSet rs = stmt.executeQuery();
-        
-        if (rs.next()) {
-            Customer customer = new Customer(
-                rs.getInt("id"),
-                rs.getString("email"),
-                rs.getString("first_name"),
-                rs.getString("last_name"),
-                rs.getString("phone"),
-                rs.getString("address")
-            );
-            conn.close();
-            return customer;
-        }
-        conn.close();
-        return null;
+        OperationMetrics.Call call = operationMetrics.begin(Operation.GET_CUSTOMER);
+        try {
+            return customerCache.get(customerId, id -> read(id, reader -> reader.findCustomer(id)));
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
     }
 
     // VIOLATION: Single Responsibility - Cart management
     public int createCart(int customerId) throws SQLException {
+        OperationMetrics.Call call = operationMetrics.begin(Operation.CREATE_CART);
+        try {
+            Lock lock = customerLocks.get(customerId);
+            lock.lock();
+            try {
+                return createCartLocked(customerId);
+            } finally {
+                lock.unlock();
+            }
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    private int createCartLocked(int customerId) throws SQLException {
         // VIOLATION: Business logic mixed with data access
-        Cart existingCart = getCartByCustomerId(customerId);
+        Cart existingCart = cartForUpdate(customerId);
         if (existingCart != null) {
-            System.out.println("Customer " + customerId + " already has a cart with ID " + existingCart.getId());
+            log.info("Customer {} already has a cart with ID {}", customerId, existingCart.getId());
             return existingCart.getId();
         }
 
-        Connection conn = DriverManager.getConnection(connectionString, username, password);
-        PreparedStatement stmt = conn.prepareStatement(
-            "INSERT INTO carts (customer_id) VALUES (?)",
-            Statement.RETURN_GENERATED_KEYS);
-        stmt.setInt(1, customerId);
-        stmt.executeUpdate();
-        
-        ResultSet generatedKeys = stmt.getGeneratedKeys();
-        int cartId = 0;
-        if (generatedKeys.next()) {
-            cartId = generatedKeys.getInt(1);
-        }
-        
+        int cartId = store.insertCart(customerId);
+        wrote(customerId);
+
         Cart cart = new Cart(cartId, customerId, new ArrayList<>());
-        carts.add(cart);
-        
-        System.out.println("Cart created successfully with ID " + cartId + " for customer " + customerId);
-        conn.close();
+        if (cartStore != null) {
+            cartStore.register(cart);
+        }
+
+        log.info("Cart created successfully with ID {} for customer {}", cartId, customerId);
         return cartId;
     }
 
     public Cart getCartByCustomerId(int customerId) throws SQLException {
-        Connection conn = DriverManager.getConnection(connectionString, username, password);
-        PreparedStatement stmt = conn.prepareStatement(
-            "SELECT id, customer_id FROM carts WHERE customer_id = ?");
-        stmt.setInt(1, customerId);
-        ResultSet rs = stmt.executeQuery();
-        
-        if (rs.next()) {
-            int cartId = rs.getInt("id");
-            Cart cart = new Cart(cartId, customerId, new ArrayList<>());
-            
-            // Load cart items
-            PreparedStatement itemsStmt = conn.prepareStatement(
-                "SELECT ci.id, ci.product_id, ci.quantity, ci.unit_price, ci.total_price, p.name " +
-                "FROM cart_items ci JOIN products p ON ci.product_id = p.id WHERE ci.cart_id = ?");
-            itemsStmt.setInt(1, cartId);
-            ResultSet itemsRs = itemsStmt.executeQuery();
-            
-            while (itemsRs.next()) {
-                cart.getItems().add(new CartItem(
-                    itemsRs.getInt("id"),
-                    itemsRs.getInt("product_id"),
-                    itemsRs.getInt("quantity"),
-                    itemsRs.getDouble("unit_price"),
-                    itemsRs.getDouble("total_price"),
-                    itemsRs.getString("name")
-                ));
+        OperationMetrics.Call call = operationMetrics.begin(Operation.GET_CART_BY_CUSTOMER_ID);
+        try {
+            if (cartStore != null) {
+                return cartStore.get(customerId);
             }
-            
-            conn.close();
-            return cart;
+            return read(customerId, reader -> reader.findCart(customerId));
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    // Reads of read-only operations go through these, so they can be served by a replica
+    private <T> T read(ReplicaRouter.Read<T> read) throws SQLException {
+        ReplicaRouter router = replicaRouter;
+        return router == null ? read.from(store) : router.read(read);
+    }
+
+    private <T> T read(int customerId, ReplicaRouter.Read<T> read) throws SQLException {
+        ReplicaRouter router = replicaRouter;
+        return router == null ? read.from(store) : router.read(customerId, read);
+    }
+
+    private void wrote(int customerId) {
+        ReplicaRouter router = replicaRouter;
+        if (router != null) {
+            router.wrote(customerId);
+        }
+    }
+
+    // The cart a write is about to change: from the write-behind cart store or the primary, never a replica
+    private Cart cartForUpdate(int customerId) throws SQLException {
+        if (cartStore != null) {
+            return cartStore.get(customerId);
+        }
+        return store.findCart(customerId);
+    }
+
+    // The cart, its lines and their totals from one store read (one query with PostgresStore); null if the customer
+    // has no cart
+    public EcommerceStore.CartView getCartView(int customerId) throws SQLException {
+        OperationMetrics.Call call = operationMetrics.begin(Operation.GET_CART_VIEW);
+        try {
+            return cartView(customerId);
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
         }
-        conn.close();
-        return null;
+    }
+
+    private EcommerceStore.CartView cartView(int customerId) throws SQLException {
+        if (cartStore != null) {
+            Cart cart = cartStore.get(customerId);
+            return cart == null ? null : new EcommerceStore.CartView(cart, EcommerceStore.CartTotals.of(cart));
+        }
+        return read(customerId, reader -> reader.findCartView(customerId));
+    }
+
+    // Line count, item count and subtotal without loading the lines, for the cart badge shown on every page;
+    // null if the customer has no cart
+    public EcommerceStore.CartTotals getCartTotals(int customerId) throws SQLException {
+        OperationMetrics.Call call = operationMetrics.begin(Operation.GET_CART_TOTALS);
+        try {
+            return cartTotals(customerId);
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    private EcommerceStore.CartTotals cartTotals(int customerId) throws SQLException {
+        if (cartStore != null) {
+            Cart cart = cartStore.get(customerId);
+            return cart == null ? null : EcommerceStore.CartTotals.of(cart);
+        }
+        return read(customerId, reader -> reader.findCartTotals(customerId));
     }
 
     public void addToCart(int customerId, int productId, int quantity) throws SQLException {
+        OperationMetrics.Call call = operationMetrics.begin(Operation.ADD_TO_CART);
+        try {
+            Lock lock = customerLocks.get(customerId);
+            lock.lock();
+            try {
+                addToCartLocked(customerId, productId, quantity);
+            } finally {
+                lock.unlock();
+            }
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    private void addToCartLocked(int customerId, int productId, int quantity) throws SQLException {
+        if (atomicAddToCart) {
+            addToCartAtomic(customerId, productId, quantity);
+            return;
+        }
+
         // VIOLATION: Business logic violation - cannot create cart unless customer exists
         Customer customer = getCustomer(customerId);
         if (customer == null) {
-            System.out.println("Cannot add to cart: Customer " + customerId + " does not exist!");
+            log.warn("Cannot add to cart: Customer {} does not exist!", customerId);
             return;
         }
 
-        Cart cart = getCartByCustomerId(customerId);
+        Cart cart = cartForUpdate(customerId);
         if (cart == null) {
-            System.out.println("Cannot add to cart: Customer " + customerId + " does not have a cart!");
+            log.warn("Cannot add to cart: Customer {} does not have a cart!", customerId);
             return;
         }
 
-        Product product = products.stream()
-            .filter(p -> p.getId() == productId)
-            .findFirst()
-            .orElse(null);
+        Product product = productCatalog.findById(productId);
         if (product == null) {
-            System.out.println("Product " + productId + " not found!");
+            log.warn("Product {} not found!", productId);
+            return;
+        }
+
+        if (cartStore != null) {
+            logCartChange(cartStore.add(customerId, product, quantity), product, quantity, customerId);
             return;
         }
 
-        Connection conn = DriverManager.getConnection(connectionString, username, password);
-        
         // Check if item already exists in cart
-        PreparedStatement checkStmt = conn.prepareStatement(
-            "SELECT id, quantity FROM cart_items WHERE cart_id = ? AND product_id = ?");
-        checkStmt.setInt(1, cart.getId());
-        checkStmt.setInt(2, productId);
-        ResultSet checkRs = checkStmt.executeQuery();
-        
-        if (checkRs.next()) {
+        CartItem existing = store.findCartItem(cart.getId(), productId);
+        if (existing != null) {
             // Update existing item
-            int existingId = checkRs.getInt("id");
-            int existingQuantity = checkRs.getInt("quantity");
-            
-            int newQuantity = existingQuantity + quantity;
-            double newTotalPrice = newQuantity * product.getPrice();
-            
-            PreparedStatement updateStmt = conn.prepareStatement(
-                "UPDATE cart_items SET quantity = ?, total_price = ? WHERE id = ?");
-            updateStmt.setInt(1, newQuantity);
-            updateStmt.setDouble(2, newTotalPrice);
-            updateStmt.setInt(3, existingId);
-            updateStmt.executeUpdate();
-            
-            System.out.println("Updated " + product.getName() + " quantity to " + newQuantity + " in cart");
+            int newQuantity = existing.getQuantity() + quantity;
+            store.updateCartItem(existing.getId(), newQuantity, newQuantity * product.getPriceCents());
+            wrote(customerId);
+
+            log.info("Updated {} quantity to {} in cart", product.getName(), newQuantity);
         } else {
             // Add new item
-            PreparedStatement insertStmt = conn.prepareStatement(
-                "INSERT INTO cart_items (cart_id, product_id, quantity, unit_price, total_price) VALUES (?, ?, ?, ?, ?)");
-            insertStmt.setInt(1, cart.getId());
-            insertStmt.setInt(2, productId);
-            insertStmt.setInt(3, quantity);
-            insertStmt.setDouble(4, product.getPrice());
-            insertStmt.setDouble(5, product.getPrice() * quantity);
-            insertStmt.executeUpdate();
-            
-            System.out.println("Added " + quantity + " " + product.getName() + " to cart");
+            store.insertCartItem(cart.getId(), productId, quantity, product.getPriceCents());
+            wrote(customerId);
+
+            log.info("Added {} {} to cart", quantity, product.getName());
+        }
+    }
+
+    // Validates the customer, cart and product and merges the quantity in one store call (one round trip with
+    // PostgresStore), so concurrent adds of the same product update the existing line rather than lose an update.
+    public AddToCartResult addToCartAtomic(int customerId, int productId, int quantity) throws SQLException {
+        OperationMetrics.Call call = operationMetrics.begin(Operation.ADD_TO_CART_ATOMIC);
+        try {
+            if (cartStore != null) {
+                // The in-memory cart is authoritative, so merge there rather than in cart_items, under the same
+                // customer lock as the other cart writes
+                Lock lock = customerLocks.get(customerId);
+                lock.lock();
+                try {
+                    return addToCartStoreLocked(customerId, productId, quantity);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            EcommerceStore.CartUpsert upsert = store.upsertCartItem(customerId, productId, quantity);
+            if (upsert.result() == AddToCartResult.ADDED || upsert.result() == AddToCartResult.UPDATED) {
+                wrote(customerId);
+            }
+            switch (upsert.result()) {
+                case CUSTOMER_NOT_FOUND -> log.warn("Cannot add to cart: Customer {} does not exist!", customerId);
+                case CART_NOT_FOUND -> log.warn("Cannot add to cart: Customer {} does not have a cart!", customerId);
+                case PRODUCT_NOT_FOUND -> log.warn("Product {} not found!", productId);
+                case ADDED -> log.info("Added {} {} to cart", quantity, upsert.productName());
+                case UPDATED -> log.info("Updated {} quantity to {} in cart", upsert.productName(), upsert.quantity());
+            }
+            return upsert.result();
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    private AddToCartResult addToCartStoreLocked(int customerId, int productId, int quantity) throws SQLException {
+        if (getCustomer(customerId) == null) {
+            log.warn("Cannot add to cart: Customer {} does not exist!", customerId);
+            return AddToCartResult.CUSTOMER_NOT_FOUND;
+        }
+        Product product = productCatalog.findById(productId);
+        if (product == null) {
+            log.warn("Product {} not found!", productId);
+            return AddToCartResult.PRODUCT_NOT_FOUND;
+        }
+        AddToCartResult result = cartStore.add(customerId, product, quantity);
+        logCartChange(result, product, quantity, customerId);
+        return result;
+    }
+
+    // Adds several products at once (productId -> quantity), e.g. a quick order or a reorder. Customer and cart are
+    // validated once and every line is priced from the catalog and merged in one store call (one round trip with
+    // PostgresStore) instead of one addToCart per line. Returns each line's outcome in the order of quantities.
+    public Map<Integer, AddToCartResult> addAllToCart(int customerId, Map<Integer, Integer> quantities) throws SQLException {
+        OperationMetrics.Call call = operationMetrics.begin(Operation.ADD_ALL_TO_CART);
+        try {
+            Lock lock = customerLocks.get(customerId);
+            lock.lock();
+            try {
+                return addAllToCartLocked(customerId, quantities);
+            } finally {
+                lock.unlock();
+            }
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    private Map<Integer, AddToCartResult> addAllToCartLocked(int customerId, Map<Integer, Integer> quantities) throws SQLException {
+        Map<Integer, AddToCartResult> results = new LinkedHashMap<>();
+        if (quantities.isEmpty()) return results;
+        // Checked before anything is written, so a bad line cannot reach cart_items or leave half the lines added
+        quantities.forEach((productId, quantity) -> {
+            if (quantity == null || quantity <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive: " + quantity + " of product " + productId);
+            }
+        });
+
+        if (cartStore != null) {
+            // The in-memory cart is authoritative, so merge there rather than in cart_items
+            if (getCustomer(customerId) == null) {
+                quantities.keySet().forEach(productId -> results.put(productId, AddToCartResult.CUSTOMER_NOT_FOUND));
+            } else {
+                for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+                    Product product = productCatalog.findById(line.getKey());
+                    results.put(line.getKey(), product == null
+                        ? AddToCartResult.PRODUCT_NOT_FOUND
+                        : cartStore.add(customerId, product, line.getValue()));
+                }
+            }
+        } else {
+            store.upsertCartItems(customerId, quantities).forEach((productId, upsert) -> results.put(productId, upsert.result()));
+            if (results.containsValue(AddToCartResult.ADDED) || results.containsValue(AddToCartResult.UPDATED)) {
+                wrote(customerId);
+            }
+        }
+
+        if (results.containsValue(AddToCartResult.CUSTOMER_NOT_FOUND)) {
+            log.warn("Cannot add to cart: Customer {} does not exist!", customerId);
+        } else if (results.containsValue(AddToCartResult.CART_NOT_FOUND)) {
+            log.warn("Cannot add to cart: Customer {} does not have a cart!", customerId);
+        } else {
+            long missing = results.values().stream().filter(result -> result == AddToCartResult.PRODUCT_NOT_FOUND).count();
+            if (missing > 0) {
+                log.warn("{} of {} products not found!", missing, results.size());
+            }
+            log.info("Added {} lines to cart of customer {}", results.size() - missing, customerId);
+        }
+        return results;
+    }
+
+    private void logCartChange(AddToCartResult result, Product product, int quantity, int customerId) {
+        if (result == AddToCartResult.CART_NOT_FOUND) {
+            log.warn("Cannot add to cart: Customer {} does not have a cart!", customerId);
+        } else if (result == AddToCartResult.ADDED) {
+            log.info("Added {} {} to cart", quantity, product.getName());
+        } else {
+            log.info("Updated {} quantity in cart", product.getName());
         }
-        
-        conn.close();
     }
 
     public void removeFromCart(int customerId, int productId) throws SQLException {
-        Cart cart = getCartByCustomerId(customerId);
+        OperationMetrics.Call call = operationMetrics.begin(Operation.REMOVE_FROM_CART);
+        try {
+            Lock lock = customerLocks.get(customerId);
+            lock.lock();
+            try {
+                removeFromCartLocked(customerId, productId);
+            } finally {
+                lock.unlock();
+            }
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    private void removeFromCartLocked(int customerId, int productId) throws SQLException {
+        if (cartStore != null) {
+            if (!cartStore.remove(customerId, productId)) {
+                log.warn("Customer {} does not have a cart!", customerId);
+                return;
+            }
+            log.info("Removed product {} from cart", productId);
+            return;
+        }
+
+        Cart cart = cartForUpdate(customerId);
         if (cart == null) {
-            System.out.println("Customer " + customerId + " does not have a cart!");
+            log.warn("Customer {} does not have a cart!", customerId);
             return;
         }
 
-        Connection conn = DriverManager.getConnection(connectionString, username, password);
-        PreparedStatement stmt = conn.prepareStatement(
-            "DELETE FROM cart_items WHERE cart_id = ? AND product_id = ?");
-        stmt.setInt(1, cart.getId());
-        stmt.setInt(2, productId);
-        stmt.executeUpdate();
-        
-        System.out.println("Removed product " + productId + " from cart");
-        conn.close();
+        store.removeCartItem(cart.getId(), productId);
+        wrote(customerId);
+
+        log.info("Removed product {} from cart", productId);
     }
 
     public double calculateCartTotal(int customerId) throws SQLException {
-        Cart cart = getCartByCustomerId(customerId);
-        if (cart == null) return 0;
+        OperationMetrics.Call call = operationMetrics.begin(Operation.CALCULATE_CART_TOTAL);
+        try {
+            EcommerceStore.CartTotals totals = cartTotals(customerId);
+            if (totals == null) return 0;
 
-        return cart.getItems().stream()
-            .mapToDouble(CartItem::getTotalPrice)
-            .sum();
+            return Money.toDouble(totals.subtotalCents());
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
     }
 
     public void displayCart(int customerId) throws SQLException {
-        Cart cart = getCartByCustomerId(customerId);
-        if (cart == null) {
-            System.out.println("Customer " + customerId + " does not have a cart!");
-            return;
-        }
+        OperationMetrics.Call call = operationMetrics.begin(Operation.DISPLAY_CART);
+        try {
+            EcommerceStore.CartView view = cartView(customerId);
+            if (view == null) {
+                log.warn("Customer {} does not have a cart!", customerId);
+                return;
+            }
 
-        System.out.println("=== Shopping Cart for Customer " + customerId + " ===");
-        for (CartItem item : cart.getItems()) {
-            System.out.println(item.getProductName() + " x" + item.getQuantity() + 
-                " - $" + item.getUnitPrice() + " each = $" + item.getTotalPrice());
+            log.info("=== Shopping Cart for Customer {} ===", customerId);
+            for (CartItem item : view.cart().getItems()) {
+                log.info("{} x{} - ${} each = ${}", item.getProductName(), item.getQuantity(), Money.formatted(item.getUnitPriceCents()), Money.formatted(item.getTotalPriceCents()));
+            }
+            log.info("Total: ${} ({} items)", Money.formatted(view.totals().subtotalCents()), view.totals().itemCount());
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
         }
-        System.out.println("Total: $" + calculateCartTotal(customerId));
     }
 
     // VIOLATION: Single Responsibility - Order processing
-    public void processOrder(int customerId) throws SQLException {
-        Cart cart = getCartByCustomerId(customerId);
-        if (cart == null || cart.getItems().isEmpty()) {
-            System.out.println("Cart is empty or does not exist!");
-            return;
+    // Returns the committed order, or null if the cart was empty
+    public Order processOrder(int customerId) throws SQLException {
+        OperationMetrics.Call call = operationMetrics.begin(Operation.PROCESS_ORDER);
+        try {
+            Lock lock = customerLocks.get(customerId);
+            lock.lock();
+            try {
+                return processOrderLocked(customerId);
+            } finally {
+                lock.unlock();
+            }
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
         }
+    }
 
-        // Create order
-        Order order = new Order();
-        order.setId(orders.size() + 1);
-        order.setCustomerId(customerId);
-        order.setCartId(cart.getId());
-        order.setOrderNumber("ORD-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd")) + "-" + String.format("%04d", orders.size() + 1));
-        order.setItems(new ArrayList<>());
-        order.setSubtotal(calculateCartTotal(customerId));
-        order.setTaxAmount(calculateCartTotal(customerId) * 0.08); // 8% tax
-        order.setShippingAmount(9.99);
-        order.setTotalAmount(calculateCartTotal(customerId) + (calculateCartTotal(customerId) * 0.08) + 9.99);
-        order.setStatus("Pending");
-        order.setOrderDate(LocalDateTime.now());
+    private Order processOrderLocked(int customerId) throws SQLException {
+        // The store reads the cart once, then saves the order, its items and invoice and clears the cart in one
+        // transaction; pricing happens once, in createOrder
+        if (cartStore != null) {
+            cartStore.flush(customerId);
+        }
+        InventoryLedger ledger = inventoryLedger;
+        EcommerceStore.Checkout checkout = ledger == null
+                ? checkout(customerId, checkoutRules)
+                : reserveAndCheckout(ledger, customerId);
+        if (checkout == null) {
+            log.warn("Cart is empty or does not exist!");
+            return null;
+        }
+        wrote(customerId);
+        Order order = checkout.order();
+        Invoice invoice = checkout.invoice();
+        List<CartItem> orderedItems = checkout.items();
 
-        orders.add(order);
-
-        // Save to database
-        Connection conn = DriverManager.getConnection(connectionString, username, password);
-        PreparedStatement stmt = conn.prepareStatement(
-            "INSERT INTO orders (customer_id, cart_id, order_number, status, subtotal, tax_amount, shipping_amount, total_amount) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
-            Statement.RETURN_GENERATED_KEYS);
-        stmt.setInt(1, order.getCustomerId());
-        stmt.setInt(2, order.getCartId());
-        stmt.setString(3, order.getOrderNumber());
-        stmt.setString(4, order.getStatus());
-        stmt.setDouble(5, order.getSubtotal());
-        stmt.setDouble(6, order.getTaxAmount());
-        stmt.setDouble(7, order.getShippingAmount());
-        stmt.setDouble(8, order.getTotalAmount());
-        stmt.executeUpdate();
-
-        ResultSet generatedKeys = stmt.getGeneratedKeys();
-        if (generatedKeys.next()) {
-            order.setId(generatedKeys.getInt(1));
-        }
-
-        // Save order items
-        for (CartItem cartItem : cart.getItems()) {
-            PreparedStatement itemStmt = conn.prepareStatement(
-                "INSERT INTO order_items (order_id, product_id, quantity, unit_price, total_price) VALUES (?, ?, ?, ?, ?)");
-            itemStmt.setInt(1, order.getId());
-            itemStmt.setInt(2, cartItem.getProductId());
-            itemStmt.setInt(3, cartItem.getQuantity());
-            itemStmt.setDouble(4, cartItem.getUnitPrice());
-            itemStmt.setDouble(5, cartItem.getTotalPrice());
-            itemStmt.executeUpdate();
-        }
-
-        // Generate invoice
-        generateInvoice(order);
-
-        // Send confirmation email
-        Customer customer = getCustomer(customerId);
-        sendConfirmationEmail(customer.getEmail(), order);
+        salesMetrics.record(order.getTotalAmountCents());
+        if (cartStore != null) {
+            cartStore.removeOrdered(customerId, orderedItems);
+        }
+
+        // The order is committed; invoice rendering, email and audit log run after we return
+        sideEffects.submit("invoice-pdf " + invoice.getInvoiceNumber(), timed(Operation.INVOICE_PDF, () -> {
+            generatePDFInvoice(invoice);
+            log.info("Invoice {} generated for order {}", invoice.getInvoiceNumber(), order.getOrderNumber());
+        }));
+        sideEffects.submit("confirmation-email " + order.getOrderNumber(), timed(Operation.CONFIRMATION_EMAIL, () -> {
+            Customer customer = getCustomer(customerId);
+            if (customer != null) {
+                sendConfirmationEmail(customer.getEmail(), order);
+            }
+        }));
+        sideEffects.submit("order-log " + order.getOrderNumber(), timed(Operation.ORDER_LOG, () -> logOrder(order)));
+
+        log.info("Order {} processed successfully!", order.getOrderNumber());
+        return order;
+    }
+
+    private EcommerceStore.Checkout checkout(int customerId, EcommerceStore.CheckoutRules rules) throws SQLException {
+        CheckoutBatcher batcher = checkoutBatcher;
+        return batcher == null
+                ? store.checkout(customerId, rules, salesMetrics)
+                : batcher.checkout(customerId, rules);
+    }
+
+    // Reserves the cart's stock before the checkout transaction starts: leasing more units borrows a connection,
+    // and a checkout holding one while it waits for another can starve the pool. The transaction then only checks
+    // that the cart it reads is covered; a cart that grew in between (an unlocked addToCartAtomic) is reserved again.
+    private EcommerceStore.Checkout reserveAndCheckout(InventoryLedger ledger, int customerId) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            Cart cart = cartForUpdate(customerId);
+            InventoryLedger.Reservation reservation;
+            try {
+                reservation = ledger.reserve(cart == null ? List.of() : cart.getItems());
+            } catch (InsufficientStockException e) {
+                log.warn("Order not placed for customer {}: {}", customerId, e.getMessage());
+                throw e;
+            }
+            ReservedCheckoutRules rules = new ReservedCheckoutRules(reservation);
+            EcommerceStore.Checkout checkout;
+            try {
+                checkout = checkout(customerId, rules);
+            } catch (SQLException | RuntimeException e) {
+                ledger.release(reservation);
+                if (rules.cartChanged && attempt < MAX_RESERVE_ATTEMPTS) continue;
+                throw e;
+            }
+            if (checkout == null) {
+                ledger.release(reservation);
+            } else {
+                ledger.commit(reservation, checkout.items());
+            }
+            return checkout;
+        }
+    }
+
+    // Builds the order only for a cart the reservation covers; anything else rolls the checkout back
+    private static final class ReservedCheckoutRules implements EcommerceStore.CheckoutRules {
+        private final InventoryLedger.Reservation reservation;
+        private volatile boolean cartChanged;
 
-        // Log the order
-        logOrder(order);
+        ReservedCheckoutRules(InventoryLedger.Reservation reservation) {
+            this.reservation = reservation;
+        }
 
-        // Clear cart
-        PreparedStatement clearStmt = conn.prepareStatement("DELETE FROM cart_items WHERE cart_id = ?");
-        clearStmt.setInt(1, cart.getId());
-        clearStmt.executeUpdate();
+        @Override
+        public Order createOrder(Cart cart) throws SQLException {
+            if (!reservation.covers(cart.getItems())) {
+                cartChanged = true;
+                throw new SQLException("Cart " + cart.getId() + " changed after its stock was reserved", "40001");
+            }
+            return newOrder(cart);
+        }
 
-        System.out.println("Order " + order.getOrderNumber() + " processed successfully!");
-        conn.close();
+        @Override
+        public Invoice createInvoice(Order order) {
+            return newInvoice(order);
+        }
+    }
+
+    // Side effects run on pipeline threads, so each kind is timed as an operation of its own
+    private SideEffectPipeline.Task timed(Operation operation, SideEffectPipeline.Task task) {
+        return () -> {
+            OperationMetrics.Call call = operationMetrics.begin(operation);
+            try {
+                task.run();
+            } catch (Exception e) {
+                call.fail();
+                throw e;
+            } finally {
+                call.end();
+            }
+        };
     }
 
     // VIOLATION: Single Responsibility - Invoice generation
     public void generateInvoice(Order order) throws SQLException {
+        OperationMetrics.Call call = operationMetrics.begin(Operation.GENERATE_INVOICE);
+        try {
+            Invoice invoice = store.insertInvoice(newInvoice(order));
+
+            sideEffects.submit("invoice-pdf " + invoice.getInvoiceNumber(), timed(Operation.INVOICE_PDF, () -> {
+                generatePDFInvoice(invoice);
+                log.info("Invoice {} generated for order {}", invoice.getInvoiceNumber(), order.getOrderNumber());
+            }));
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
+    }
+
+    private static Order newOrder(Cart cart) {
+        OrderPricing pricing = OrderPricing.of(cart.getItems());
+        Order order = new Order();
+        order.setCustomerId(cart.getCustomerId());
+        order.setCartId(cart.getId());
+        order.setItems(new ArrayList<>());
+        order.setSubtotalCents(pricing.getSubtotalCents());
+        order.setTaxAmountCents(pricing.getTaxCents());
+        order.setShippingAmountCents(pricing.getShippingCents());
+        order.setTotalAmountCents(pricing.getTotalCents());
+        order.setStatus("Pending");
+        order.setOrderDate(LocalDateTime.now());
+        return order;
+    }
+
+    private static Invoice newInvoice(Order order) {
         Invoice invoice = new Invoice();
-        invoice.setId(invoices.size() + 1);
         invoice.setOrderId(order.getId());
-        invoice.setInvoiceNumber("INV-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd")) + "-" + String.format("%04d", invoices.size() + 1));
-        invoice.setAmount(order.getTotalAmount());
-        invoice.setTaxAmount(order.getTaxAmount());
-        invoice.setTotalAmount(order.getTotalAmount());
+        invoice.setAmountCents(order.getTotalAmountCents());
+        invoice.setTaxAmountCents(order.getTaxAmountCents());
+        invoice.setTotalAmountCents(order.getTotalAmountCents());
         invoice.setStatus("Pending");
         invoice.setDueDate(LocalDateTime.now().plusDays(30));
         invoice.setCreatedDate(LocalDateTime.now());
-
-        invoices.add(invoice);
-
-        // Save to database
-        Connection conn = DriverManager.getConnection(connectionString, username, password);
-        PreparedStatement stmt = conn.prepareStatement(
-            "INSERT INTO invoices (order_id, invoice_number, status, amount, tax_amount, total_amount, due_date) VALUES (?, ?, ?, ?, ?, ?, ?)");
-        stmt.setInt(1, invoice.getOrderId());
-        stmt.setString(2, invoice.getInvoiceNumber());
-        stmt.setString(3, invoice.getStatus());
-        stmt.setDouble(4, invoice.getAmount());
-        stmt.setDouble(5, invoice.getTaxAmount());
-        stmt.setDouble(6, invoice.getTotalAmount());
-        stmt.setDate(7, Date.valueOf(invoice.getDueDate().toLocalDate()));
-        stmt.executeUpdate();
-
-        // Generate PDF invoice (simulated)
-        generatePDFInvoice(invoice);
-
-        System.out.println("Invoice " + invoice.getInvoiceNumber() + " generated for order " + order.getOrderNumber());
-        conn.close();
+        return invoice;
     }
 
     // VIOLATION: Single Responsibility - PDF generation
     private void generatePDFInvoice(Invoice invoice) {
         // Simulated PDF generation
-        System.out.println("=== INVOICE " + invoice.getInvoiceNumber() + " ===");
-        System.out.println("Amount: $" + invoice.getAmount());
-        System.out.println("Tax: $" + invoice.getTaxAmount());
-        System.out.println("Total: $" + invoice.getTotalAmount());
-        System.out.println("Due Date: " + invoice.getDueDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
-        System.out.println("=== END INVOICE ===");
+        log.info("=== INVOICE {} ===", invoice.getInvoiceNumber());
+        log.info("Amount: ${}", Money.formatted(invoice.getAmountCents()));
+        log.info("Tax: ${}", Money.formatted(invoice.getTaxAmountCents()));
+        log.info("Total: ${}", Money.formatted(invoice.getTotalAmountCents()));
+        log.info("Due Date: {}", invoice.getDueDate().toLocalDate());
+        log.info("=== END INVOICE ===");
     }
 
     // VIOLATION: Single Responsibility - Email sending
     private void sendConfirmationEmail(String email, Order order) {
         // Simulated email sending
-        System.out.println("Sending confirmation email to " + email);
-        System.out.println("Subject: Order Confirmation - " + order.getOrderNumber());
-        System.out.println("Body: Your order has been processed. Total: $" + order.getTotalAmount());
+        log.info("Sending confirmation email to {}", email);
+        log.info("Subject: Order Confirmation - {}", order.getOrderNumber());
+        log.info("Body: Your order has been processed. Total: ${}", Money.formatted(order.getTotalAmountCents()));
     }
 
     // VIOLATION: Single Responsibility - Logging
     private void logOrder(Order order) {
-        // Simulated logging
-        System.out.println("[LOG] Order processed: " + order.getOrderNumber() + ", Customer: " + order.getCustomerId() + ", Total: $" + order.getTotalAmount());
+        log.event(AsyncLogger.Level.INFO, "order_processed",
+            "order_number", order.getOrderNumber(),
+            "customer_id", order.getCustomerId(),
+            "total", Money.formatted(order.getTotalAmountCents()));
     }
 
     // VIOLATION: Single Responsibility - Inventory management
     public void updateProductStock(int productId, int newStock) throws SQLException {
-        Connection conn = DriverManager.getConnection(connectionString, username, password);
-        PreparedStatement stmt = conn.prepareStatement(
-            "UPDATE products SET stock_quantity = ? WHERE id = ?");
-        stmt.setInt(1, newStock);
-        stmt.setInt(2, productId);
-        stmt.executeUpdate();
-        System.out.println("Updated stock for product " + productId + " to " + newStock);
-        conn.close();
+        OperationMetrics.Call call = operationMetrics.begin(Operation.UPDATE_PRODUCT_STOCK);
+        try {
+            InventoryLedger ledger = inventoryLedger;
+            if (ledger != null) {
+                ledger.setStock(productId, newStock);
+            } else {
+                store.updateProductStock(productId, newStock);
+            }
+            productCatalog.invalidate();
+            log.info("Updated stock for product {} to {}", productId, newStock);
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
     }
 
     // VIOLATION: Single Responsibility - Reporting
-    public void generateSalesReport() {
-        double totalSales = orders.stream()
-            .mapToDouble(Order::getTotalAmount)
-            .sum();
-        System.out.println("=== SALES REPORT ===");
-        System.out.println("Total Orders: " + orders.size());
-        System.out.println("Total Sales: $" + totalSales);
-        System.out.println("Average Order Value: $" + (orders.size() > 0 ? totalSales / orders.size() : 0));
+    public void generateSalesReport() throws SQLException {
+        OperationMetrics.Call call = operationMetrics.begin(Operation.GENERATE_SALES_REPORT);
+        try {
+            store.seedSalesMetrics(salesMetrics);
+            SalesMetrics.Totals total = salesMetrics.getTotals();
+            SalesMetrics.Totals lastHour = salesMetrics.last(SalesMetrics.Granularity.MINUTE, 60);
+            SalesMetrics.Totals lastDay = salesMetrics.last(SalesMetrics.Granularity.HOUR, 24);
+            log.info("=== SALES REPORT ===");
+            log.info("Total Orders: {}", total.orders());
+            log.info("Total Sales: ${}", Money.formatted(total.revenueCents()));
+            log.info("Average Order Value: ${}", Money.formatted(total.averageCents()));
+            log.info("Last Hour: {} orders, ${}", lastHour.orders(), Money.formatted(lastHour.revenueCents()));
+            log.info("Last 24 Hours: {} orders, ${}", lastDay.orders(), Money.formatted(lastDay.revenueCents()));
+        } catch (SQLException | RuntimeException e) {
+            call.fail();
+            throw e;
+        } finally {
+            call.end();
+        }
     }
 }
 
@@ -461,13 +1079,13 @@ public class EcommerceManager {
 class Product {
     private int id;
     private String name;
-    private double price;
+    private long priceCents;
     private String sku;
 
     public Product(int id, String name, double price, String sku) {
         this.id = id;
         this.name = name;
-        this.price = price;
+        this.priceCents = Money.toCents(price);
         this.sku = sku;
     }
 
@@ -476,8 +1094,10 @@ class Product {
     public void setId(int id) { this.id = id; }
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
-    public double getPrice() { return price; }
-    public void setPrice(double price) { this.price = price; }
+    public double getPrice() { return Money.toDouble(priceCents); }
+    public void setPrice(double price) { this.priceCents = Money.toCents(price); }
+    public long getPriceCents() { return priceCents; }
+    public void setPriceCents(long priceCents) { this.priceCents = priceCents; }
     public String getSku() { return sku; }
     public void setSku(String sku) { this.sku = sku; }
 }
@@ -538,16 +1158,16 @@ class CartItem {
     private int id;
     private int productId;
     private int quantity;
-    private double unitPrice;
-    private double totalPrice;
+    private long unitPriceCents;
+    private long totalPriceCents;
     private String productName;
 
-    public CartItem(int id, int productId, int quantity, double unitPrice, double totalPrice, String productName) {
+    public CartItem(int id, int productId, int quantity, long unitPriceCents, long totalPriceCents, String productName) {
         this.id = id;
         this.productId = productId;
         this.quantity = quantity;
-        this.unitPrice = unitPrice;
-        this.totalPrice = totalPrice;
+        this.unitPriceCents = unitPriceCents;
+        this.totalPriceCents = totalPriceCents;
         this.productName = productName;
     }
 
@@ -558,10 +1178,14 @@ class CartItem {
     public void setProductId(int productId) { this.productId = productId; }
     public int getQuantity() { return quantity; }
     public void setQuantity(int quantity) { this.quantity = quantity; }
-    public double getUnitPrice() { return unitPrice; }
-    public void setUnitPrice(double unitPrice) { this.unitPrice = unitPrice; }
-    public double getTotalPrice() { return totalPrice; }
-    public void setTotalPrice(double totalPrice) { this.totalPrice = totalPrice; }
+    public double getUnitPrice() { return Money.toDouble(unitPriceCents); }
+    public void setUnitPrice(double unitPrice) { this.unitPriceCents = Money.toCents(unitPrice); }
+    public double getTotalPrice() { return Money.toDouble(totalPriceCents); }
+    public void setTotalPrice(double totalPrice) { this.totalPriceCents = Money.toCents(totalPrice); }
+    public long getUnitPriceCents() { return unitPriceCents; }
+    public void setUnitPriceCents(long unitPriceCents) { this.unitPriceCents = unitPriceCents; }
+    public long getTotalPriceCents() { return totalPriceCents; }
+    public void setTotalPriceCents(long totalPriceCents) { this.totalPriceCents = totalPriceCents; }
     public String getProductName() { return productName; }
     public void setProductName(String productName) { this.productName = productName; }
 }
@@ -572,10 +1196,10 @@ class Order {
     private int cartId;
     private String orderNumber;
     private List<Product> items;
-    private double subtotal;
-    private double taxAmount;
-    private double shippingAmount;
-    private double totalAmount;
+    private long subtotalCents;
+    private long taxAmountCents;
+    private long shippingAmountCents;
+    private long totalAmountCents;
     private String status;
     private LocalDateTime orderDate;
 
@@ -590,14 +1214,22 @@ class Order {
     public void setOrderNumber(String orderNumber) { this.orderNumber = orderNumber; }
     public List<Product> getItems() { return items; }
     public void setItems(List<Product> items) { this.items = items; }
-    public double getSubtotal() { return subtotal; }
-    public void setSubtotal(double subtotal) { this.subtotal = subtotal; }
-    public double getTaxAmount() { return taxAmount; }
-    public void setTaxAmount(double taxAmount) { this.taxAmount = taxAmount; }
-    public double getShippingAmount() { return shippingAmount; }
-    public void setShippingAmount(double shippingAmount) { this.shippingAmount = shippingAmount; }
-    public double getTotalAmount() { return totalAmount; }
-    public void setTotalAmount(double totalAmount) { this.totalAmount = totalAmount; }
+    public double getSubtotal() { return Money.toDouble(subtotalCents); }
+    public void setSubtotal(double subtotal) { this.subtotalCents = Money.toCents(subtotal); }
+    public double getTaxAmount() { return Money.toDouble(taxAmountCents); }
+    public void setTaxAmount(double taxAmount) { this.taxAmountCents = Money.toCents(taxAmount); }
+    public double getShippingAmount() { return Money.toDouble(shippingAmountCents); }
+    public void setShippingAmount(double shippingAmount) { this.shippingAmountCents = Money.toCents(shippingAmount); }
+    public double getTotalAmount() { return Money.toDouble(totalAmountCents); }
+    public void setTotalAmount(double totalAmount) { this.totalAmountCents = Money.toCents(totalAmount); }
+    public long getSubtotalCents() { return subtotalCents; }
+    public void setSubtotalCents(long subtotalCents) { this.subtotalCents = subtotalCents; }
+    public long getTaxAmountCents() { return taxAmountCents; }
+    public void setTaxAmountCents(long taxAmountCents) { this.taxAmountCents = taxAmountCents; }
+    public long getShippingAmountCents() { return shippingAmountCents; }
+    public void setShippingAmountCents(long shippingAmountCents) { this.shippingAmountCents = shippingAmountCents; }
+    public long getTotalAmountCents() { return totalAmountCents; }
+    public void setTotalAmountCents(long totalAmountCents) { this.totalAmountCents = totalAmountCents; }
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
     public LocalDateTime getOrderDate() { return orderDate; }
@@ -608,9 +1240,9 @@ class Invoice {
     private int id;
     private int orderId;
     private String invoiceNumber;
-    private double amount;
-    private double taxAmount;
-    private double totalAmount;
+    private long amountCents;
+    private long taxAmountCents;
+    private long totalAmountCents;
     private String status;
     private LocalDateTime dueDate;
     private LocalDateTime createdDate;
@@ -622,12 +1254,18 @@ class Invoice {
     public void setOrderId(int orderId) { this.orderId = orderId; }
     public String getInvoiceNumber() { return invoiceNumber; }
     public void setInvoiceNumber(String invoiceNumber) { this.invoiceNumber = invoiceNumber; }
-    public double getAmount() { return amount; }
-    public void setAmount(double amount) { this.amount = amount; }
-    public double getTaxAmount() { return taxAmount; }
-    public void setTaxAmount(double taxAmount) { this.taxAmount = taxAmount; }
-    public double getTotalAmount() { return totalAmount; }
-    public void setTotalAmount(double totalAmount) { this.totalAmount = totalAmount; }
+    public double getAmount() { return Money.toDouble(amountCents); }
+    public void setAmount(double amount) { this.amountCents = Money.toCents(amount); }
+    public double getTaxAmount() { return Money.toDouble(taxAmountCents); }
+    public void setTaxAmount(double taxAmount) { this.taxAmountCents = Money.toCents(taxAmount); }
+    public double getTotalAmount() { return Money.toDouble(totalAmountCents); }
+    public void setTotalAmount(double totalAmount) { this.totalAmountCents = Money.toCents(totalAmount); }
+    public long getAmountCents() { return amountCents; }
+    public void setAmountCents(long amountCents) { this.amountCents = amountCents; }
+    public long getTaxAmountCents() { return taxAmountCents; }
+    public void setTaxAmountCents(long taxAmountCents) { this.taxAmountCents = taxAmountCents; }
+    public long getTotalAmountCents() { return totalAmountCents; }
+    public void setTotalAmountCents(long totalAmountCents) { this.totalAmountCents = totalAmountCents; }
     public String getStatus() { return status; }
     public void setStatus(String status) { this.status = status; }
     public LocalDateTime getDueDate() { return dueDate; }
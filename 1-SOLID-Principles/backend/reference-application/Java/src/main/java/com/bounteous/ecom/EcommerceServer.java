@@ -0,0 +1,381 @@
+package com.bounteous.ecom;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+
+// HTTP/JSON front end for EcommerceManager on the JDK's built-in server. Connections are kept alive between
+// requests, and each request runs on its own virtual thread, so slow clients cost a small heap object rather than
+// a platform thread. Request bodies are form-encoded and capped at maxRequestBytes; responses are written with
+// JsonWriter, and product listings stream straight from the database cursor to the socket.
+//
+//   GET    /products?afterId=&limit=&category=     GET  /products/{id}
+//   POST   /customers                               GET  /customers/{id}
+//   POST   /customers/{id}/cart                     GET  /customers/{id}/cart
+//   POST   /customers/{id}/cart/items               DELETE /customers/{id}/cart/items/{productId}
+//   GET    /customers/{id}/cart/totals
+//   POST   /customers/{id}/checkout
+public class EcommerceServer implements AutoCloseable {
+    private static final AsyncLogger log = AsyncLogger.getDefault();
+    private static final int FALLBACK_WORKERS = 200;
+    // GET /products pages; clients page on with afterId rather than asking for the whole catalog
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    static {
+        // Read once by the JDK server when its first instance is created; explicit -D settings still win
+        setDefault("sun.net.httpserver.maxIdleConnections", "20000");
+        setDefault("sun.net.httpserver.idleInterval", "30");
+        setDefault("sun.net.httpserver.maxReqHeaders", "64");
+    }
+
+    private final EcommerceManager manager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int maxRequestBytes;
+
+    public EcommerceServer(EcommerceManager manager, InetSocketAddress address, int maxRequestBytes) throws IOException {
+        this.manager = manager;
+        this.maxRequestBytes = maxRequestBytes;
+        this.executor = VirtualThreads.newPerTaskExecutor("ecom-http", FALLBACK_WORKERS);
+        this.server = HttpServer.create(address, 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        EcommerceManager manager = new EcommerceManager();
+        // Per-operation metrics in JMX, and as a table in the log every -Decom.metrics.dumpSeconds (default 60)
+        manager.getOperationMetrics().registerMBean("com.bounteous.ecom:type=EcommerceManager");
+        manager.getOperationMetrics().startPeriodicDump(Duration.ofSeconds(Long.getLong("ecom.metrics.dumpSeconds", 60)));
+        // Read replicas, e.g. -Decom.replicas=jdbc:postgresql://replica1:5432/bounteous_ecom,jdbc:postgresql://...
+        String replicas = System.getProperty("ecom.replicas");
+        if (replicas != null && !replicas.isBlank()) {
+            List<ConnectionPool> pools = new ArrayList<>();
+            for (String url : replicas.split(",")) {
+                ConnectionPoolSettings settings = new ConnectionPoolSettings();
+                settings.setUrl(url.trim());
+                pools.add(new ConnectionPool(settings));
+            }
+            ReplicaRouter.Selection selection = ReplicaRouter.Selection.valueOf(
+                System.getProperty("ecom.replicas.selection", "round_robin").toUpperCase());
+            manager.enableReadReplicas(pools, selection, Duration.ofMillis(Long.getLong("ecom.replicas.readYourWritesMillis", 5_000)));
+        }
+        EcommerceServer server = new EcommerceServer(manager, new InetSocketAddress(port), 64 * 1024);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "ecom-http-shutdown"));
+    }
+
+    public void start() {
+        server.start();
+        log.info("Listening on port {} ({} threads)", getPort(), VirtualThreads.available() ? "virtual" : "platform");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Stops accepting, gives in-flight exchanges a second to finish, then releases the manager's resources
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            manager.close();
+        } catch (SQLException e) {
+            log.warn("Closing the manager failed: {}", e.getMessage());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            route(exchange, exchange.getRequestMethod(), segments(exchange.getRequestURI().getRawPath()));
+        } catch (HttpError e) {
+            sendError(exchange, e.status, e.getMessage());
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "Invalid number: " + e.getMessage());
+        } catch (SQLException e) {
+            // Integrity violations are the caller's fault (duplicate email, out of stock, unknown customer); the rest are ours
+            String state = e.getSQLState() == null ? "" : e.getSQLState();
+            if (state.equals("23505") || state.equals("23514")) {
+                sendError(exchange, 409, e.getMessage());
+            } else if (state.startsWith("23")) {
+                sendError(exchange, 400, e.getMessage());
+            } else {
+                log.error("{} {} failed: {}", exchange.getRequestMethod(), exchange.getRequestURI(), e.getMessage());
+                sendError(exchange, 500, "Internal error");
+            }
+        } catch (RuntimeException e) {
+            log.error("{} {} failed: {}", exchange.getRequestMethod(), exchange.getRequestURI(), e.toString());
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange, String method, String[] path) throws IOException, SQLException {
+        if (path.length >= 1 && path[0].equals("products")) {
+            if (path.length == 1) {
+                requireMethod(method, "GET");
+                listProducts(exchange);
+                return;
+            }
+            if (path.length == 2) {
+                requireMethod(method, "GET");
+                Product product = manager.getProductCatalog().findById(Integer.parseInt(path[1]));
+                if (product == null) throw new HttpError(404, "Product not found");
+                sendJson(exchange, 200, json -> writeProduct(json, product));
+                return;
+            }
+        }
+        if (path.length >= 1 && path[0].equals("customers")) {
+            if (path.length == 1) {
+                requireMethod(method, "POST");
+                createCustomer(exchange);
+                return;
+            }
+            int customerId = Integer.parseInt(path[1]);
+            if (path.length == 2) {
+                requireMethod(method, "GET");
+                Customer customer = manager.getCustomer(customerId);
+                if (customer == null) throw new HttpError(404, "Customer not found");
+                sendJson(exchange, 200, json -> writeCustomer(json, customer));
+                return;
+            }
+            if (path.length == 3 && path[2].equals("cart")) {
+                if (method.equals("POST")) {
+                    int cartId = manager.createCart(customerId);
+                    sendJson(exchange, 201, json -> json.beginObject().name("cartId").value(cartId).endObject());
+                } else {
+                    requireMethod(method, "GET");
+                    EcommerceStore.CartView view = manager.getCartView(customerId);
+                    if (view == null) throw new HttpError(404, "Cart not found");
+                    sendJson(exchange, 200, json -> writeCart(json, view));
+                }
+                return;
+            }
+            if (path.length == 4 && path[2].equals("cart") && path[3].equals("totals")) {
+                requireMethod(method, "GET");
+                EcommerceStore.CartTotals totals = manager.getCartTotals(customerId);
+                if (totals == null) throw new HttpError(404, "Cart not found");
+                sendJson(exchange, 200, json -> writeCartTotals(json.beginObject(), totals).endObject());
+                return;
+            }
+            if (path.length == 4 && path[2].equals("cart") && path[3].equals("items")) {
+                requireMethod(method, "POST");
+                addToCart(exchange, customerId);
+                return;
+            }
+            if (path.length == 5 && path[2].equals("cart") && path[3].equals("items")) {
+                requireMethod(method, "DELETE");
+                manager.removeFromCart(customerId, Integer.parseInt(path[4]));
+                exchange.sendResponseHeaders(204, -1);
+                return;
+            }
+            if (path.length == 3 && path[2].equals("checkout")) {
+                requireMethod(method, "POST");
+                Order order = manager.processOrder(customerId);
+                if (order == null) throw new HttpError(409, "Cart is empty or does not exist");
+                sendJson(exchange, 201, json -> writeOrder(json, order));
+                return;
+            }
+        }
+        throw new HttpError(404, "Not found");
+    }
+
+    private void listProducts(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, String> params = parseForm(exchange.getRequestURI().getRawQuery());
+        ProductQuery query = new ProductQuery();
+        query.setAfterId(Integer.parseInt(params.getOrDefault("afterId", "0")));
+        int limit = Integer.parseInt(params.getOrDefault("limit", String.valueOf(DEFAULT_PAGE_SIZE)));
+        if (limit < 1 || limit > MAX_PAGE_SIZE) throw new HttpError(400, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        query.setLimit(limit);
+        query.setCategory(params.get("category"));
+        try (Stream<Product> products = manager.streamProducts(query)) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            // Length 0 selects chunked encoding, so rows go out as they are read
+            exchange.sendResponseHeaders(200, 0);
+            Writer writer = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+            JsonWriter json = new JsonWriter(writer);
+            json.beginArray();
+            for (Product product : (Iterable<Product>) products::iterator) {
+                writeProduct(json, product);
+            }
+            json.endArray();
+            json.flush();
+        }
+    }
+
+    private void createCustomer(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, String> form = readForm(exchange);
+        int customerId = manager.createCustomer(form.get("email"), form.get("firstName"), form.get("lastName"),
+            form.get("phone"), form.get("address"));
+        sendJson(exchange, 201, json -> json.beginObject().name("id").value(customerId).endObject());
+    }
+
+    private void addToCart(HttpExchange exchange, int customerId) throws IOException, SQLException {
+        Map<String, String> form = readForm(exchange);
+        String productId = form.get("productId");
+        if (productId == null) throw new HttpError(400, "productId is required");
+        int quantity = Integer.parseInt(form.getOrDefault("quantity", "1"));
+        if (quantity <= 0) throw new HttpError(400, "quantity must be positive");
+        AddToCartResult result = manager.addToCartAtomic(customerId, Integer.parseInt(productId), quantity);
+        int status = switch (result) {
+            case ADDED -> 201;
+            case UPDATED -> 200;
+            default -> 404;
+        };
+        sendJson(exchange, status, json -> json.beginObject().name("result").value(result.name()).endObject());
+    }
+
+    private static void writeProduct(JsonWriter json, Product product) throws IOException {
+        json.beginObject()
+            .name("id").value(product.getId())
+            .name("name").value(product.getName())
+            .name("sku").value(product.getSku())
+            .name("price").money(product.getPriceCents())
+            .endObject();
+    }
+
+    private static void writeCustomer(JsonWriter json, Customer customer) throws IOException {
+        json.beginObject()
+            .name("id").value(customer.getId())
+            .name("email").value(customer.getEmail())
+            .name("firstName").value(customer.getFirstName())
+            .name("lastName").value(customer.getLastName())
+            .name("phone").value(customer.getPhone())
+            .name("address").value(customer.getAddress())
+            .endObject();
+    }
+
+    private static void writeCart(JsonWriter json, EcommerceStore.CartView view) throws IOException {
+        Cart cart = view.cart();
+        json.beginObject()
+            .name("id").value(cart.getId())
+            .name("customerId").value(cart.getCustomerId())
+            .name("items").beginArray();
+        for (CartItem item : cart.getItems()) {
+            json.beginObject()
+                .name("productId").value(item.getProductId())
+                .name("productName").value(item.getProductName())
+                .name("quantity").value(item.getQuantity())
+                .name("unitPrice").money(item.getUnitPriceCents())
+                .name("totalPrice").money(item.getTotalPriceCents())
+                .endObject();
+        }
+        json.endArray();
+        writeCartTotals(json, view.totals()).endObject();
+    }
+
+    private static JsonWriter writeCartTotals(JsonWriter json, EcommerceStore.CartTotals totals) throws IOException {
+        return json.name("lineCount").value(totals.lineCount())
+            .name("itemCount").value(totals.itemCount())
+            .name("subtotal").money(totals.subtotalCents());
+    }
+
+    private static void writeOrder(JsonWriter json, Order order) throws IOException {
+        json.beginObject()
+            .name("id").value(order.getId())
+            .name("orderNumber").value(order.getOrderNumber())
+            .name("status").value(order.getStatus())
+            .name("subtotal").money(order.getSubtotalCents())
+            .name("tax").money(order.getTaxAmountCents())
+            .name("shipping").money(order.getShippingAmountCents())
+            .name("total").money(order.getTotalAmountCents())
+            .endObject();
+    }
+
+    private interface JsonBody {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    // Small responses are buffered so they go out with a Content-Length in a single write
+    private static void sendJson(HttpExchange exchange, int status, JsonBody body) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+        JsonWriter json = new JsonWriter(writer);
+        body.write(json);
+        json.flush();
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, buffer.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            buffer.writeTo(out);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) return;
+        sendJson(exchange, status, json -> json.beginObject().name("error").value(message).endObject());
+    }
+
+    private Map<String, String> readForm(HttpExchange exchange) throws IOException {
+        String declaredLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (declaredLength != null && Long.parseLong(declaredLength) > maxRequestBytes) {
+            throw new HttpError(413, "Request body exceeds " + maxRequestBytes + " bytes");
+        }
+        // Chunked bodies carry no length, so stop reading one byte past the limit
+        InputStream in = exchange.getRequestBody();
+        byte[] body = in.readNBytes(maxRequestBytes + 1);
+        if (body.length > maxRequestBytes) {
+            throw new HttpError(413, "Request body exceeds " + maxRequestBytes + " bytes");
+        }
+        return parseForm(new String(body, StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> parseForm(String encoded) {
+        Map<String, String> values = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) return values;
+        for (String pair : encoded.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            values.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static String[] segments(String path) {
+        String trimmed = path.startsWith("/") ? path.substring(1) : path;
+        if (trimmed.endsWith("/")) trimmed = trimmed.substring(0, trimmed.length() - 1);
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/");
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equals(expected)) throw new HttpError(405, "Method " + method + " not allowed");
+    }
+
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.bounteous.ecom;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Storage engine behind EcommerceManager: every read and write of products, customers, carts, orders and invoices.
+// PostgresStore keeps the data in the database; InMemoryStore keeps it in int-keyed maps in this process.
+// Both enforce the schema's rules (unique customer email, one cart per customer, one line per product per cart,
+// foreign keys) and report violations as SQLExceptions with the PostgreSQL message and SQLState, so callers handle
+// both engines the same way.
+public interface EcommerceStore {
+
+    // Rules EcommerceManager applies inside the store's checkout transaction
+    interface CheckoutRules {
+        // Builds the order (pricing, status, date) for a non-empty cart; the store assigns id and order number.
+        // Throwing rolls the checkout back.
+        Order createOrder(Cart cart) throws SQLException;
+
+        // Builds the invoice for a saved order; the store assigns id and invoice number
+        Invoice createInvoice(Order order);
+    }
+
+    // A committed checkout: the order, its invoice and the cart lines that were ordered
+    record Checkout(Order order, Invoice invoice, List<CartItem> items) {
+    }
+
+    // One checkout of a checkoutAll batch, with its own rules
+    record CheckoutRequest(int customerId, CheckoutRules rules) {
+    }
+
+    // What checkout would have returned (null for an empty cart), or what it would have thrown
+    record CheckoutResult(Checkout checkout, Exception error) {
+    }
+
+    // Outcome of upsertCartItem, with what the log line needs
+    record CartUpsert(AddToCartResult result, String productName, int quantity) {
+    }
+
+    // What the cart badge shows: number of lines, units across them and the sum of their total prices
+    record CartTotals(int cartId, int lineCount, int itemCount, long subtotalCents) {
+        static CartTotals of(Cart cart) {
+            int itemCount = 0;
+            long subtotalCents = 0;
+            for (CartItem item : cart.getItems()) {
+                itemCount += item.getQuantity();
+                subtotalCents += item.getTotalPriceCents();
+            }
+            return new CartTotals(cart.getId(), cart.getItems().size(), itemCount, subtotalCents);
+        }
+    }
+
+    // A cart with its lines and their totals, read together
+    record CartView(Cart cart, CartTotals totals) {
+    }
+
+    // Receives the rows importCustomers could not insert: 1-based position in the input, the row, and why
+    interface ImportRejects {
+        void reject(long position, Customer row, String reason) throws IOException;
+    }
+
+    record ImportResult(long imported, long rejected) {
+    }
+
+    // Products, in id order. The stream may hold resources until closed: use try-with-resources.
+    Stream<Product> streamProducts(ProductQuery query) throws SQLException;
+
+    int insertProduct(String name, String description, long priceCents, String sku, String category, int stockQuantity) throws SQLException;
+
+    void updateProductStock(int productId, int stockQuantity) throws SQLException;
+
+    // Adds each delta (productId -> units, negative to subtract) to that product's stock_quantity, all or nothing
+    void addProductStock(Map<Integer, Integer> deltas) throws SQLException;
+
+    // Takes up to units from a product's stock_quantity without taking it below floor (or zero); returns the units
+    // taken, 0 when there were none or there is no such product
+    int takeProductStock(int productId, int units, int floor) throws SQLException;
+
+    // stock_quantity, or null if there is no such product
+    Integer findProductStock(int productId) throws SQLException;
+
+    int insertCustomer(String email, String firstName, String lastName, String phone, String address) throws SQLException;
+
+    // Inserts customers in chunks of chunkSize, one transaction per chunk, reading the iterator one chunk at a time.
+    // A row that lacks email, first or last name, exceeds a column's length, or whose email is already taken (by a
+    // stored customer or an earlier row) goes to rejects instead of failing the load.
+    ImportResult importCustomers(Iterator<Customer> customers, int chunkSize, ImportRejects rejects) throws SQLException, IOException;
+
+    // False if there is no such customer
+    boolean updateCustomer(Customer customer) throws SQLException;
+
+    // Also deletes the customer's cart and its lines
+    void deleteCustomer(int customerId) throws SQLException;
+
+    Customer findCustomer(int customerId) throws SQLException;
+
+    int insertCart(int customerId) throws SQLException;
+
+    // The customer's cart with its lines in the order they were added, or null
+    Cart findCart(int customerId) throws SQLException;
+
+    // findCart plus the cart's totals, from one read; null if the customer has no cart
+    CartView findCartView(int customerId) throws SQLException;
+
+    // Only the totals, without loading the lines; null if the customer has no cart
+    CartTotals findCartTotals(int customerId) throws SQLException;
+
+    List<Cart> findAllCarts() throws SQLException;
+
+    CartItem findCartItem(int cartId, int productId) throws SQLException;
+
+    void insertCartItem(int cartId, int productId, int quantity, long unitPriceCents) throws SQLException;
+
+    void updateCartItem(int cartItemId, int quantity, long totalPriceCents) throws SQLException;
+
+    // Validates customer, cart and product and adds the quantity to the line, creating it if needed, atomically
+    CartUpsert upsertCartItem(int customerId, int productId, int quantity) throws SQLException;
+
+    // upsertCartItem for several products at once (productId -> quantity), validating customer and cart once. The
+    // outcomes are keyed by productId in the order of quantities; a product with no row in products gets
+    // PRODUCT_NOT_FOUND and the others are still added.
+    Map<Integer, CartUpsert> upsertCartItems(int customerId, Map<Integer, Integer> quantities) throws SQLException;
+
+    void removeCartItem(int cartId, int productId) throws SQLException;
+
+    // Replaces the lines of each given cart with the lines it carries, all or nothing
+    void replaceCartItems(List<Cart> carts) throws SQLException;
+
+    // Turns the customer's cart into an order with its items and invoice and empties the cart, all or nothing.
+    // Returns null, writing nothing, if the cart is missing or empty. salesMetrics is seeded from the stored
+    // orders before the new one is added, so the new order is never counted twice.
+    Checkout checkout(int customerId, CheckoutRules rules, SalesMetrics salesMetrics) throws SQLException;
+
+    // Runs several checkouts as one transaction, each isolated from the others: one that fails is undone on its own
+    // and reported in its result while the rest commit together. Results are in request order. Throws, with
+    // nothing written, only if the batch as a whole could not be committed.
+    List<CheckoutResult> checkoutAll(List<CheckoutRequest> requests, SalesMetrics salesMetrics) throws SQLException;
+
+    // Saves an invoice for an existing order, assigning its id and number
+    Invoice insertInvoice(Invoice invoice) throws SQLException;
+
+    // The customer's orders with their items, oldest first
+    List<Order> findOrders(int customerId) throws SQLException;
+
+    Invoice findInvoiceByOrder(int orderId) throws SQLException;
+
+    // Loads order history into salesMetrics unless that has happened already
+    void seedSalesMetrics(SalesMetrics salesMetrics) throws SQLException;
+}
@@ -0,0 +1,848 @@
+package com.bounteous.ecom;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+// EcommerceStore held entirely in this process, for tests, demos and benchmarks that should not pay for a database.
+// Tables are IntObjectHashMaps keyed by id, with the schema's unique indexes (customer email, product SKU, one cart
+// per customer, one line per product per cart, order and invoice numbers) and foreign keys checked on every write.
+// Violations raise SQLExceptions worded like PostgreSQL's. One read/write lock guards everything; a write validates
+// all of its rows before changing any, so a failed write leaves nothing behind. Nothing survives the process.
+public class InMemoryStore implements EcommerceStore {
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntObjectHashMap<ProductRow> products = new IntObjectHashMap<>();
+    // Ids only grow and products are never deleted, so this list is the products in id order
+    private final List<ProductRow> productsInIdOrder = new ArrayList<>();
+    private final Set<String> productSkus = new HashSet<>();
+    private final IntObjectHashMap<Customer> customers = new IntObjectHashMap<>();
+    private final Map<String, Integer> customerIdsByEmail = new HashMap<>();
+    private final IntObjectHashMap<CartRow> carts = new IntObjectHashMap<>();
+    private final IntObjectHashMap<CartRow> cartsByCustomer = new IntObjectHashMap<>();
+    private final IntObjectHashMap<LineRow> cartLines = new IntObjectHashMap<>();
+    private final IntObjectHashMap<OrderRow> orders = new IntObjectHashMap<>();
+    private final IntObjectHashMap<List<OrderRow>> ordersByCustomer = new IntObjectHashMap<>();
+    private final Set<String> orderNumbers = new HashSet<>();
+    private final IntObjectHashMap<Invoice> invoicesByOrder = new IntObjectHashMap<>();
+    private final Set<String> invoiceNumbers = new HashSet<>();
+    private int lastProductId;
+    private int lastCustomerId;
+    private int lastCartId;
+    private int lastCartLineId;
+    private int lastOrderId;
+    private int lastInvoiceId;
+    private long lastOrderNumber;
+    private long lastInvoiceNumber;
+
+    // A store holding the sample customers and products from database/init.sql
+    public static InMemoryStore withSampleData() {
+        InMemoryStore store = new InMemoryStore();
+        try {
+            store.insertCustomer("john.doe@example.com", "John", "Doe", "555-0101", "123 Main St");
+            store.insertCustomer("jane.smith@example.com", "Jane", "Smith", "555-0102", "456 Oak Ave");
+            store.insertCustomer("bob.johnson@example.com", "Bob", "Johnson", "555-0103", "789 Pine Rd");
+            store.insertProduct("Laptop Computer", "High-performance laptop for work and gaming", 129999, "LAPTOP-001", "Electronics", 50);
+            store.insertProduct("Wireless Mouse", "Ergonomic wireless mouse with USB receiver", 2999, "MOUSE-001", "Electronics", 200);
+            store.insertProduct("Mechanical Keyboard", "RGB mechanical keyboard with blue switches", 14999, "KEYBOARD-001", "Electronics", 75);
+            store.insertProduct("Monitor 24\"", "24-inch LED monitor with 1080p resolution", 19999, "MONITOR-001", "Electronics", 30);
+            store.insertProduct("Desk Chair", "Ergonomic office chair with lumbar support", 29999, "CHAIR-001", "Furniture", 25);
+            store.insertProduct("Coffee Mug", "Ceramic coffee mug with company logo", 1299, "MUG-001", "Accessories", 100);
+            store.insertProduct("Notebook", "Spiral-bound notebook with 200 pages", 899, "NOTEBOOK-001", "Office Supplies", 150);
+            store.insertProduct("Pen Set", "Set of 5 ballpoint pens in various colors", 1599, "PEN-001", "Office Supplies", 80);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Sample data violates a constraint", e);
+        }
+        return store;
+    }
+
+    // Materialized under the read lock, so the stream holds no lock and needs no closing (though closing is harmless)
+    @Override
+    public Stream<Product> streamProducts(ProductQuery query) {
+        List<ProductRow> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int limit = query.getLimit() > 0 ? query.getLimit() : Integer.MAX_VALUE;
+            for (int i = firstProductAfter(query.getAfterId()); i < productsInIdOrder.size() && matches.size() < limit; i++) {
+                ProductRow row = productsInIdOrder.get(i);
+                if (query.getCategory() == null || query.getCategory().equals(row.category)) {
+                    matches.add(row);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches.stream().map(ProductRow::toProduct);
+    }
+
+    private int firstProductAfter(int afterId) {
+        int low = 0;
+        int high = productsInIdOrder.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (productsInIdOrder.get(mid).id <= afterId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public int insertProduct(String name, String description, long priceCents, String sku, String category, int stockQuantity) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            requireNotNull(name, "name", "products");
+            requireNotNull(sku, "sku", "products");
+            if (productSkus.contains(sku)) {
+                throw uniqueViolation("products_sku_key", "sku", sku);
+            }
+            ProductRow row = new ProductRow(++lastProductId, name, description, priceCents, sku, category, stockQuantity);
+            products.put(row.id, row);
+            productsInIdOrder.add(row);
+            productSkus.add(sku);
+            return row.id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateProductStock(int productId, int stockQuantity) {
+        lock.writeLock().lock();
+        try {
+            ProductRow row = products.get(productId);
+            if (row != null) {
+                row.stockQuantity = stockQuantity;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addProductStock(Map<Integer, Integer> deltas) {
+        lock.writeLock().lock();
+        try {
+            deltas.forEach((productId, delta) -> {
+                ProductRow row = products.get(productId);
+                if (row != null) {
+                    row.stockQuantity += delta;
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int takeProductStock(int productId, int units, int floor) {
+        lock.writeLock().lock();
+        try {
+            ProductRow row = products.get(productId);
+            if (row == null) return 0;
+            int taken = Math.min(units, Math.max(row.stockQuantity - Math.max(floor, 0), 0));
+            row.stockQuantity -= taken;
+            return taken;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Integer findProductStock(int productId) {
+        lock.readLock().lock();
+        try {
+            ProductRow row = products.get(productId);
+            return row == null ? null : row.stockQuantity;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int insertCustomer(String email, String firstName, String lastName, String phone, String address) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            checkCustomer(email, firstName, lastName, phone, 0);
+            int customerId = ++lastCustomerId;
+            customers.put(customerId, new Customer(customerId, email, firstName, lastName, phone, address));
+            customerIdsByEmail.put(email, customerId);
+            return customerId;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateCustomer(Customer customer) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            Customer existing = customers.get(customer.getId());
+            if (existing == null) return false;
+            checkCustomer(customer.getEmail(), customer.getFirstName(), customer.getLastName(), customer.getPhone(),
+                customer.getId());
+            customerIdsByEmail.remove(existing.getEmail());
+            customerIdsByEmail.put(customer.getEmail(), customer.getId());
+            customers.put(customer.getId(), copy(customer));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Same reasons, in the same order of precedence, as PostgresStore's import
+    @Override
+    public ImportResult importCustomers(Iterator<Customer> input, int chunkSize, ImportRejects rejects) throws IOException {
+        long imported = 0;
+        long position = 0;
+        List<Customer> chunk = new ArrayList<>(Math.min(chunkSize, 10_000));
+        List<Object[]> chunkRejects = new ArrayList<>();
+        Set<String> chunkEmails = new HashSet<>();
+        while (input.hasNext()) {
+            chunk.clear();
+            while (chunk.size() < chunkSize && input.hasNext()) {
+                chunk.add(input.next());
+            }
+            chunkRejects.clear();
+            chunkEmails.clear();
+            lock.writeLock().lock();
+            try {
+                for (Customer row : chunk) {
+                    position++;
+                    String reason = importRejection(row, chunkEmails);
+                    if (reason != null) {
+                        chunkRejects.add(new Object[] {position, row, reason});
+                        continue;
+                    }
+                    int customerId = ++lastCustomerId;
+                    customers.put(customerId, new Customer(customerId, row.getEmail(), row.getFirstName(),
+                        row.getLastName(), row.getPhone(), row.getAddress()));
+                    customerIdsByEmail.put(row.getEmail(), customerId);
+                    imported++;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (Object[] reject : chunkRejects) {
+                rejects.reject((Long) reject[0], (Customer) reject[1], (String) reject[2]);
+            }
+        }
+        return new ImportResult(imported, position - imported);
+    }
+
+    private String importRejection(Customer row, Set<String> chunkEmails) {
+        if (row.getEmail() == null || row.getFirstName() == null || row.getLastName() == null) {
+            return "missing required field";
+        }
+        if (tooLong(row.getEmail(), 255) || tooLong(row.getFirstName(), 100) || tooLong(row.getLastName(), 100)
+                || tooLong(row.getPhone(), 20)) {
+            return "value too long";
+        }
+        if (!chunkEmails.add(row.getEmail())) {
+            return "duplicate email in input";
+        }
+        return customerIdsByEmail.containsKey(row.getEmail()) ? "email already exists" : null;
+    }
+
+    private void checkCustomer(String email, String firstName, String lastName, String phone, int customerId) throws SQLException {
+        requireNotNull(email, "email", "customers");
+        requireNotNull(firstName, "first_name", "customers");
+        requireNotNull(lastName, "last_name", "customers");
+        requireLength(email, 255);
+        requireLength(firstName, 100);
+        requireLength(lastName, 100);
+        requireLength(phone, 20);
+        Integer owner = customerIdsByEmail.get(email);
+        if (owner != null && owner != customerId) {
+            throw uniqueViolation("customers_email_key", "email", email);
+        }
+    }
+
+    @Override
+    public void deleteCustomer(int customerId) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            Customer customer = customers.get(customerId);
+            if (customer == null) return;
+            if (ordersByCustomer.containsKey(customerId)) {
+                throw new SQLException("ERROR: update or delete on table \"customers\" violates foreign key constraint "
+                    + "\"orders_customer_id_fkey\" on table \"orders\"", "23503");
+            }
+            // carts and cart_items are ON DELETE CASCADE
+            CartRow cart = cartsByCustomer.remove(customerId);
+            if (cart != null) {
+                carts.remove(cart.id);
+                for (LineRow line : cart.lines.values()) {
+                    cartLines.remove(line.id);
+                }
+            }
+            customers.remove(customerId);
+            customerIdsByEmail.remove(customer.getEmail());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Customer findCustomer(int customerId) {
+        lock.readLock().lock();
+        try {
+            Customer customer = customers.get(customerId);
+            return customer == null ? null : copy(customer);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int insertCart(int customerId) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            if (!customers.containsKey(customerId)) {
+                throw foreignKeyViolation("carts", "carts_customer_id_fkey", "customer_id", customerId, "customers");
+            }
+            if (cartsByCustomer.containsKey(customerId)) {
+                throw uniqueViolation("carts_customer_id_key", "customer_id", customerId);
+            }
+            CartRow cart = new CartRow(++lastCartId, customerId);
+            carts.put(cart.id, cart);
+            cartsByCustomer.put(customerId, cart);
+            return cart.id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Cart findCart(int customerId) {
+        lock.readLock().lock();
+        try {
+            CartRow cart = cartsByCustomer.get(customerId);
+            return cart == null ? null : toCart(cart);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CartView findCartView(int customerId) {
+        lock.readLock().lock();
+        try {
+            CartRow row = cartsByCustomer.get(customerId);
+            if (row == null) return null;
+            Cart cart = toCart(row);
+            return new CartView(cart, CartTotals.of(cart));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CartTotals findCartTotals(int customerId) {
+        lock.readLock().lock();
+        try {
+            CartRow row = cartsByCustomer.get(customerId);
+            if (row == null) return null;
+            int itemCount = 0;
+            long subtotalCents = 0;
+            for (LineRow line : row.lines.values()) {
+                itemCount += line.quantity;
+                subtotalCents += line.totalPriceCents;
+            }
+            return new CartTotals(row.id, row.lines.size(), itemCount, subtotalCents);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Cart> findAllCarts() {
+        lock.readLock().lock();
+        try {
+            List<CartRow> rows = carts.values();
+            rows.sort(Comparator.comparingInt(cart -> cart.id));
+            List<Cart> result = new ArrayList<>(rows.size());
+            for (CartRow row : rows) {
+                result.add(toCart(row));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CartItem findCartItem(int cartId, int productId) {
+        lock.readLock().lock();
+        try {
+            CartRow cart = carts.get(cartId);
+            LineRow line = cart == null ? null : cart.lines.get(productId);
+            return line == null ? null : toCartItem(line);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void insertCartItem(int cartId, int productId, int quantity, long unitPriceCents) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            CartRow cart = checkCartLine(cartId, productId);
+            if (cart.lines.containsKey(productId)) {
+                throw uniqueViolation("cart_items_cart_id_product_id_key", "cart_id, product_id", cartId + ", " + productId);
+            }
+            addLine(cart, productId, quantity, unitPriceCents, unitPriceCents * quantity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateCartItem(int cartItemId, int quantity, long totalPriceCents) {
+        lock.writeLock().lock();
+        try {
+            LineRow line = cartLines.get(cartItemId);
+            if (line != null) {
+                line.quantity = quantity;
+                line.totalPriceCents = totalPriceCents;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public CartUpsert upsertCartItem(int customerId, int productId, int quantity) {
+        lock.writeLock().lock();
+        try {
+            ProductRow product = products.get(productId);
+            String productName = product == null ? null : product.name;
+            if (!customers.containsKey(customerId)) {
+                return new CartUpsert(AddToCartResult.CUSTOMER_NOT_FOUND, productName, 0);
+            }
+            CartRow cart = cartsByCustomer.get(customerId);
+            if (cart == null) {
+                return new CartUpsert(AddToCartResult.CART_NOT_FOUND, productName, 0);
+            }
+            if (product == null) {
+                return new CartUpsert(AddToCartResult.PRODUCT_NOT_FOUND, null, 0);
+            }
+            LineRow line = cart.lines.get(productId);
+            if (line == null) {
+                addLine(cart, productId, quantity, product.priceCents, product.priceCents * quantity);
+                return new CartUpsert(AddToCartResult.ADDED, productName, quantity);
+            }
+            line.quantity += quantity;
+            line.unitPriceCents = product.priceCents;
+            line.totalPriceCents = line.quantity * product.priceCents;
+            return new CartUpsert(AddToCartResult.UPDATED, productName, line.quantity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Integer, CartUpsert> upsertCartItems(int customerId, Map<Integer, Integer> quantities) {
+        Map<Integer, CartUpsert> upserts = new LinkedHashMap<>();
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+                upserts.put(line.getKey(), upsertCartItem(customerId, line.getKey(), line.getValue()));
+            }
+            return upserts;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeCartItem(int cartId, int productId) {
+        lock.writeLock().lock();
+        try {
+            CartRow cart = carts.get(cartId);
+            LineRow line = cart == null ? null : cart.lines.remove(productId);
+            if (line != null) {
+                cartLines.remove(line.id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void replaceCartItems(List<Cart> replacements) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            for (Cart replacement : replacements) {
+                Set<Integer> productIds = new HashSet<>();
+                for (CartItem item : replacement.getItems()) {
+                    checkCartLine(replacement.getId(), item.getProductId());
+                    if (!productIds.add(item.getProductId())) {
+                        throw uniqueViolation("cart_items_cart_id_product_id_key", "cart_id, product_id",
+                            replacement.getId() + ", " + item.getProductId());
+                    }
+                }
+            }
+            for (Cart replacement : replacements) {
+                CartRow cart = carts.get(replacement.getId());
+                if (cart == null) continue;
+                clearLines(cart);
+                for (CartItem item : replacement.getItems()) {
+                    addLine(cart, item.getProductId(), item.getQuantity(), item.getUnitPriceCents(), item.getTotalPriceCents());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Everything is checked before anything is stored, which is what makes the checkout all or nothing
+    @Override
+    public Checkout checkout(int customerId, CheckoutRules rules, SalesMetrics salesMetrics) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            CartRow cartRow = cartsByCustomer.get(customerId);
+            if (cartRow == null || cartRow.lines.size() == 0) {
+                return null;
+            }
+            Cart cart = toCart(cartRow);
+            Order order = rules.createOrder(cart);
+            order.setId(lastOrderId + 1);
+            order.setOrderNumber(number("ORD", ++lastOrderNumber));
+            if (orderNumbers.contains(order.getOrderNumber())) {
+                throw uniqueViolation("orders_order_number_key", "order_number", order.getOrderNumber());
+            }
+            Invoice invoice = prepareInvoice(rules.createInvoice(order));
+
+            salesMetrics.ensureSeeded(this::replayOrders);
+            lastOrderId = order.getId();
+            storeOrder(order, cart.getItems());
+            storeInvoice(invoice);
+            clearLines(cartRow);
+            return new Checkout(order, invoice, cart.getItems());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Each checkout validates before it writes, so a failed one has nothing to undo
+    @Override
+    public List<CheckoutResult> checkoutAll(List<CheckoutRequest> requests, SalesMetrics salesMetrics) {
+        List<CheckoutResult> results = new ArrayList<>(requests.size());
+        lock.writeLock().lock();
+        try {
+            for (CheckoutRequest request : requests) {
+                try {
+                    results.add(new CheckoutResult(checkout(request.customerId(), request.rules(), salesMetrics), null));
+                } catch (SQLException | RuntimeException e) {
+                    results.add(new CheckoutResult(null, e));
+                }
+            }
+            return results;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Invoice insertInvoice(Invoice invoice) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            if (!orders.containsKey(invoice.getOrderId())) {
+                throw foreignKeyViolation("invoices", "invoices_order_id_fkey", "order_id", invoice.getOrderId(), "orders");
+            }
+            storeInvoice(prepareInvoice(invoice));
+            return invoice;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Invoice prepareInvoice(Invoice invoice) throws SQLException {
+        invoice.setInvoiceNumber(number("INV", ++lastInvoiceNumber));
+        if (invoiceNumbers.contains(invoice.getInvoiceNumber())) {
+            throw uniqueViolation("invoices_invoice_number_key", "invoice_number", invoice.getInvoiceNumber());
+        }
+        return invoice;
+    }
+
+    private void storeInvoice(Invoice invoice) {
+        invoice.setId(++lastInvoiceId);
+        invoiceNumbers.add(invoice.getInvoiceNumber());
+        if (!invoicesByOrder.containsKey(invoice.getOrderId())) {
+            invoicesByOrder.put(invoice.getOrderId(), copy(invoice));
+        }
+    }
+
+    private void storeOrder(Order order, List<CartItem> items) {
+        List<LineRow> lines = new ArrayList<>(items.size());
+        for (CartItem item : items) {
+            lines.add(new LineRow(0, item.getProductId(), item.getQuantity(),
+                item.getUnitPriceCents(), item.getTotalPriceCents()));
+        }
+        OrderRow row = new OrderRow(copy(order), lines);
+        orders.put(order.getId(), row);
+        orderNumbers.add(order.getOrderNumber());
+        List<OrderRow> customerOrders = ordersByCustomer.get(order.getCustomerId());
+        if (customerOrders == null) {
+            customerOrders = new ArrayList<>();
+            ordersByCustomer.put(order.getCustomerId(), customerOrders);
+        }
+        customerOrders.add(row);
+    }
+
+    @Override
+    public List<Order> findOrders(int customerId) {
+        lock.readLock().lock();
+        try {
+            List<OrderRow> rows = ordersByCustomer.get(customerId);
+            if (rows == null) return new ArrayList<>();
+            List<Order> result = new ArrayList<>(rows.size());
+            for (OrderRow row : rows) {
+                Order order = copy(row.order);
+                List<Product> items = new ArrayList<>(row.lines.size());
+                for (LineRow line : row.lines) {
+                    ProductRow product = products.get(line.productId);
+                    Product item = new Product(line.productId, product.name, 0, product.sku);
+                    item.setPriceCents(line.unitPriceCents);
+                    items.add(item);
+                }
+                order.setItems(items);
+                result.add(order);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Invoice findInvoiceByOrder(int orderId) {
+        lock.readLock().lock();
+        try {
+            Invoice invoice = invoicesByOrder.get(orderId);
+            return invoice == null ? null : copy(invoice);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void seedSalesMetrics(SalesMetrics salesMetrics) throws SQLException {
+        if (salesMetrics.isSeeded()) return;
+        lock.readLock().lock();
+        try {
+            salesMetrics.ensureSeeded(this::replayOrders);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void replayOrders(SalesMetrics salesMetrics) {
+        ZoneId zone = ZoneId.systemDefault();
+        for (OrderRow row : orders.values()) {
+            salesMetrics.record(row.order.getOrderDate().atZone(zone).toInstant().toEpochMilli(), row.order.getTotalAmountCents());
+        }
+    }
+
+    // For tests: the number the next invoice will be given
+    String peekNextInvoiceNumber() {
+        lock.readLock().lock();
+        try {
+            return number("INV", lastInvoiceNumber + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // For tests: takes an invoice number as another writer would, without an order behind it
+    void reserveInvoiceNumber(String invoiceNumber) {
+        lock.writeLock().lock();
+        try {
+            invoiceNumbers.add(invoiceNumber);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private CartRow checkCartLine(int cartId, int productId) throws SQLException {
+        CartRow cart = carts.get(cartId);
+        if (cart == null) {
+            throw foreignKeyViolation("cart_items", "cart_items_cart_id_fkey", "cart_id", cartId, "carts");
+        }
+        if (!products.containsKey(productId)) {
+            throw foreignKeyViolation("cart_items", "cart_items_product_id_fkey", "product_id", productId, "products");
+        }
+        return cart;
+    }
+
+    private void addLine(CartRow cart, int productId, int quantity, long unitPriceCents, long totalPriceCents) {
+        LineRow line = new LineRow(++lastCartLineId, productId, quantity, unitPriceCents, totalPriceCents);
+        cart.lines.put(productId, line);
+        cartLines.put(line.id, line);
+    }
+
+    private void clearLines(CartRow cart) {
+        for (LineRow line : cart.lines.values()) {
+            cart.lines.remove(line.productId);
+            cartLines.remove(line.id);
+        }
+    }
+
+    // Lines in insertion order, as a heap table without an ORDER BY would usually return them
+    private Cart toCart(CartRow row) {
+        List<LineRow> lines = row.lines.values();
+        lines.sort(Comparator.comparingInt(line -> line.id));
+        List<CartItem> items = new ArrayList<>(lines.size());
+        for (LineRow line : lines) {
+            items.add(toCartItem(line));
+        }
+        return new Cart(row.id, row.customerId, items);
+    }
+
+    private CartItem toCartItem(LineRow line) {
+        return new CartItem(line.id, line.productId, line.quantity, line.unitPriceCents, line.totalPriceCents,
+            products.get(line.productId).name);
+    }
+
+    private static String number(String prefix, long number) {
+        return prefix + "-" + LocalDate.now().format(DAY) + "-" + String.format("%04d", number);
+    }
+
+    private static void requireNotNull(Object value, String column, String table) throws SQLException {
+        if (value == null) {
+            throw new SQLException("ERROR: null value in column \"" + column + "\" of relation \"" + table
+                + "\" violates not-null constraint", "23502");
+        }
+    }
+
+    private static boolean tooLong(String value, int length) {
+        return value != null && value.length() > length;
+    }
+
+    private static void requireLength(String value, int length) throws SQLException {
+        if (tooLong(value, length)) {
+            throw new SQLException("ERROR: value too long for type character varying(" + length + ")", "22001");
+        }
+    }
+
+    private static SQLException uniqueViolation(String constraint, String columns, Object value) {
+        return new SQLException("ERROR: duplicate key value violates unique constraint \"" + constraint + "\"\n"
+            + "  Detail: Key (" + columns + ")=(" + value + ") already exists.", "23505");
+    }
+
+    private static SQLException foreignKeyViolation(String table, String constraint, String column, int value, String referenced) {
+        return new SQLException("ERROR: insert or update on table \"" + table + "\" violates foreign key constraint \""
+            + constraint + "\"\n  Detail: Key (" + column + ")=(" + value + ") is not present in table \"" + referenced + "\".",
+            "23503");
+    }
+
+    private static Customer copy(Customer customer) {
+        return new Customer(customer.getId(), customer.getEmail(), customer.getFirstName(), customer.getLastName(),
+            customer.getPhone(), customer.getAddress());
+    }
+
+    private static Order copy(Order order) {
+        Order copy = new Order();
+        copy.setId(order.getId());
+        copy.setCustomerId(order.getCustomerId());
+        copy.setCartId(order.getCartId());
+        copy.setOrderNumber(order.getOrderNumber());
+        copy.setSubtotalCents(order.getSubtotalCents());
+        copy.setTaxAmountCents(order.getTaxAmountCents());
+        copy.setShippingAmountCents(order.getShippingAmountCents());
+        copy.setTotalAmountCents(order.getTotalAmountCents());
+        copy.setStatus(order.getStatus());
+        copy.setOrderDate(order.getOrderDate() != null ? order.getOrderDate() : LocalDateTime.now());
+        return copy;
+    }
+
+    private static Invoice copy(Invoice invoice) {
+        Invoice copy = new Invoice();
+        copy.setId(invoice.getId());
+        copy.setOrderId(invoice.getOrderId());
+        copy.setInvoiceNumber(invoice.getInvoiceNumber());
+        copy.setAmountCents(invoice.getAmountCents());
+        copy.setTaxAmountCents(invoice.getTaxAmountCents());
+        copy.setTotalAmountCents(invoice.getTotalAmountCents());
+        copy.setStatus(invoice.getStatus());
+        copy.setDueDate(invoice.getDueDate());
+        copy.setCreatedDate(invoice.getCreatedDate());
+        return copy;
+    }
+
+    private static final class ProductRow {
+        private final int id;
+        private final String name;
+        private final String description;
+        private final long priceCents;
+        private final String sku;
+        private final String category;
+        private int stockQuantity;
+
+        ProductRow(int id, String name, String description, long priceCents, String sku, String category, int stockQuantity) {
+            this.id = id;
+            this.name = name;
+            this.description = description;
+            this.priceCents = priceCents;
+            this.sku = sku;
+            this.category = category;
+            this.stockQuantity = stockQuantity;
+        }
+
+        Product toProduct() {
+            Product product = new Product(id, name, 0, sku);
+            product.setPriceCents(priceCents);
+            return product;
+        }
+    }
+
+    private static final class CartRow {
+        private final int id;
+        private final int customerId;
+        // Keyed by product id: the UNIQUE(cart_id, product_id) index
+        private final IntObjectHashMap<LineRow> lines = new IntObjectHashMap<>(8);
+
+        CartRow(int id, int customerId) {
+            this.id = id;
+            this.customerId = customerId;
+        }
+    }
+
+    // A cart_items or order_items row
+    private static final class LineRow {
+        private final int id;
+        private final int productId;
+        private int quantity;
+        private long unitPriceCents;
+        private long totalPriceCents;
+
+        LineRow(int id, int productId, int quantity, long unitPriceCents, long totalPriceCents) {
+            this.id = id;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.unitPriceCents = unitPriceCents;
+            this.totalPriceCents = totalPriceCents;
+        }
+    }
+
+    private record OrderRow(Order order, List<LineRow> lines) {
+    }
+}
@@ -0,0 +1,26 @@
+package com.bounteous.ecom;
+
+import java.sql.SQLException;
+
+// Checkout asked for more units of a product than InventoryLedger can sell. Reported with SQLState 23514
+// (check_violation), as a CHECK (stock_quantity >= 0) on products would, so callers treat it like the other
+// integrity errors.
+public class InsufficientStockException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    private final int productId;
+    private final int requested;
+    private final int available;
+
+    public InsufficientStockException(int productId, int requested, int available) {
+        super("Insufficient stock for product " + productId + ": requested " + requested + ", available " + available,
+            "23514");
+        this.productId = productId;
+        this.requested = requested;
+        this.available = available;
+    }
+
+    public int getProductId() { return productId; }
+    public int getRequested() { return requested; }
+    public int getAvailable() { return available; }
+}
@@ -0,0 +1,122 @@
+package com.bounteous.ecom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Open-addressing hash map from primitive int keys to non-null values. Keys are never boxed and a lookup is a
+// couple of array reads. Uses linear probing with backward-shift deletion, so there are no tombstones.
+// Not thread-safe: callers either confine it to one thread or publish it immutably.
+final class IntObjectHashMap<V> {
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    IntObjectHashMap() {
+        this(16);
+    }
+
+    IntObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        Objects.requireNonNull(value, "value");
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > values.length) {
+            resize();
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int i = slot(key);
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == null) {
+            return null;
+        }
+        V removed = (V) values[i];
+        // Shift later entries of the probe run back into the gap so lookups never stop early
+        int gap = i;
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int ideal = slot(keys[j]);
+            if (((j - ideal) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                result.add((V) value);
+            }
+        }
+        return result;
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        mask = values.length - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.bounteous.ecom;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Stock reservations that stay correct across app instances without making every order queue on the hot product's
+// row lock. Each instance leases units from products.stock_quantity in blocks of leaseSize with one conditional
+// UPDATE that never takes the count below zero, and sells from its lease with compare-and-set on an AtomicInteger.
+// stock_quantity is therefore always the units no instance holds, so two instances can never sell the same unit;
+// a flash sale costs one row update per leaseSize units rather than one per order.
+// Leasing borrows a connection of its own, so reserve before the checkout transaction starts, never inside it.
+//
+// Leases never take stock_quantity below safetyBuffer, so that many units per product are held back from sale to
+// absorb miscounts, damaged stock and units stranded in other instances' leases.
+//
+// Leased units nobody bought go back to stock_quantity on close(). If the process dies first they are lost from
+// stock_quantity (undersold, never oversold) until someone recounts with updateProductStock; nothing reconciles
+// them at startup, since no record says which instance holds which units.
+public class InventoryLedger implements AutoCloseable {
+    private final EcommerceStore store;
+    private final int leaseSize;
+    private final int safetyBuffer;
+    // Units leased by this instance and not yet reserved
+    private final ConcurrentHashMap<Integer, Stock> stockByProduct = new ConcurrentHashMap<>();
+
+    public InventoryLedger(EcommerceStore store, int leaseSize) {
+        this(store, leaseSize, 0);
+    }
+
+    public InventoryLedger(EcommerceStore store, int leaseSize, int safetyBuffer) {
+        if (leaseSize < 1) {
+            throw new IllegalArgumentException("Lease size must be positive: " + leaseSize);
+        }
+        if (safetyBuffer < 0) {
+            throw new IllegalArgumentException("Safety buffer cannot be negative: " + safetyBuffer);
+        }
+        this.store = store;
+        this.leaseSize = leaseSize;
+        this.safetyBuffer = safetyBuffer;
+    }
+
+    // Takes the quantities of all the lines or of none. Throws InsufficientStockException naming the first line
+    // that could not be covered; lines with no positive quantity reserve nothing.
+    public Reservation reserve(List<CartItem> items) throws SQLException {
+        int[] productIds = new int[items.size()];
+        int[] quantities = new int[items.size()];
+        int[] generations = new int[items.size()];
+        int lines = 0;
+        try {
+            for (CartItem item : items) {
+                if (item.getQuantity() <= 0) continue;
+                Stock stock = stockByProduct.computeIfAbsent(item.getProductId(), id -> new Stock());
+                long taken = stock.take(item.getQuantity());
+                if (taken < 0) {
+                    taken = leaseAndTake(item.getProductId(), stock, item.getQuantity());
+                }
+                if (taken < 0) {
+                    throw new InsufficientStockException(item.getProductId(), item.getQuantity(), (int) (-1 - taken));
+                }
+                productIds[lines] = item.getProductId();
+                quantities[lines] = item.getQuantity();
+                generations[lines++] = (int) taken;
+            }
+        } catch (SQLException | RuntimeException e) {
+            for (int i = 0; i < lines; i++) {
+                stockByProduct.get(productIds[i]).giveBack(generations[i], quantities[i]);
+            }
+            throw e;
+        }
+        return new Reservation(productIds, quantities, generations, lines);
+    }
+
+    // The order is committed: the reserved units were taken from stock_quantity when they were leased
+    public void commit(Reservation reservation) {
+        reservation.settled.compareAndSet(false, true);
+    }
+
+    // The order is committed with the given lines, which the reservation covers; reserved units beyond them (lines
+    // removed from the cart after it was reserved) can be sold again
+    public void commit(Reservation reservation, List<CartItem> ordered) {
+        if (!reservation.settled.compareAndSet(false, true)) return;
+        for (int i = 0; i < reservation.lines; i++) {
+            int unsold = reservation.quantities[i] - orderedUnits(ordered, reservation.productIds[i]);
+            if (unsold > 0) {
+                stockByProduct.get(reservation.productIds[i]).giveBack(reservation.generations[i], unsold);
+            }
+        }
+    }
+
+    // The order was not placed: the reserved units can be sold again, unless the product was recounted since
+    public void release(Reservation reservation) {
+        if (!reservation.settled.compareAndSet(false, true)) return;
+        for (int i = 0; i < reservation.lines; i++) {
+            stockByProduct.get(reservation.productIds[i]).giveBack(reservation.generations[i], reservation.quantities[i]);
+        }
+    }
+
+    // Sets stock_quantity to an absolute count of units on hand, giving up this instance's lease on the product. Units
+    // other instances hold stay leased on top of the new count, so recount while they are stopped or idle. The count
+    // includes whatever open reservations hold, so they belong to the old generation and are not given back.
+    public void setStock(int productId, int stockQuantity) throws SQLException {
+        Stock stock = stockByProduct.computeIfAbsent(productId, id -> new Stock());
+        stock.lock.lock();
+        try {
+            stock.recount();
+            store.updateProductStock(productId, stockQuantity);
+        } finally {
+            stock.lock.unlock();
+        }
+    }
+
+    // Units this instance can reserve without leasing more
+    public int getAvailable(int productId) {
+        Stock stock = stockByProduct.get(productId);
+        return stock == null ? 0 : Stock.units(stock.state.get());
+    }
+
+    public int getLeaseSize() {
+        return leaseSize;
+    }
+
+    public int getSafetyBuffer() {
+        return safetyBuffer;
+    }
+
+    // Hands every unreserved leased unit back to stock_quantity in one store call
+    public void returnLeases() throws SQLException {
+        Map<Integer, Integer> unsold = new LinkedHashMap<>();
+        Map<Integer, Integer> generations = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Stock> entry : stockByProduct.entrySet()) {
+            Stock stock = entry.getValue();
+            stock.lock.lock();
+            try {
+                long state = stock.drain();
+                if (Stock.units(state) > 0) {
+                    unsold.put(entry.getKey(), Stock.units(state));
+                    generations.put(entry.getKey(), Stock.generation(state));
+                }
+            } finally {
+                stock.lock.unlock();
+            }
+        }
+        if (unsold.isEmpty()) return;
+        try {
+            store.addProductStock(unsold);
+        } catch (SQLException | RuntimeException e) {
+            // Nothing was written, so the units are still ours to sell
+            unsold.forEach((productId, units) -> stockByProduct.get(productId).giveBack(generations.get(productId), units));
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        returnLeases();
+    }
+
+    // One thread per product leases at a time; the others find the new units when they retry the take. Same
+    // result as Stock.take. A ReentrantLock rather than a monitor, since it is held across a database round trip
+    // and a virtual thread waiting on a monitor pins its carrier.
+    private long leaseAndTake(int productId, Stock stock, int quantity) throws SQLException {
+        stock.lock.lock();
+        try {
+            long taken = stock.take(quantity);
+            if (taken >= 0) return taken;
+            int available = (int) (-1 - taken);
+            int leased = store.takeProductStock(productId, Math.max(leaseSize, quantity - available), safetyBuffer);
+            stock.add(leased);
+            return stock.take(quantity);
+        } finally {
+            stock.lock.unlock();
+        }
+    }
+
+    // A product's leased, unreserved units, packed with a generation that setStock bumps into one long, so units
+    // given back by a reservation from before the last recount can be told apart and dropped atomically
+    private static final class Stock {
+        final AtomicLong state = new AtomicLong();
+        // Held while stock_quantity is read or written for this product
+        final ReentrantLock lock = new ReentrantLock();
+
+        static int generation(long state) {
+            return (int) (state >>> 32);
+        }
+
+        static int units(long state) {
+            return (int) state;
+        }
+
+        static long pack(int generation, int units) {
+            return ((long) generation << 32) | (units & 0xFFFFFFFFL);
+        }
+
+        // Returns the generation the units were taken from, or -1 - available when there were not enough
+        long take(int quantity) {
+            while (true) {
+                long current = state.get();
+                int available = units(current);
+                if (available < quantity) return -1 - Math.max(0, available);
+                if (state.compareAndSet(current, pack(generation(current), available - quantity))) {
+                    return generation(current);
+                }
+            }
+        }
+
+        // Newly leased units belong to the current generation
+        void add(int units) {
+            state.getAndUpdate(current -> pack(generation(current), units(current) + units));
+        }
+
+        // Units from an older generation are no longer backed by stock_quantity and are dropped
+        void giveBack(int generation, int units) {
+            state.getAndUpdate(current -> generation(current) == generation
+                    ? pack(generation, units(current) + units)
+                    : current);
+        }
+
+        // Empties the lease; returns the state it had
+        long drain() {
+            return state.getAndUpdate(current -> pack(generation(current), 0));
+        }
+
+        // Empties the lease and starts a new generation, kept non-negative so take can tell it from a shortfall
+        void recount() {
+            state.getAndUpdate(current -> pack((generation(current) + 1) & Integer.MAX_VALUE, 0));
+        }
+    }
+
+    private static int orderedUnits(List<CartItem> items, int productId) {
+        int units = 0;
+        for (CartItem item : items) {
+            if (item.getProductId() == productId && item.getQuantity() > 0) {
+                units += item.getQuantity();
+            }
+        }
+        return units;
+    }
+
+    // Units held for one checkout until it is committed or released, whichever comes first
+    public static final class Reservation {
+        private final int[] productIds;
+        private final int[] quantities;
+        private final int[] generations;
+        private final int lines;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Reservation(int[] productIds, int[] quantities, int[] generations, int lines) {
+            this.productIds = productIds;
+            this.quantities = quantities;
+            this.generations = generations;
+            this.lines = lines;
+        }
+
+        // Whether every line of items was reserved, so a checkout of items needs no more stock
+        public boolean covers(List<CartItem> items) {
+            for (CartItem item : items) {
+                if (item.getQuantity() <= 0) continue;
+                int reserved = 0;
+                for (int i = 0; i < lines; i++) {
+                    if (productIds[i] == item.getProductId()) {
+                        reserved += quantities[i];
+                    }
+                }
+                if (orderedUnits(items, item.getProductId()) > reserved) return false;
+            }
+            return true;
+        }
+    }
+}
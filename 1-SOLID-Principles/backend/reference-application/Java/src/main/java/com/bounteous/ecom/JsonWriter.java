@@ -0,0 +1,127 @@
+package com.bounteous.ecom;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Minimal streaming JSON encoder: values are written straight to the underlying Writer as they are produced,
+// so arbitrarily long arrays (e.g. a product export) never sit in memory. Tracks only whether a separator is due
+// at each nesting level; callers are trusted to produce well-formed nesting.
+final class JsonWriter {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int MAX_DEPTH = 32;
+
+    private final Writer out;
+    private final boolean[] hasElements = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    JsonWriter name(String name) throws IOException {
+        separate();
+        string(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null) {
+            out.write("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    JsonWriter value(long value) throws IOException {
+        separate();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    JsonWriter value(boolean value) throws IOException {
+        separate();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    // Money as an exact JSON number with two decimals, e.g. 1299.99
+    JsonWriter money(long cents) throws IOException {
+        separate();
+        out.write(Money.format(cents));
+        return this;
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        separate();
+        out.write(bracket);
+        hasElements[++depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        out.write(bracket);
+        depth--;
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (hasElements[depth]) {
+            out.write(',');
+        }
+        hasElements[depth] = true;
+    }
+
+    private void string(String value) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') continue;
+            out.write(value, start, i - start);
+            switch (c) {
+                case '"' -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                default -> {
+                    out.write("\\u00");
+                    out.write(HEX[c >> 4]);
+                    out.write(HEX[c & 0xF]);
+                }
+            }
+            start = i + 1;
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+}
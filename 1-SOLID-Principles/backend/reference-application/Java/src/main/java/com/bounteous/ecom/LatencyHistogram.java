@@ -0,0 +1,75 @@
+package com.bounteous.ecom;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-size log-linear histogram of nanosecond values: every power of two is split into 16 buckets, so a reported
+// percentile is at most ~6% above the true value across the whole range of a long. Recording is one atomic add on
+// a preallocated array (no lock, no allocation); reading walks a copy of the counts.
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(index(value));
+        totalCount.increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    long getCount() {
+        return totalCount.sum();
+    }
+
+    long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    long getMeanNanos() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : totalNanos.sum() / count;
+    }
+
+    // Upper bound of the bucket holding the given percentile (0-100), capped at the largest value recorded
+    long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,42 @@
+package com.bounteous.ecom;
+
+import java.math.BigDecimal;
+
+// Amounts are carried as long minor units (cents) so arithmetic is exact and allocation-free.
+// Conversions happen only at the JDBC boundary and for display.
+final class Money {
+    private Money() {
+    }
+
+    // Exact for DECIMAL(10,2) values, which carry far fewer significant digits than a double
+    static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    static double toDouble(long cents) {
+        return cents / 100.0;
+    }
+
+    static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    // Formats as plain dollars and cents, e.g. 1234 -> "12.34"
+    static String format(long cents) {
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        return (cents < 0 ? "-" : "") + (abs / 100) + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    // Defers format(cents) until toString(), so log arguments are only formatted if they are written
+    static Object formatted(long cents) {
+        return new Formatted(cents);
+    }
+
+    private record Formatted(long cents) {
+        @Override
+        public String toString() {
+            return format(cents);
+        }
+    }
+}
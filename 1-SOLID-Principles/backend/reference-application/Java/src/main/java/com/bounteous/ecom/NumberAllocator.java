@@ -0,0 +1,102 @@
+package com.bounteous.ecom;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Hands out business numbers such as ORD-20240115-123400 that stay unique across app instances and restarts.
+// Uses hi/lo: each nextval() of the Postgres sequence (hi) reserves blockSize numbers hi * blockSize + lo, which
+// are then handed out from an atomic counter without touching the database. Numbers are unique but not gap-free:
+// whatever is left of a block when the process stops is never used.
+// generate_order_number() and generate_invoice_number() in init.sql take a whole block per call from the same
+// sequences, so numbers stay unique across both only while the block size here matches theirs.
+public class NumberAllocator {
+    static final int DEFAULT_BLOCK_SIZE = 100;
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final String prefix;
+    private final String nextHiSql;
+    private final int blockSize;
+    // A lock rather than a monitor: it is held across a database round trip, and a virtual thread blocked on a
+    // monitor pins its carrier thread
+    private final ReentrantLock refillLock = new ReentrantLock();
+    private volatile Block block;
+    private volatile DayPrefix dayPrefix;
+
+    public NumberAllocator(String prefix, String sequenceName, int blockSize) {
+        this.prefix = prefix;
+        this.nextHiSql = "SELECT nextval('" + sequenceName + "')";
+        this.blockSize = blockSize;
+    }
+
+    // Refills, when needed, go through the caller's connection; nextval is not rolled back with its transaction
+    public String next(Connection conn) throws SQLException {
+        long number = nextNumber(conn);
+        String digits = Long.toString(number);
+        StringBuilder result = new StringBuilder(currentPrefix());
+        for (int i = digits.length(); i < 4; i++) {
+            result.append('0');
+        }
+        return result.append(digits).toString();
+    }
+
+    long nextNumber(Connection conn) throws SQLException {
+        while (true) {
+            Block current = block;
+            if (current != null) {
+                int lo = current.next.getAndIncrement();
+                if (lo < blockSize) {
+                    return current.hi * blockSize + lo;
+                }
+            }
+            refill(conn, current);
+        }
+    }
+
+    // Only one thread talks to the database; the rest find the new block on their next pass
+    private void refill(Connection conn, Block exhausted) throws SQLException {
+        refillLock.lock();
+        try {
+            if (block != exhausted) return;
+            try (PreparedStatement stmt = conn.prepareStatement(nextHiSql);
+                 ResultSet rs = stmt.executeQuery()) {
+                OperationMetrics.readRow(rs);
+                block = new Block(rs.getLong(1));
+            }
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    // "ORD-yyyyMMdd-" is rebuilt once per day rather than formatted on every call
+    private String currentPrefix() {
+        long now = System.currentTimeMillis();
+        DayPrefix current = dayPrefix;
+        if (current == null || now >= current.validUntilMillis) {
+            LocalDate today = LocalDate.now();
+            long midnight = today.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            current = new DayPrefix(prefix + "-" + today.format(DAY) + "-", midnight);
+            dayPrefix = current;
+        }
+        return current.text;
+    }
+
+    private static final class Block {
+        private final long hi;
+        private final AtomicInteger next = new AtomicInteger();
+
+        Block(long hi) {
+            this.hi = hi;
+        }
+    }
+
+    private record DayPrefix(String text, long validUntilMillis) {
+    }
+}
@@ -0,0 +1,231 @@
+package com.bounteous.ecom;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-operation call counts, errors, latency histograms and database usage: round trips, connections borrowed and
+// the time spent waiting for them, time inside JDBC calls, rows read and written. Each instrumented method brackets
+// itself with begin()/end(); the thread's Call comes from a ThreadLocal and is reused, and ConnectionPool adds JDBC
+// activity to it, so recording takes no lock and allocates nothing. A call made from inside another instrumented
+// call on the same thread counts toward the outer one.
+public class OperationMetrics<E extends Enum<E>> implements OperationMetricsMXBean, AutoCloseable {
+    private static final AsyncLogger log = AsyncLogger.getDefault();
+    private static final ThreadLocal<Call> CURRENT = ThreadLocal.withInitial(Call::new);
+
+    private final E[] operations;
+    private final Stats[] stats;
+    private volatile ObjectName objectName;
+    private volatile ScheduledExecutorService dumper;
+
+    public OperationMetrics(Class<E> operationType) {
+        this.operations = operationType.getEnumConstants();
+        this.stats = new Stats[operations.length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new Stats();
+        }
+    }
+
+    // Use as: Call call = metrics.begin(op); try { ... } catch (... e) { call.fail(); throw e; } finally { call.end(); }
+    public Call begin(E operation) {
+        Call call = CURRENT.get();
+        if (call.depth++ == 0) {
+            call.start(stats[operation.ordinal()]);
+        }
+        return call;
+    }
+
+    // The current thread's open call, or null outside any instrumented operation
+    static Call activeCall() {
+        Call call = CURRENT.get();
+        return call.depth > 0 ? call : null;
+    }
+
+    // ResultSet.next() that counts the row toward the current thread's open call. Store code reads rows through
+    // this rather than the pool wrapping every ResultSet it hands out.
+    static boolean readRow(ResultSet resultSet) throws SQLException {
+        if (!resultSet.next()) return false;
+        Call call = activeCall();
+        if (call != null) {
+            call.rowRead();
+        }
+        return true;
+    }
+
+    public OperationSnapshot snapshot(E operation) {
+        return stats[operation.ordinal()].snapshot(operation.toString());
+    }
+
+    // Operations that have been called at least once
+    @Override
+    public List<OperationSnapshot> getOperations() {
+        List<OperationSnapshot> snapshots = new ArrayList<>();
+        for (E operation : operations) {
+            if (stats[operation.ordinal()].latency.getCount() > 0) {
+                snapshots.add(snapshot(operation));
+            }
+        }
+        return snapshots;
+    }
+
+    @Override
+    public String getSnapshotText() {
+        StringBuilder text = new StringBuilder(String.format("%-22s %8s %6s %8s %8s %8s %8s %11s %10s %12s %12s %10s %10s%n",
+            "operation", "calls", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms",
+            "trips/call", "conns/call", "db ms/call", "wait ms/call", "rows read", "rows writ"));
+        for (OperationSnapshot s : getOperations()) {
+            double calls = s.getCalls();
+            text.append(String.format("%-22s %8d %6d %8.2f %8.2f %8.2f %8.2f %11.2f %10.2f %12.3f %12.3f %10d %10d%n",
+                s.getOperation(), s.getCalls(), s.getErrors(), s.getP50Millis(), s.getP99Millis(), s.getP999Millis(),
+                s.getMaxMillis(), s.getRoundTrips() / calls, s.getConnections() / calls, s.getDatabaseMillis() / calls,
+                s.getConnectionWaitMillis() / calls, s.getRowsRead(), s.getRowsWritten()));
+        }
+        return text.toString();
+    }
+
+    // Registers these metrics with the platform MBean server under e.g. "com.bounteous.ecom:type=EcommerceManager"
+    public void registerMBean(String name) {
+        try {
+            ObjectName candidate = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+            objectName = candidate;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register MBean " + name, e);
+        }
+    }
+
+    // Writes the snapshot table to the log every interval until close()
+    public synchronized void startPeriodicDump(Duration interval) {
+        if (dumper != null) return;
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ecom-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        dumper.scheduleAtFixedRate(() -> log.info("Operation metrics{}{}", System.lineSeparator(), getSnapshotText()),
+            millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        ScheduledExecutorService current = dumper;
+        if (current != null) {
+            current.shutdownNow();
+        }
+        ObjectName registered = objectName;
+        if (registered != null) {
+            objectName = null;
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                if (server.isRegistered(registered)) {
+                    server.unregisterMBean(registered);
+                }
+            } catch (JMException e) {
+                log.warn("Could not unregister MBean {}: {}", registered, e.getMessage());
+            }
+        }
+    }
+
+    // Running totals for one operation
+    private static final class Stats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder roundTrips = new LongAdder();
+        private final LongAdder connections = new LongAdder();
+        private final LongAdder connectionWaitNanos = new LongAdder();
+        private final LongAdder databaseNanos = new LongAdder();
+        private final LongAdder rowsRead = new LongAdder();
+        private final LongAdder rowsWritten = new LongAdder();
+
+        void record(Call call, long elapsedNanos) {
+            latency.record(elapsedNanos);
+            if (call.failed) errors.increment();
+            if (call.roundTrips != 0) roundTrips.add(call.roundTrips);
+            if (call.connections != 0) connections.add(call.connections);
+            if (call.connectionWaitNanos != 0) connectionWaitNanos.add(call.connectionWaitNanos);
+            if (call.databaseNanos != 0) databaseNanos.add(call.databaseNanos);
+            if (call.rowsRead != 0) rowsRead.add(call.rowsRead);
+            if (call.rowsWritten != 0) rowsWritten.add(call.rowsWritten);
+        }
+
+        OperationSnapshot snapshot(String name) {
+            return new OperationSnapshot(name, latency.getCount(), errors.sum(), millis(latency.getMeanNanos()),
+                millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(99)),
+                millis(latency.getValueAtPercentile(99.9)), millis(latency.getMaxNanos()), roundTrips.sum(),
+                connections.sum(), millis(connectionWaitNanos.sum()), millis(databaseNanos.sum()), rowsRead.sum(),
+                rowsWritten.sum());
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+
+    // One thread's in-progress operation. Only the thread that owns it ever reads or writes it.
+    public static final class Call {
+        private int depth;
+        private Stats stats;
+        private long startedAt;
+        private boolean failed;
+        private long roundTrips;
+        private long connections;
+        private long connectionWaitNanos;
+        private long databaseNanos;
+        private long rowsRead;
+        private long rowsWritten;
+
+        private void start(Stats target) {
+            stats = target;
+            failed = false;
+            roundTrips = 0;
+            connections = 0;
+            connectionWaitNanos = 0;
+            databaseNanos = 0;
+            rowsRead = 0;
+            rowsWritten = 0;
+            startedAt = System.nanoTime();
+        }
+
+        // Counts the operation as an error; only the outermost call's catch block decides
+        public void fail() {
+            if (depth == 1) {
+                failed = true;
+            }
+        }
+
+        public void end() {
+            if (--depth > 0) return;
+            stats.record(this, System.nanoTime() - startedAt);
+            stats = null;
+        }
+
+        void connectionAcquired(long waitNanos) {
+            connections++;
+            connectionWaitNanos += waitNanos;
+        }
+
+        void roundTrip(long nanos) {
+            roundTrips++;
+            databaseNanos += nanos;
+        }
+
+        void rowRead() {
+            rowsRead++;
+        }
+
+        void rowsWritten(long rows) {
+            rowsWritten += rows;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.bounteous.ecom;
+
+import java.util.List;
+
+// JMX view of OperationMetrics, e.g. com.bounteous.ecom:type=EcommerceManager in jconsole or VisualVM
+public interface OperationMetricsMXBean {
+    List<OperationSnapshot> getOperations();
+
+    // The same table the periodic dump writes to the log
+    String getSnapshotText();
+}
@@ -0,0 +1,57 @@
+package com.bounteous.ecom;
+
+// Point-in-time figures for one instrumented operation, totals since start-up. A plain getter class rather than a
+// record so JMX can map it to CompositeData.
+public class OperationSnapshot {
+    private final String operation;
+    private final long calls;
+    private final long errors;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p99Millis;
+    private final double p999Millis;
+    private final double maxMillis;
+    private final long roundTrips;
+    private final long connections;
+    private final double connectionWaitMillis;
+    private final double databaseMillis;
+    private final long rowsRead;
+    private final long rowsWritten;
+
+    public OperationSnapshot(String operation, long calls, long errors, double meanMillis, double p50Millis,
+                             double p99Millis, double p999Millis, double maxMillis, long roundTrips, long connections,
+                             double connectionWaitMillis, double databaseMillis, long rowsRead, long rowsWritten) {
+        this.operation = operation;
+        this.calls = calls;
+        this.errors = errors;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p99Millis = p99Millis;
+        this.p999Millis = p999Millis;
+        this.maxMillis = maxMillis;
+        this.roundTrips = roundTrips;
+        this.connections = connections;
+        this.connectionWaitMillis = connectionWaitMillis;
+        this.databaseMillis = databaseMillis;
+        this.rowsRead = rowsRead;
+        this.rowsWritten = rowsWritten;
+    }
+
+    public String getOperation() { return operation; }
+    public long getCalls() { return calls; }
+    public long getErrors() { return errors; }
+    public double getMeanMillis() { return meanMillis; }
+    public double getP50Millis() { return p50Millis; }
+    public double getP99Millis() { return p99Millis; }
+    public double getP999Millis() { return p999Millis; }
+    public double getMaxMillis() { return maxMillis; }
+    // Statements executed plus commits and rollbacks
+    public long getRoundTrips() { return roundTrips; }
+    public long getConnections() { return connections; }
+    // Total time spent waiting in ConnectionPool.getConnection()
+    public double getConnectionWaitMillis() { return connectionWaitMillis; }
+    // Total time spent inside statement execution, commit and rollback
+    public double getDatabaseMillis() { return databaseMillis; }
+    public long getRowsRead() { return rowsRead; }
+    public long getRowsWritten() { return rowsWritten; }
+}
@@ -0,0 +1,35 @@
+package com.bounteous.ecom;
+
+import java.util.List;
+
+// Prices an order once from a cart snapshot: subtotal, 8% tax (rounded half up to the cent) and flat shipping
+final class OrderPricing {
+    static final long TAX_RATE_BASIS_POINTS = 800;
+    static final long SHIPPING_CENTS = 999;
+
+    private final long subtotalCents;
+    private final long taxCents;
+    private final long shippingCents;
+    private final long totalCents;
+
+    private OrderPricing(long subtotalCents, long taxCents, long shippingCents) {
+        this.subtotalCents = subtotalCents;
+        this.taxCents = taxCents;
+        this.shippingCents = shippingCents;
+        this.totalCents = subtotalCents + taxCents + shippingCents;
+    }
+
+    static OrderPricing of(List<CartItem> items) {
+        long subtotal = 0;
+        for (int i = 0; i < items.size(); i++) {
+            subtotal += items.get(i).getTotalPriceCents();
+        }
+        long tax = (subtotal * TAX_RATE_BASIS_POINTS + 5_000) / 10_000;
+        return new OrderPricing(subtotal, tax, SHIPPING_CENTS);
+    }
+
+    long getSubtotalCents() { return subtotalCents; }
+    long getTaxCents() { return taxCents; }
+    long getShippingCents() { return shippingCents; }
+    long getTotalCents() { return totalCents; }
+}
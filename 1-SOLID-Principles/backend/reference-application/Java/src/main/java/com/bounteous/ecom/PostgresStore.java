@@ -0,0 +1,875 @@
+package com.bounteous.ecom;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// EcommerceStore on the PostgreSQL schema in database/init.sql, through a ConnectionPool. Multi-statement writes
+// (checkout, cart rewrites) run in one transaction each; order and invoice numbers come from hi/lo blocks of the
+// order_number_seq and invoice_number_seq sequences.
+public class PostgresStore implements EcommerceStore {
+    // Rows are copied into a session-local staging table, then moved into customers by one statement per chunk that
+    // skips invalid rows and duplicate emails and returns them, with the reason, as the chunk's rejects
+    private static final String CREATE_IMPORT_TABLE =
+        "CREATE TEMP TABLE IF NOT EXISTS customer_import (position BIGINT, email TEXT, first_name TEXT, " +
+        "last_name TEXT, phone TEXT, address TEXT) ON COMMIT DELETE ROWS";
+    private static final String MERGE_IMPORT =
+        "WITH checked AS (" +
+        "  SELECT *, CASE" +
+        "    WHEN email IS NULL OR first_name IS NULL OR last_name IS NULL THEN 'missing required field'" +
+        "    WHEN length(email) > 255 OR length(first_name) > 100 OR length(last_name) > 100" +
+        "      OR length(phone) > 20 THEN 'value too long' END AS invalid" +
+        "  FROM customer_import), " +
+        "staged AS (" +
+        "  SELECT *, row_number() OVER (PARTITION BY invalid IS NULL, email ORDER BY position) AS nth FROM checked), " +
+        "inserted AS (" +
+        "  INSERT INTO customers (email, first_name, last_name, phone, address)" +
+        "  SELECT email, first_name, last_name, phone, address FROM staged WHERE invalid IS NULL AND nth = 1" +
+        "  ORDER BY position ON CONFLICT (email) DO NOTHING RETURNING email) " +
+        "SELECT s.position, s.email, s.first_name, s.last_name, s.phone, s.address," +
+        "  COALESCE(s.invalid, CASE WHEN s.nth > 1 THEN 'duplicate email in input' ELSE 'email already exists' END) AS reason " +
+        "FROM staged s " +
+        "WHERE s.invalid IS NOT NULL OR s.nth > 1 OR NOT EXISTS (SELECT 1 FROM inserted i WHERE i.email = s.email) " +
+        "ORDER BY s.position";
+    private static final int COPY_BUFFER_CHARS = 64 * 1024;
+
+    private final ConnectionPool connectionPool;
+    private final NumberAllocator orderNumbers = new NumberAllocator("ORD", "order_number_seq", NumberAllocator.DEFAULT_BLOCK_SIZE);
+    private final NumberAllocator invoiceNumbers = new NumberAllocator("INV", "invoice_number_seq", NumberAllocator.DEFAULT_BLOCK_SIZE);
+
+    public PostgresStore(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    // Rows are read lazily through a server-side cursor, fetchSize at a time, so memory use does not grow with the
+    // catalog. The stream holds a pooled connection until it is closed.
+    @Override
+    public Stream<Product> streamProducts(ProductQuery query) throws SQLException {
+        Connection conn = connectionPool.getConnection();
+        try {
+            // The driver only uses a cursor inside a transaction
+            conn.setAutoCommit(false);
+            PreparedStatement stmt = conn.prepareStatement(productQuerySql(query));
+            int index = 1;
+            stmt.setInt(index++, query.getAfterId());
+            if (query.getCategory() != null) {
+                stmt.setString(index++, query.getCategory());
+            }
+            if (query.getLimit() > 0) {
+                stmt.setInt(index, query.getLimit());
+            }
+            stmt.setFetchSize(query.getFetchSize());
+            ResultSet rs = stmt.executeQuery();
+            Spliterator<Product> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super Product> action) {
+                    try {
+                        if (!OperationMetrics.readRow(rs)) return false;
+                        Product product = new Product(rs.getInt("id"), rs.getString("name"), 0, rs.getString("sku"));
+                        product.setPriceCents(cents(rs, "price"));
+                        action.accept(product);
+                        return true;
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Reading products failed", e);
+                    }
+                }
+            };
+            return StreamSupport.stream(rows, false).onClose(() -> {
+                // Closes the result set, returns the statement to the cache and then the connection to the pool,
+                // which rolls back the read-only transaction
+                try (conn; stmt; rs) {
+                    // Nothing to do but close them
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Releasing product stream connection failed", e);
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    private static String productQuerySql(ProductQuery query) {
+        StringBuilder sql = new StringBuilder("SELECT id, name, price, sku FROM products WHERE id > ?");
+        if (query.getCategory() != null) {
+            sql.append(" AND category = ?");
+        }
+        sql.append(" ORDER BY id");
+        if (query.getLimit() > 0) {
+            sql.append(" LIMIT ?");
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public int insertProduct(String name, String description, long priceCents, String sku, String category, int stockQuantity) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO products (name, description, price, sku, category, stock_quantity) VALUES (?, ?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, name);
+            stmt.setString(2, description);
+            stmt.setBigDecimal(3, Money.toDecimal(priceCents));
+            stmt.setString(4, sku);
+            stmt.setString(5, category);
+            stmt.setInt(6, stockQuantity);
+            stmt.executeUpdate();
+            return generatedId(stmt);
+        }
+    }
+
+    @Override
+    public void updateProductStock(int productId, int stockQuantity) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE products SET stock_quantity = ? WHERE id = ?")) {
+            stmt.setInt(1, stockQuantity);
+            stmt.setInt(2, productId);
+            stmt.executeUpdate();
+        }
+    }
+
+    // One statement for every product, the deltas passed as arrays like upsertCartItems' lines
+    @Override
+    public void addProductStock(Map<Integer, Integer> deltas) throws SQLException {
+        Integer[] productIds = deltas.keySet().toArray(new Integer[0]);
+        Integer[] units = deltas.values().toArray(new Integer[0]);
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE products p SET stock_quantity = p.stock_quantity + d.delta " +
+                "FROM unnest(?::int[], ?::int[]) AS d(id, delta) " +
+                "WHERE p.id = d.id")) {
+            stmt.setArray(1, conn.createArrayOf("integer", productIds));
+            stmt.setArray(2, conn.createArrayOf("integer", units));
+            stmt.executeUpdate();
+        }
+    }
+
+    // The row is locked first so the units taken are computed from the count this statement changes, even when
+    // another instance takes from the same product at the same moment
+    @Override
+    public int takeProductStock(int productId, int units, int floor) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "WITH locked AS (SELECT id, LEAST(?, GREATEST(stock_quantity - ?, 0)) AS taken FROM products WHERE id = ? FOR UPDATE) " +
+                "UPDATE products p SET stock_quantity = p.stock_quantity - l.taken " +
+                "FROM locked l WHERE p.id = l.id " +
+                "RETURNING l.taken")) {
+            stmt.setInt(1, units);
+            stmt.setInt(2, Math.max(floor, 0));
+            stmt.setInt(3, productId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return OperationMetrics.readRow(rs) ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    @Override
+    public Integer findProductStock(int productId) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT stock_quantity FROM products WHERE id = ?")) {
+            stmt.setInt(1, productId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return OperationMetrics.readRow(rs) ? rs.getInt("stock_quantity") : null;
+            }
+        }
+    }
+
+    @Override
+    public int insertCustomer(String email, String firstName, String lastName, String phone, String address) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO customers (email, first_name, last_name, phone, address) VALUES (?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, email);
+            stmt.setString(2, firstName);
+            stmt.setString(3, lastName);
+            stmt.setString(4, phone);
+            stmt.setString(5, address);
+            stmt.executeUpdate();
+            return generatedId(stmt);
+        }
+    }
+
+    // COPY FROM STDIN through the driver's CopyManager: each chunk is streamed in 64 KB writes, so memory use depends
+    // on chunkSize only for the chunk's rejects
+    @Override
+    public ImportResult importCustomers(Iterator<Customer> customers, int chunkSize, ImportRejects rejects) throws SQLException, IOException {
+        long imported = 0;
+        long rejected = 0;
+        long position = 0;
+        try (Connection conn = connectionPool.getConnection()) {
+            try (Statement ddl = conn.createStatement()) {
+                ddl.execute(CREATE_IMPORT_TABLE);
+            }
+            conn.setAutoCommit(false);
+            StringBuilder csv = new StringBuilder(COPY_BUFFER_CHARS + 1024);
+            while (customers.hasNext()) {
+                List<Object[]> chunkRejects = new ArrayList<>();
+                long first = position + 1;
+                try {
+                    CopyIn copy = conn.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn("COPY customer_import FROM STDIN WITH (FORMAT csv)");
+                    try {
+                        for (int rows = 0; rows < chunkSize && customers.hasNext(); rows++) {
+                            appendImportRow(csv, ++position, customers.next());
+                            if (csv.length() >= COPY_BUFFER_CHARS) {
+                                writeToCopy(copy, csv);
+                            }
+                        }
+                        writeToCopy(copy, csv);
+                        copy.endCopy();
+                    } finally {
+                        if (copy.isActive()) {
+                            copy.cancelCopy();
+                        }
+                        csv.setLength(0);
+                    }
+                    try (PreparedStatement merge = conn.prepareStatement(MERGE_IMPORT);
+                         ResultSet rs = merge.executeQuery()) {
+                        while (OperationMetrics.readRow(rs)) {
+                            chunkRejects.add(new Object[] {rs.getLong("position"), new Customer(0, rs.getString("email"),
+                                rs.getString("first_name"), rs.getString("last_name"), rs.getString("phone"),
+                                rs.getString("address")), rs.getString("reason")});
+                        }
+                    }
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                }
+                // Reported once the chunk is committed, so the rejects file never lists rows of a chunk that failed
+                for (Object[] reject : chunkRejects) {
+                    rejects.reject((Long) reject[0], (Customer) reject[1], (String) reject[2]);
+                }
+                imported += position - first + 1 - chunkRejects.size();
+                rejected += chunkRejects.size();
+            }
+        }
+        return new ImportResult(imported, rejected);
+    }
+
+    private static void appendImportRow(StringBuilder csv, long position, Customer customer) {
+        csv.append(position).append(',');
+        Csv.appendField(csv, customer.getEmail());
+        csv.append(',');
+        Csv.appendField(csv, customer.getFirstName());
+        csv.append(',');
+        Csv.appendField(csv, customer.getLastName());
+        csv.append(',');
+        Csv.appendField(csv, customer.getPhone());
+        csv.append(',');
+        Csv.appendField(csv, customer.getAddress());
+        csv.append('\n');
+    }
+
+    private static void writeToCopy(CopyIn copy, StringBuilder csv) throws SQLException {
+        if (csv.length() == 0) return;
+        byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        csv.setLength(0);
+    }
+
+    @Override
+    public boolean updateCustomer(Customer customer) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE customers SET email = ?, first_name = ?, last_name = ?, phone = ?, address = ? WHERE id = ?")) {
+            stmt.setString(1, customer.getEmail());
+            stmt.setString(2, customer.getFirstName());
+            stmt.setString(3, customer.getLastName());
+            stmt.setString(4, customer.getPhone());
+            stmt.setString(5, customer.getAddress());
+            stmt.setInt(6, customer.getId());
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public void deleteCustomer(int customerId) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM customers WHERE id = ?")) {
+            stmt.setInt(1, customerId);
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public Customer findCustomer(int customerId) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, email, first_name, last_name, phone, address FROM customers WHERE id = ?")) {
+            stmt.setInt(1, customerId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (OperationMetrics.readRow(rs)) {
+                    return new Customer(
+                        rs.getInt("id"),
+                        rs.getString("email"),
+                        rs.getString("first_name"),
+                        rs.getString("last_name"),
+                        rs.getString("phone"),
+                        rs.getString("address")
+                    );
+                }
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public int insertCart(int customerId) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO carts (customer_id) VALUES (?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, customerId);
+            stmt.executeUpdate();
+            return generatedId(stmt);
+        }
+    }
+
+    @Override
+    public Cart findCart(int customerId) throws SQLException {
+        CartView view = findCartView(customerId);
+        return view == null ? null : view.cart();
+    }
+
+    // One query: the cart row outer-joined to its lines and their products, each row also carrying the cart's
+    // totals as window aggregates. A cart without lines comes back as a single row of NULL line columns.
+    @Override
+    public CartView findCartView(int customerId) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT c.id AS cart_id, ci.id, ci.product_id, ci.quantity, ci.unit_price, ci.total_price, p.name, " +
+                "COUNT(ci.id) OVER () AS line_count, COALESCE(SUM(ci.quantity) OVER (), 0) AS item_count, " +
+                "COALESCE(SUM(ci.total_price) OVER (), 0) AS subtotal " +
+                "FROM carts c LEFT JOIN cart_items ci ON ci.cart_id = c.id LEFT JOIN products p ON ci.product_id = p.id " +
+                "WHERE c.customer_id = ? ORDER BY ci.id")) {
+            stmt.setInt(1, customerId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!OperationMetrics.readRow(rs)) return null;
+
+                Cart cart = new Cart(rs.getInt("cart_id"), customerId, new ArrayList<>());
+                CartTotals totals = new CartTotals(cart.getId(), rs.getInt("line_count"), rs.getInt("item_count"),
+                    cents(rs, "subtotal"));
+                do {
+                    if (rs.getObject("product_id") != null) {
+                        cart.getItems().add(readCartItem(rs));
+                    }
+                } while (OperationMetrics.readRow(rs));
+                return new CartView(cart, totals);
+            }
+        }
+    }
+
+    // Aggregated in the database: one row back however many lines the cart has
+    @Override
+    public CartTotals findCartTotals(int customerId) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT c.id, COUNT(ci.id) AS line_count, COALESCE(SUM(ci.quantity), 0) AS item_count, " +
+                "COALESCE(SUM(ci.total_price), 0) AS subtotal " +
+                "FROM carts c LEFT JOIN cart_items ci ON ci.cart_id = c.id WHERE c.customer_id = ? GROUP BY c.id")) {
+            stmt.setInt(1, customerId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!OperationMetrics.readRow(rs)) return null;
+                return new CartTotals(rs.getInt("id"), rs.getInt("line_count"), rs.getInt("item_count"), cents(rs, "subtotal"));
+            }
+        }
+    }
+
+    // For checkout only. The cart row is locked by its own statement and the lines are read by a second one,
+    // so they come from a snapshot taken after the lock was granted: concurrent cart writes wait on the
+    // cart_items foreign key to that row, and any that committed while checkout waited for the lock are seen.
+    private Cart loadLockedCart(Connection conn, int customerId) throws SQLException {
+        int cartId;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT id, customer_id FROM carts WHERE customer_id = ? FOR UPDATE")) {
+            stmt.setInt(1, customerId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!OperationMetrics.readRow(rs)) {
+                    return null;
+                }
+                cartId = rs.getInt("id");
+            }
+        }
+        Cart cart = new Cart(cartId, customerId, new ArrayList<>());
+
+        // Load cart items
+        try (PreparedStatement itemsStmt = conn.prepareStatement(
+                "SELECT ci.id, ci.product_id, ci.quantity, ci.unit_price, ci.total_price, p.name " +
+                "FROM cart_items ci JOIN products p ON ci.product_id = p.id WHERE ci.cart_id = ? ORDER BY ci.id")) {
+            itemsStmt.setInt(1, cartId);
+            try (ResultSet itemsRs = itemsStmt.executeQuery()) {
+                while (OperationMetrics.readRow(itemsRs)) {
+                    cart.getItems().add(readCartItem(itemsRs));
+                }
+            }
+        }
+        return cart;
+    }
+
+    // Every cart and its lines in one pass
+    @Override
+    public List<Cart> findAllCarts() throws SQLException {
+        List<Cart> carts = new ArrayList<>();
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT c.id AS cart_id, c.customer_id, ci.id, ci.product_id, ci.quantity, ci.unit_price, ci.total_price, p.name " +
+                "FROM carts c LEFT JOIN cart_items ci ON ci.cart_id = c.id LEFT JOIN products p ON ci.product_id = p.id " +
+                "ORDER BY c.id")) {
+            try (ResultSet rs = stmt.executeQuery()) {
+                Cart cart = null;
+                while (OperationMetrics.readRow(rs)) {
+                    int cartId = rs.getInt("cart_id");
+                    if (cart == null || cart.getId() != cartId) {
+                        cart = new Cart(cartId, rs.getInt("customer_id"), new ArrayList<>());
+                        carts.add(cart);
+                    }
+                    if (rs.getObject("product_id") != null) {
+                        cart.getItems().add(readCartItem(rs));
+                    }
+                }
+            }
+        }
+        return carts;
+    }
+
+    @Override
+    public CartItem findCartItem(int cartId, int productId) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT ci.id, ci.product_id, ci.quantity, ci.unit_price, ci.total_price, p.name " +
+                "FROM cart_items ci JOIN products p ON ci.product_id = p.id WHERE ci.cart_id = ? AND ci.product_id = ?")) {
+            stmt.setInt(1, cartId);
+            stmt.setInt(2, productId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return OperationMetrics.readRow(rs) ? readCartItem(rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public void insertCartItem(int cartId, int productId, int quantity, long unitPriceCents) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement insertStmt = conn.prepareStatement(
+                "INSERT INTO cart_items (cart_id, product_id, quantity, unit_price, total_price) VALUES (?, ?, ?, ?, ?)")) {
+            insertStmt.setInt(1, cartId);
+            insertStmt.setInt(2, productId);
+            insertStmt.setInt(3, quantity);
+            insertStmt.setBigDecimal(4, Money.toDecimal(unitPriceCents));
+            insertStmt.setBigDecimal(5, Money.toDecimal(unitPriceCents * quantity));
+            insertStmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public void updateCartItem(int cartItemId, int quantity, long totalPriceCents) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement updateStmt = conn.prepareStatement(
+                "UPDATE cart_items SET quantity = ?, total_price = ? WHERE id = ?")) {
+            updateStmt.setInt(1, quantity);
+            updateStmt.setBigDecimal(2, Money.toDecimal(totalPriceCents));
+            updateStmt.setInt(3, cartItemId);
+            updateStmt.executeUpdate();
+        }
+    }
+
+    // One round trip. The UNIQUE(cart_id, product_id) constraint turns concurrent adds of the same product into
+    // an update of the existing line rather than a lost update.
+    @Override
+    public CartUpsert upsertCartItem(int customerId, int productId, int quantity) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "WITH customer AS (SELECT id FROM customers WHERE id = ?), " +
+                "cart AS (SELECT c.id FROM carts c JOIN customer cu ON c.customer_id = cu.id), " +
+                "product AS (SELECT id, name, price FROM products WHERE id = ?), " +
+                "upsert AS (" +
+                    "INSERT INTO cart_items (cart_id, product_id, quantity, unit_price, total_price) " +
+                    "SELECT cart.id, product.id, ?, product.price, product.price * ? FROM cart, product " +
+                    "ON CONFLICT (cart_id, product_id) DO UPDATE SET " +
+                    "quantity = cart_items.quantity + EXCLUDED.quantity, " +
+                    "unit_price = EXCLUDED.unit_price, " +
+                    "total_price = (cart_items.quantity + EXCLUDED.quantity) * EXCLUDED.unit_price " +
+                    "RETURNING (xmax = 0) AS inserted, quantity) " +
+                "SELECT EXISTS (SELECT 1 FROM customer) AS customer_exists, " +
+                "EXISTS (SELECT 1 FROM cart) AS cart_exists, " +
+                "(SELECT name FROM product) AS product_name, " +
+                "(SELECT inserted FROM upsert) AS inserted, " +
+                "(SELECT quantity FROM upsert) AS quantity")) {
+            stmt.setInt(1, customerId);
+            stmt.setInt(2, productId);
+            stmt.setInt(3, quantity);
+            stmt.setInt(4, quantity);
+            try (ResultSet rs = stmt.executeQuery()) {
+                OperationMetrics.readRow(rs);
+
+                String productName = rs.getString("product_name");
+                AddToCartResult result;
+                if (!rs.getBoolean("customer_exists")) {
+                    result = AddToCartResult.CUSTOMER_NOT_FOUND;
+                } else if (!rs.getBoolean("cart_exists")) {
+                    result = AddToCartResult.CART_NOT_FOUND;
+                } else if (productName == null) {
+                    result = AddToCartResult.PRODUCT_NOT_FOUND;
+                } else {
+                    result = rs.getBoolean("inserted") ? AddToCartResult.ADDED : AddToCartResult.UPDATED;
+                }
+                return new CartUpsert(result, productName, rs.getInt("quantity"));
+            }
+        }
+    }
+
+    // One round trip however many lines: the product ids and quantities travel as two arrays and are unnested into
+    // rows, priced by a join with products and upserted by one INSERT. Lines are written in product id order, so
+    // two multi-line adds to the same cart lock their rows in the same order instead of deadlocking.
+    @Override
+    public Map<Integer, CartUpsert> upsertCartItems(int customerId, Map<Integer, Integer> quantities) throws SQLException {
+        Integer[] productIds = new Integer[quantities.size()];
+        Integer[] lineQuantities = new Integer[quantities.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+            productIds[i] = line.getKey();
+            lineQuantities[i++] = line.getValue();
+        }
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "WITH customer AS (SELECT id FROM customers WHERE id = ?), " +
+                "cart AS (SELECT c.id FROM carts c JOIN customer cu ON c.customer_id = cu.id), " +
+                "line AS (SELECT * FROM unnest(?::int[], ?::int[]) AS l(product_id, quantity)), " +
+                "priced AS (SELECT l.product_id, l.quantity, p.name, p.price FROM line l JOIN products p ON p.id = l.product_id), " +
+                "upsert AS (" +
+                    "INSERT INTO cart_items (cart_id, product_id, quantity, unit_price, total_price) " +
+                    "SELECT cart.id, priced.product_id, priced.quantity, priced.price, priced.price * priced.quantity " +
+                    "FROM cart, priced ORDER BY priced.product_id " +
+                    "ON CONFLICT (cart_id, product_id) DO UPDATE SET " +
+                    "quantity = cart_items.quantity + EXCLUDED.quantity, " +
+                    "unit_price = EXCLUDED.unit_price, " +
+                    "total_price = (cart_items.quantity + EXCLUDED.quantity) * EXCLUDED.unit_price " +
+                    "RETURNING product_id, (xmax = 0) AS inserted, quantity) " +
+                "SELECT l.product_id, p.name AS product_name, u.inserted, u.quantity, " +
+                "EXISTS (SELECT 1 FROM customer) AS customer_exists, EXISTS (SELECT 1 FROM cart) AS cart_exists " +
+                "FROM line l LEFT JOIN priced p ON p.product_id = l.product_id " +
+                "LEFT JOIN upsert u ON u.product_id = l.product_id")) {
+            stmt.setInt(1, customerId);
+            stmt.setArray(2, conn.createArrayOf("integer", productIds));
+            stmt.setArray(3, conn.createArrayOf("integer", lineQuantities));
+            try (ResultSet rs = stmt.executeQuery()) {
+                Map<Integer, CartUpsert> upserts = new LinkedHashMap<>();
+                for (Integer productId : productIds) {
+                    upserts.put(productId, null);
+                }
+                while (OperationMetrics.readRow(rs)) {
+                    String productName = rs.getString("product_name");
+                    AddToCartResult result;
+                    if (!rs.getBoolean("customer_exists")) {
+                        result = AddToCartResult.CUSTOMER_NOT_FOUND;
+                    } else if (!rs.getBoolean("cart_exists")) {
+                        result = AddToCartResult.CART_NOT_FOUND;
+                    } else if (productName == null) {
+                        result = AddToCartResult.PRODUCT_NOT_FOUND;
+                    } else {
+                        result = rs.getBoolean("inserted") ? AddToCartResult.ADDED : AddToCartResult.UPDATED;
+                    }
+                    upserts.put(rs.getInt("product_id"), new CartUpsert(result, productName, rs.getInt("quantity")));
+                }
+                return upserts;
+            }
+        }
+    }
+
+    @Override
+    public void removeCartItem(int cartId, int productId) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM cart_items WHERE cart_id = ? AND product_id = ?")) {
+            stmt.setInt(1, cartId);
+            stmt.setInt(2, productId);
+            stmt.executeUpdate();
+        }
+    }
+
+    // One batched DELETE plus one batched INSERT in a single transaction
+    @Override
+    public void replaceCartItems(List<Cart> carts) throws SQLException {
+        try (Connection conn = connectionPool.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Integer[] cartIds = new Integer[carts.size()];
+                for (int i = 0; i < cartIds.length; i++) {
+                    cartIds[i] = carts.get(i).getId();
+                }
+                try (PreparedStatement deleteStmt = conn.prepareStatement("DELETE FROM cart_items WHERE cart_id = ANY(?)")) {
+                    deleteStmt.setArray(1, conn.createArrayOf("integer", cartIds));
+                    deleteStmt.executeUpdate();
+                }
+
+                try (PreparedStatement insertStmt = conn.prepareStatement(
+                        "INSERT INTO cart_items (cart_id, product_id, quantity, unit_price, total_price) VALUES (?, ?, ?, ?, ?)")) {
+                    for (Cart cart : carts) {
+                        for (CartItem item : cart.getItems()) {
+                            insertStmt.setInt(1, cart.getId());
+                            insertStmt.setInt(2, item.getProductId());
+                            insertStmt.setInt(3, item.getQuantity());
+                            insertStmt.setBigDecimal(4, Money.toDecimal(item.getUnitPriceCents()));
+                            insertStmt.setBigDecimal(5, Money.toDecimal(item.getTotalPriceCents()));
+                            insertStmt.addBatch();
+                        }
+                    }
+                    insertStmt.executeBatch();
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // Reads the cart once (row-locked), then saves the order, its items and invoice and clears the cart in one
+    // transaction
+    @Override
+    public Checkout checkout(int customerId, CheckoutRules rules, SalesMetrics salesMetrics) throws SQLException {
+        try (Connection conn = connectionPool.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                salesMetrics.ensureSeeded(conn);
+                Checkout checkout = checkout(conn, customerId, rules);
+                if (checkout == null) {
+                    conn.rollback();
+                    return null;
+                }
+                conn.commit();
+                return checkout;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // Group commit: every checkout runs under its own savepoint in one transaction, so the batch costs one commit
+    // (one WAL flush) however many orders it holds, and a checkout that fails is rolled back to its savepoint
+    // without touching the others
+    @Override
+    public List<CheckoutResult> checkoutAll(List<CheckoutRequest> requests, SalesMetrics salesMetrics) throws SQLException {
+        List<CheckoutResult> results = new ArrayList<>(requests.size());
+        try (Connection conn = connectionPool.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                salesMetrics.ensureSeeded(conn);
+                for (CheckoutRequest request : requests) {
+                    Savepoint savepoint = conn.setSavepoint();
+                    try {
+                        results.add(new CheckoutResult(checkout(conn, request.customerId(), request.rules()), null));
+                        conn.releaseSavepoint(savepoint);
+                    } catch (SQLException | RuntimeException e) {
+                        conn.rollback(savepoint);
+                        results.add(new CheckoutResult(null, e));
+                    }
+                }
+                conn.commit();
+                return results;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // The checkout steps on the caller's transaction; null, having written nothing, for a missing or empty cart.
+    // Each statement is closed once used, so the next checkout in a batch takes it back from the connection's
+    // statement cache instead of parsing and planning it again.
+    private Checkout checkout(Connection conn, int customerId, CheckoutRules rules) throws SQLException {
+        Cart cart = loadLockedCart(conn, customerId);
+        if (cart == null || cart.getItems().isEmpty()) {
+            return null;
+        }
+        Order order = rules.createOrder(cart);
+        order.setOrderNumber(orderNumbers.next(conn));
+
+        insertOrder(conn, order);
+        insertOrderItems(conn, order, cart.getItems());
+        Invoice invoice = insertInvoice(conn, rules.createInvoice(order));
+
+        try (PreparedStatement clearStmt = conn.prepareStatement("DELETE FROM cart_items WHERE cart_id = ?")) {
+            clearStmt.setInt(1, cart.getId());
+            clearStmt.executeUpdate();
+        }
+        return new Checkout(order, invoice, cart.getItems());
+    }
+
+    private void insertOrder(Connection conn, Order order) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO orders (customer_id, cart_id, order_number, status, subtotal, tax_amount, shipping_amount, total_amount) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, order.getCustomerId());
+            stmt.setInt(2, order.getCartId());
+            stmt.setString(3, order.getOrderNumber());
+            stmt.setString(4, order.getStatus());
+            stmt.setBigDecimal(5, Money.toDecimal(order.getSubtotalCents()));
+            stmt.setBigDecimal(6, Money.toDecimal(order.getTaxAmountCents()));
+            stmt.setBigDecimal(7, Money.toDecimal(order.getShippingAmountCents()));
+            stmt.setBigDecimal(8, Money.toDecimal(order.getTotalAmountCents()));
+            stmt.executeUpdate();
+            order.setId(generatedId(stmt));
+        }
+    }
+
+    // All lines go to the server as one batch, which the driver rewrites into a multi-row INSERT
+    private void insertOrderItems(Connection conn, Order order, List<CartItem> items) throws SQLException {
+        try (PreparedStatement itemStmt = conn.prepareStatement(
+                "INSERT INTO order_items (order_id, product_id, quantity, unit_price, total_price) VALUES (?, ?, ?, ?, ?)")) {
+            for (CartItem cartItem : items) {
+                itemStmt.setInt(1, order.getId());
+                itemStmt.setInt(2, cartItem.getProductId());
+                itemStmt.setInt(3, cartItem.getQuantity());
+                itemStmt.setBigDecimal(4, Money.toDecimal(cartItem.getUnitPriceCents()));
+                itemStmt.setBigDecimal(5, Money.toDecimal(cartItem.getTotalPriceCents()));
+                itemStmt.addBatch();
+            }
+            itemStmt.executeBatch();
+        }
+    }
+
+    @Override
+    public Invoice insertInvoice(Invoice invoice) throws SQLException {
+        try (Connection conn = connectionPool.getConnection()) {
+            return insertInvoice(conn, invoice);
+        }
+    }
+
+    private Invoice insertInvoice(Connection conn, Invoice invoice) throws SQLException {
+        invoice.setInvoiceNumber(invoiceNumbers.next(conn));
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO invoices (order_id, invoice_number, status, amount, tax_amount, total_amount, due_date) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, invoice.getOrderId());
+            stmt.setString(2, invoice.getInvoiceNumber());
+            stmt.setString(3, invoice.getStatus());
+            stmt.setBigDecimal(4, Money.toDecimal(invoice.getAmountCents()));
+            stmt.setBigDecimal(5, Money.toDecimal(invoice.getTaxAmountCents()));
+            stmt.setBigDecimal(6, Money.toDecimal(invoice.getTotalAmountCents()));
+            stmt.setDate(7, Date.valueOf(invoice.getDueDate().toLocalDate()));
+            stmt.executeUpdate();
+            invoice.setId(generatedId(stmt));
+        }
+        return invoice;
+    }
+
+    // Order lines come back as products (id, name, sku and the unit price paid), one per line
+    @Override
+    public List<Order> findOrders(int customerId) throws SQLException {
+        List<Order> orders = new ArrayList<>();
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT o.id, o.cart_id, o.order_number, o.status, o.subtotal, o.tax_amount, o.shipping_amount, " +
+                "o.total_amount, o.order_date, oi.product_id, oi.unit_price, p.name, p.sku " +
+                "FROM orders o LEFT JOIN order_items oi ON oi.order_id = o.id LEFT JOIN products p ON oi.product_id = p.id " +
+                "WHERE o.customer_id = ? ORDER BY o.id, oi.id")) {
+            stmt.setInt(1, customerId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                Order order = null;
+                while (OperationMetrics.readRow(rs)) {
+                    int orderId = rs.getInt("id");
+                    if (order == null || order.getId() != orderId) {
+                        order = new Order();
+                        order.setId(orderId);
+                        order.setCustomerId(customerId);
+                        order.setCartId(rs.getInt("cart_id"));
+                        order.setOrderNumber(rs.getString("order_number"));
+                        order.setStatus(rs.getString("status"));
+                        order.setSubtotalCents(cents(rs, "subtotal"));
+                        order.setTaxAmountCents(cents(rs, "tax_amount"));
+                        order.setShippingAmountCents(cents(rs, "shipping_amount"));
+                        order.setTotalAmountCents(cents(rs, "total_amount"));
+                        order.setOrderDate(rs.getTimestamp("order_date").toLocalDateTime());
+                        order.setItems(new ArrayList<>());
+                        orders.add(order);
+                    }
+                    if (rs.getObject("product_id") != null) {
+                        Product line = new Product(rs.getInt("product_id"), rs.getString("name"), 0, rs.getString("sku"));
+                        line.setPriceCents(cents(rs, "unit_price"));
+                        order.getItems().add(line);
+                    }
+                }
+            }
+        }
+        return orders;
+    }
+
+    @Override
+    public Invoice findInvoiceByOrder(int orderId) throws SQLException {
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, invoice_number, status, amount, tax_amount, total_amount, due_date, created_at " +
+                "FROM invoices WHERE order_id = ? ORDER BY id LIMIT 1")) {
+            stmt.setInt(1, orderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!OperationMetrics.readRow(rs)) return null;
+                Invoice invoice = new Invoice();
+                invoice.setId(rs.getInt("id"));
+                invoice.setOrderId(orderId);
+                invoice.setInvoiceNumber(rs.getString("invoice_number"));
+                invoice.setStatus(rs.getString("status"));
+                invoice.setAmountCents(cents(rs, "amount"));
+                invoice.setTaxAmountCents(cents(rs, "tax_amount"));
+                invoice.setTotalAmountCents(cents(rs, "total_amount"));
+                invoice.setDueDate(rs.getDate("due_date").toLocalDate().atStartOfDay());
+                invoice.setCreatedDate(rs.getTimestamp("created_at").toLocalDateTime());
+                return invoice;
+            }
+        }
+    }
+
+    @Override
+    public void seedSalesMetrics(SalesMetrics salesMetrics) throws SQLException {
+        if (salesMetrics.isSeeded()) return;
+        try (Connection conn = connectionPool.getConnection()) {
+            salesMetrics.ensureSeeded(conn);
+        }
+    }
+
+    private static CartItem readCartItem(ResultSet rs) throws SQLException {
+        return new CartItem(
+            rs.getInt("id"),
+            rs.getInt("product_id"),
+            rs.getInt("quantity"),
+            cents(rs, "unit_price"),
+            cents(rs, "total_price"),
+            rs.getString("name")
+        );
+    }
+
+    private static long cents(ResultSet rs, String column) throws SQLException {
+        return rs.getBigDecimal(column).movePointRight(2).longValueExact();
+    }
+
+    private static int generatedId(Statement stmt) throws SQLException {
+        try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+            return OperationMetrics.readRow(generatedKeys) ? generatedKeys.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.bounteous.ecom;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// Read-mostly product catalog. Lookups go against an immutable snapshot indexed by id and SKU, loaded on first use.
+// A refresh builds a whole new snapshot on a background thread and swaps it in atomically, so only the very first
+// load blocks a request and no reader ever sees a half-built index. The snapshot is reloaded once it is older than
+// the refresh interval or after invalidate(); until the new one is in, readers get the previous one.
+public class ProductCatalog implements AutoCloseable {
+    private static final AsyncLogger log = AsyncLogger.getDefault();
+    private final EcommerceStore store;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final ExecutorService refresher;
+    private volatile long refreshIntervalNanos;
+    private volatile boolean invalidated;
+
+    public ProductCatalog(EcommerceStore store, Duration refreshInterval) {
+        this.store = store;
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+        this.refresher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ecom-catalog-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Product findById(int productId) throws SQLException {
+        return current().byId.get(productId);
+    }
+
+    public Product findBySku(String sku) throws SQLException {
+        return current().bySku.get(sku);
+    }
+
+    public List<Product> getProducts() throws SQLException {
+        return current().all;
+    }
+
+    public void invalidate() {
+        invalidated = true;
+    }
+
+    public void setRefreshInterval(Duration refreshInterval) {
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    private Snapshot current() throws SQLException {
+        Snapshot current = snapshot.get();
+        if (current != null && !invalidated && System.nanoTime() - current.loadedAt < refreshIntervalNanos) {
+            return current;
+        }
+        if (current == null) {
+            // Nothing to serve yet, so the first callers wait for the initial load
+            reloadLock.lock();
+            try {
+                current = snapshot.get();
+                return current != null ? current : reload();
+            } finally {
+                reloadLock.unlock();
+            }
+        }
+        // Stale: the first caller to notice queues one background reload, and everyone keeps the previous snapshot
+        if (refreshing.compareAndSet(false, true)) {
+            try {
+                refresher.execute(this::refreshInBackground);
+            } catch (RejectedExecutionException e) {
+                refreshing.set(false);
+            }
+        }
+        return current;
+    }
+
+    private void refreshInBackground() {
+        reloadLock.lock();
+        try {
+            reload();
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Product catalog refresh failed, serving previous snapshot: {}", e.getMessage());
+        } finally {
+            refreshing.set(false);
+            reloadLock.unlock();
+        }
+    }
+
+    private Snapshot reload() throws SQLException {
+        // Cleared before reading so an invalidation that races with the load triggers another one
+        invalidated = false;
+        long loadedAt = System.nanoTime();
+        List<Product> products = new ArrayList<>();
+        try (Stream<Product> all = store.streamProducts(new ProductQuery())) {
+            all.forEach(products::add);
+        }
+        Snapshot loaded = new Snapshot(products, loadedAt);
+        snapshot.set(loaded);
+        return loaded;
+    }
+
+    private static final class Snapshot {
+        private final List<Product> all;
+        private final IntObjectHashMap<Product> byId;
+        private final Map<String, Product> bySku;
+        private final long loadedAt;
+
+        Snapshot(List<Product> products, long loadedAt) {
+            this.all = Collections.unmodifiableList(products);
+            this.byId = new IntObjectHashMap<>(products.size());
+            this.bySku = new HashMap<>(products.size() * 2);
+            for (Product product : products) {
+                byId.put(product.getId(), product);
+                bySku.put(product.getSku(), product);
+            }
+            this.loadedAt = loadedAt;
+        }
+    }
+}
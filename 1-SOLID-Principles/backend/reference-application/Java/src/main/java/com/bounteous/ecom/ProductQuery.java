@@ -0,0 +1,25 @@
+package com.bounteous.ecom;
+
+// Filter and paging options for streaming product reads. Paging is keyset based: pass the last id of the previous
+// page as afterId, which stays an index range scan however deep the page is.
+public class ProductQuery {
+    static final int DEFAULT_FETCH_SIZE = 500;
+
+    private int afterId = 0;
+    // 0 means no limit
+    private int limit = 0;
+    // null means all categories
+    private String category;
+    // Rows fetched per round trip from the server-side cursor
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    // Getters and setters
+    public int getAfterId() { return afterId; }
+    public void setAfterId(int afterId) { this.afterId = afterId; }
+    public int getLimit() { return limit; }
+    public void setLimit(int limit) { this.limit = limit; }
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+    public int getFetchSize() { return fetchSize; }
+    public void setFetchSize(int fetchSize) { this.fetchSize = fetchSize; }
+}
@@ -0,0 +1,157 @@
+package com.bounteous.ecom;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Sends read-only operations to PostgreSQL read replicas, picked round-robin or by fewest connections in use, and
+// everything else to the primary store. Replicas lag the primary, so a customer's reads go to the primary for
+// readYourWritesWindow after any write of theirs; the window has to be longer than the replication lag. A read
+// that fails on a replica is answered by the primary, and a replica that cannot be reached is skipped for
+// retryAfter before it is tried again. The replica pools belong to whoever created them and stay open.
+public class ReplicaRouter {
+    private static final AsyncLogger log = AsyncLogger.getDefault();
+    // Every this many writes, customers whose window has passed are dropped from the map
+    private static final int PRUNE_EVERY_WRITES = 4096;
+
+    public enum Selection { ROUND_ROBIN, LEAST_LOADED }
+
+    // One store read, e.g. store -> store.findCartView(customerId)
+    public interface Read<T> {
+        T from(EcommerceStore store) throws SQLException;
+    }
+
+    private final EcommerceStore primary;
+    private final Replica[] replicas;
+    private final Selection selection;
+    private final long readYourWritesNanos;
+    private volatile long retryAfterNanos = Duration.ofSeconds(5).toNanos();
+    private final ConcurrentHashMap<Integer, Long> lastWriteByCustomer = new ConcurrentHashMap<>();
+    private final AtomicInteger writes = new AtomicInteger();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    public ReplicaRouter(EcommerceStore primary, List<ConnectionPool> replicaPools, Selection selection, Duration readYourWritesWindow) {
+        if (replicaPools.isEmpty()) {
+            throw new IllegalArgumentException("At least one replica is required");
+        }
+        this.primary = primary;
+        this.replicas = new Replica[replicaPools.size()];
+        for (int i = 0; i < replicas.length; i++) {
+            replicas[i] = new Replica(i, replicaPools.get(i));
+        }
+        this.selection = selection;
+        this.readYourWritesNanos = readYourWritesWindow.toNanos();
+    }
+
+    // A read that does not depend on any one customer's writes, such as the catalog
+    public <T> T read(Read<T> read) throws SQLException {
+        return readFrom(pick(), read);
+    }
+
+    public <T> T read(int customerId, Read<T> read) throws SQLException {
+        return readFrom(wroteRecently(customerId) ? null : pick(), read);
+    }
+
+    // Pins the customer's reads to the primary for the read-your-writes window, starting now
+    public void wrote(int customerId) {
+        lastWriteByCustomer.put(customerId, System.nanoTime());
+        if (writes.incrementAndGet() % PRUNE_EVERY_WRITES == 0) {
+            long now = System.nanoTime();
+            lastWriteByCustomer.values().removeIf(writtenAt -> now - writtenAt >= readYourWritesNanos);
+        }
+    }
+
+    public void setRetryAfter(Duration retryAfter) {
+        this.retryAfterNanos = retryAfter.toNanos();
+    }
+
+    public long getReplicaReads(int replica) {
+        return replicas[replica].reads.sum();
+    }
+
+    public long getPrimaryReads() {
+        return primaryReads.sum();
+    }
+
+    // Reads that failed on a replica and were answered by the primary
+    public long getFailovers() {
+        return failovers.sum();
+    }
+
+    private boolean wroteRecently(int customerId) {
+        Long writtenAt = lastWriteByCustomer.get(customerId);
+        if (writtenAt == null) return false;
+        if (System.nanoTime() - writtenAt < readYourWritesNanos) return true;
+        lastWriteByCustomer.remove(customerId, writtenAt);
+        return false;
+    }
+
+    private <T> T readFrom(Replica replica, Read<T> read) throws SQLException {
+        if (replica != null) {
+            try {
+                T result = read.from(replica.store);
+                replica.reads.increment();
+                return result;
+            } catch (SQLException e) {
+                failovers.increment();
+                if (isConnectionFailure(e)) {
+                    replica.downUntil = System.nanoTime() + retryAfterNanos;
+                    log.warn("Replica {} unreachable, reading from the primary for {}ms: {}",
+                        replica.index, retryAfterNanos / 1_000_000, e.getMessage());
+                } else {
+                    // e.g. a query cancelled by a conflict with replay on the standby
+                    log.warn("Read failed on replica {}, retrying on the primary: {}", replica.index, e.getMessage());
+                }
+            }
+        }
+        primaryReads.increment();
+        return read.from(primary);
+    }
+
+    // The next replica that is not marked down, or null to use the primary
+    private Replica pick() {
+        long now = System.nanoTime();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.length);
+        Replica picked = null;
+        for (int i = 0; i < replicas.length; i++) {
+            Replica replica = replicas[(start + i) % replicas.length];
+            if (replica.downUntil - now > 0) continue;
+            if (selection == Selection.ROUND_ROBIN) return replica;
+            // Least loaded; scanning from a rotating start spreads ties
+            if (picked == null || replica.load() < picked.load()) {
+                picked = replica;
+            }
+        }
+        return picked;
+    }
+
+    // Class 08 is PostgreSQL's connection exception; the pool reports an exhausted wait as transient
+    private static boolean isConnectionFailure(SQLException e) {
+        return e instanceof SQLTransientConnectionException
+            || (e.getSQLState() != null && e.getSQLState().startsWith("08"));
+    }
+
+    private static final class Replica {
+        final int index;
+        final ConnectionPool pool;
+        final PostgresStore store;
+        final LongAdder reads = new LongAdder();
+        volatile long downUntil = System.nanoTime();
+
+        Replica(int index, ConnectionPool pool) {
+            this.index = index;
+            this.pool = pool;
+            this.store = new PostgresStore(pool);
+        }
+
+        int load() {
+            return pool.getActiveConnections() + pool.getThreadsAwaitingConnection();
+        }
+    }
+}
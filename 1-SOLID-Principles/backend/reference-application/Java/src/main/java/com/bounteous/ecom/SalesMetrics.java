@@ -0,0 +1,192 @@
+package com.bounteous.ecom;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Running sales totals kept as per-minute, per-hour and per-day buckets plus all-time counters, so a report costs
+// O(buckets) no matter how many orders exist. Checkouts add to LongAdders (no shared lock or contended CAS); each
+// bucket ring reuses a slot once its period has fallen out of the window. History comes from one aggregate query
+// over orders the first time the metrics are used, which keeps reports correct across restarts.
+public class SalesMetrics {
+    private static final int HISTORY_DAYS = 366;
+    private static final String SEED_SQL =
+        "WITH recent AS (" +
+        "  SELECT FLOOR(EXTRACT(EPOCH FROM order_date AT TIME ZONE current_setting('TimeZone')) * 1000)::BIGINT AS at_millis, total_amount" +
+        "  FROM orders WHERE order_date >= CURRENT_TIMESTAMP - INTERVAL '" + HISTORY_DAYS + " days'" +
+        ") " +
+        "SELECT 'T' AS kind, 0::BIGINT AS period, COUNT(*) AS orders, COALESCE(SUM(total_amount), 0) AS revenue FROM orders " +
+        "UNION ALL SELECT 'D', at_millis / 86400000, COUNT(*), SUM(total_amount) FROM recent GROUP BY 2 " +
+        "UNION ALL SELECT 'H', at_millis / 3600000, COUNT(*), SUM(total_amount) FROM recent " +
+        "  WHERE at_millis >= ? GROUP BY 2 " +
+        "UNION ALL SELECT 'M', at_millis / 60000, COUNT(*), SUM(total_amount) FROM recent " +
+        "  WHERE at_millis >= ? GROUP BY 2";
+
+    public enum Granularity {
+        MINUTE(TimeUnit.MINUTES.toMillis(1), 24 * 60),
+        HOUR(TimeUnit.HOURS.toMillis(1), 7 * 24),
+        DAY(TimeUnit.DAYS.toMillis(1), HISTORY_DAYS);
+
+        private final long millis;
+        private final int slots;
+
+        Granularity(long millis, int slots) {
+            this.millis = millis;
+            this.slots = slots;
+        }
+    }
+
+    public record Totals(long orders, long revenueCents) {
+        public long averageCents() {
+            return orders == 0 ? 0 : revenueCents / orders;
+        }
+    }
+
+    private final LongAdder totalOrders = new LongAdder();
+    private final LongAdder totalRevenueCents = new LongAdder();
+    private final Ring[] rings;
+    private volatile boolean seeded;
+
+    public SalesMetrics() {
+        Granularity[] granularities = Granularity.values();
+        rings = new Ring[granularities.length];
+        for (Granularity granularity : granularities) {
+            rings[granularity.ordinal()] = new Ring(granularity.slots);
+        }
+    }
+
+    // Replays past orders into metrics that are being seeded, e.g. with record(atMillis, totalCents)
+    interface History {
+        void replay(SalesMetrics metrics) throws SQLException;
+    }
+
+    // Loads history once. Checkout calls this inside its transaction before inserting the order, so the seed
+    // query can never see an order that will also be recorded.
+    public void ensureSeeded(Connection conn) throws SQLException {
+        ensureSeeded(metrics -> metrics.seed(conn, System.currentTimeMillis()));
+    }
+
+    // For stores without SQL: the same once-only seeding from whatever history the store keeps
+    void ensureSeeded(History history) throws SQLException {
+        if (seeded) return;
+        synchronized (this) {
+            if (seeded) return;
+            history.replay(this);
+            seeded = true;
+        }
+    }
+
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    public void record(long totalCents) {
+        record(System.currentTimeMillis(), totalCents);
+    }
+
+    void record(long atMillis, long totalCents) {
+        totalOrders.increment();
+        totalRevenueCents.add(totalCents);
+        for (Granularity granularity : Granularity.values()) {
+            Bucket bucket = bucketFor(granularity, atMillis / granularity.millis);
+            bucket.orders.increment();
+            bucket.revenueCents.add(totalCents);
+        }
+    }
+
+    public Totals getTotals() {
+        return new Totals(totalOrders.sum(), totalRevenueCents.sum());
+    }
+
+    // Sum of the current period and the (periods - 1) before it, e.g. last(HOUR, 24) for the last day
+    public Totals last(Granularity granularity, int periods) {
+        return last(granularity, periods, System.currentTimeMillis());
+    }
+
+    Totals last(Granularity granularity, int periods, long nowMillis) {
+        AtomicReferenceArray<Bucket> ring = rings[granularity.ordinal()].buckets;
+        long newest = nowMillis / granularity.millis;
+        long oldest = newest - Math.min(periods, granularity.slots) + 1;
+        long orders = 0;
+        long revenue = 0;
+        for (long period = oldest; period <= newest; period++) {
+            Bucket bucket = ring.get(slot(granularity, period));
+            if (bucket != null && bucket.period == period) {
+                orders += bucket.orders.sum();
+                revenue += bucket.revenueCents.sum();
+            }
+        }
+        return new Totals(orders, revenue);
+    }
+
+    private void seed(Connection conn, long nowMillis) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SEED_SQL)) {
+            stmt.setLong(1, (nowMillis / Granularity.HOUR.millis - Granularity.HOUR.slots + 1) * Granularity.HOUR.millis);
+            stmt.setLong(2, (nowMillis / Granularity.MINUTE.millis - Granularity.MINUTE.slots + 1) * Granularity.MINUTE.millis);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (OperationMetrics.readRow(rs)) {
+                    long orders = rs.getLong("orders");
+                    long revenue = rs.getBigDecimal("revenue").movePointRight(2).longValueExact();
+                    switch (rs.getString("kind")) {
+                        case "T" -> {
+                            totalOrders.add(orders);
+                            totalRevenueCents.add(revenue);
+                        }
+                        case "D" -> addTo(Granularity.DAY, rs.getLong("period"), orders, revenue);
+                        case "H" -> addTo(Granularity.HOUR, rs.getLong("period"), orders, revenue);
+                        default -> addTo(Granularity.MINUTE, rs.getLong("period"), orders, revenue);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addTo(Granularity granularity, long period, long orders, long revenueCents) {
+        Bucket bucket = bucketFor(granularity, period);
+        bucket.orders.add(orders);
+        bucket.revenueCents.add(revenueCents);
+    }
+
+    // Returns the bucket for a period, replacing whatever older period held the slot
+    private Bucket bucketFor(Granularity granularity, long period) {
+        AtomicReferenceArray<Bucket> ring = rings[granularity.ordinal()].buckets;
+        int slot = slot(granularity, period);
+        while (true) {
+            Bucket bucket = ring.get(slot);
+            if (bucket != null && bucket.period == period) return bucket;
+            if (bucket != null && bucket.period > period) {
+                // A late write for a period that has already been rotated out: keep it out of the newer bucket
+                return new Bucket(period);
+            }
+            Bucket fresh = new Bucket(period);
+            if (ring.compareAndSet(slot, bucket, fresh)) return fresh;
+        }
+    }
+
+    private static int slot(Granularity granularity, long period) {
+        return (int) Math.floorMod(period, (long) granularity.slots);
+    }
+
+    // Typed holder so the per-granularity rings can live in a plain array without a generic array creation
+    private static final class Ring {
+        private final AtomicReferenceArray<Bucket> buckets;
+
+        Ring(int slots) {
+            this.buckets = new AtomicReferenceArray<>(slots);
+        }
+    }
+
+    private static final class Bucket {
+        private final long period;
+        private final LongAdder orders = new LongAdder();
+        private final LongAdder revenueCents = new LongAdder();
+
+        Bucket(long period) {
+            this.period = period;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.bounteous.ecom;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs work that does not have to finish before a request returns (invoice rendering, emails, audit logging).
+// At most `capacity` tasks are queued or running at once; beyond that, or once the pipeline is shut down, a task
+// goes straight to the dead-letter list with 0 attempts, so a request thread never runs (or sleeps between retries
+// of) a side effect. Failed tasks are retried with a linear backoff and end up in the dead-letter list once they
+// run out of attempts; resubmitDeadLetters() queues them again. Tasks run on virtual threads when the JVM has them.
+public class SideEffectPipeline implements AutoCloseable {
+    private static final AsyncLogger log = AsyncLogger.getDefault();
+    private static final int FALLBACK_WORKERS = 16;
+
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    public record DeadLetter(String name, Task task, Exception error, int attempts) {
+    }
+
+    private final ExecutorService executor;
+    private final int capacity;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Object idleMonitor = new Object();
+    private final ConcurrentLinkedQueue<DeadLetter> deadLetters = new ConcurrentLinkedQueue<>();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private volatile boolean closed;
+
+    public SideEffectPipeline(int capacity, int maxAttempts, Duration retryBackoff) {
+        this.capacity = capacity;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoff.toMillis();
+        this.executor = VirtualThreads.newPerTaskExecutor("ecom-side-effects", FALLBACK_WORKERS);
+    }
+
+    public void submit(String name, Task task) {
+        if (closed) {
+            overflow(name, task, "Side-effect pipeline is shut down");
+            return;
+        }
+        if (inFlight.incrementAndGet() > capacity) {
+            finished();
+            overflow(name, task, "Side-effect pipeline is full (" + capacity + " tasks)");
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    runWithRetries(name, task);
+                } finally {
+                    finished();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            finished();
+            overflow(name, task, "Side-effect pipeline is shut down");
+        }
+    }
+
+    // Submits every dead-lettered task again, e.g. once the mail server is back; returns how many were submitted
+    public int resubmitDeadLetters() {
+        int resubmitted = 0;
+        for (DeadLetter letter; (letter = deadLetters.poll()) != null; resubmitted++) {
+            submit(letter.name(), letter.task());
+        }
+        return resubmitted;
+    }
+
+    // Waits until every submitted task has completed or been dead-lettered
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (idleMonitor) {
+            while (inFlight.get() > 0) {
+                long remainingMillis = (deadline - System.nanoTime()) / 1_000_000;
+                if (remainingMillis <= 0) return false;
+                idleMonitor.wait(remainingMillis);
+            }
+        }
+        return true;
+    }
+
+    public int getQueueDepth() { return inFlight.get(); }
+    public long getCompleted() { return completed.sum(); }
+    public long getRetries() { return retries.sum(); }
+    public long getOverflows() { return overflows.sum(); }
+
+    public List<DeadLetter> getDeadLetters() {
+        return new ArrayList<>(deadLetters);
+    }
+
+    // Stops taking new work onto the pool and lets queued tasks finish; later submissions go to the dead-letter list
+    public boolean shutdown(Duration timeout) throws InterruptedException {
+        closed = true;
+        boolean drained = awaitIdle(timeout);
+        executor.shutdown();
+        return drained;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (!shutdown(Duration.ofSeconds(30))) {
+                log.warn("Side-effect pipeline closed with {} tasks still running", inFlight.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWithRetries(String name, Task task) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                task.run();
+                completed.increment();
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    deadLetters.add(new DeadLetter(name, task, e, attempt));
+                    log.error("Side effect {} failed after {} attempts: {}", name, attempt, e.getMessage());
+                    return;
+                }
+                retries.increment();
+                try {
+                    Thread.sleep(retryBackoffMillis * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    deadLetters.add(new DeadLetter(name, task, e, attempt));
+                    return;
+                }
+            }
+        }
+    }
+
+    private void overflow(String name, Task task, String reason) {
+        overflows.increment();
+        deadLetters.add(new DeadLetter(name, task, new RejectedExecutionException(reason), 0));
+        log.warn("Side effect {} dead-lettered: {}", name, reason);
+    }
+
+    private void finished() {
+        if (inFlight.decrementAndGet() == 0) {
+            synchronized (idleMonitor) {
+                idleMonitor.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.bounteous.ecom;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// LRU cache of prepared statements for one physical connection, keyed by SQL text. A statement is taken out of the
+// cache while a caller is using it, so two open statements for the same SQL never share a JDBC object.
+// Not thread-safe: a pooled connection is only ever used by the borrower that holds it.
+final class StatementCache {
+    private final int maxSize;
+    private final LinkedHashMap<StatementKey, PreparedStatement> statements;
+
+    StatementCache(int maxSize, LongAdder evictions) {
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StatementKey, PreparedStatement> eldest) {
+                if (size() <= StatementCache.this.maxSize) {
+                    return false;
+                }
+                evictions.increment();
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    PreparedStatement take(StatementKey key) {
+        return statements.remove(key);
+    }
+
+    void offer(StatementKey key, PreparedStatement statement) {
+        if (maxSize == 0 || statements.putIfAbsent(key, statement) != null) {
+            closeQuietly(statement);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // The statement is being discarded either way
+        }
+    }
+
+    record StatementKey(String sql, int autoGeneratedKeys) {
+    }
+}
@@ -0,0 +1,25 @@
+package com.bounteous.ecom;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// Fixed table of locks indexed by a hash of the key, so per-key mutual exclusion needs no lock-per-key map and no
+// cleanup. Two keys share a lock only when they land on the same stripe, which is rare with enough stripes.
+final class StripedLocks {
+    private final ReentrantLock[] locks;
+    private final int shift;
+
+    StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(size);
+    }
+
+    // Fibonacci hashing: the top bits of key * 2^32/phi, which put ids handed out one after another (database
+    // sequences) on different stripes
+    ReentrantLock get(int key) {
+        return locks[(key * 0x9E3779B9) >>> shift];
+    }
+}
@@ -0,0 +1,34 @@
+package com.bounteous.ecom;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Thread-per-task executors on virtual threads. The build targets Java 17, where virtual threads do not exist yet,
+// so the factory is looked up at runtime and a fixed pool of daemon platform threads is used when it is missing.
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    static boolean available() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    static ExecutorService newPerTaskExecutor(String fallbackThreadName, int fallbackThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newFixedThreadPool(fallbackThreads, runnable -> {
+                Thread thread = new Thread(runnable, fallbackThreadName + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+
+class AsyncLoggerTests {
+
+    @Test
+    void info_ShouldFillPlaceholdersOnWriterThread() {
+        // Arrange
+        StringWriter out = new StringWriter();
+        AsyncLogger log = new AsyncLogger(AsyncLogger.Level.INFO, 16, out);
+
+        // Act
+        log.info("Added {} {} to cart", 2, "Laptop");
+        log.flush();
+
+        // Assert
+        assertThat(out.toString()).contains("INFO [" + Thread.currentThread().getName() + "] Added 2 Laptop to cart");
+        log.close();
+    }
+
+    @Test
+    void warn_WithTrailingThrowable_ShouldWriteItsStackTrace() {
+        // Arrange
+        StringWriter out = new StringWriter();
+        AsyncLogger log = new AsyncLogger(AsyncLogger.Level.INFO, 16, out);
+
+        // Act
+        log.warn("Connection held for {}ms", 61_000, new Exception("Connection borrowed by worker-1"));
+        log.flush();
+
+        // Assert
+        assertThat(out.toString())
+                .contains("WARN [" + Thread.currentThread().getName() + "] Connection held for 61000ms")
+                .contains("java.lang.Exception: Connection borrowed by worker-1")
+                .contains("at com.bounteous.ecom.AsyncLoggerTests.warn_WithTrailingThrowable_ShouldWriteItsStackTrace");
+        log.close();
+    }
+
+    @Test
+    void debug_BelowThreshold_ShouldNotFormatArguments() {
+        // Arrange
+        StringWriter out = new StringWriter();
+        AsyncLogger log = new AsyncLogger(AsyncLogger.Level.INFO, 16, out);
+        AtomicInteger formatted = new AtomicInteger();
+        Object argument = new Object() {
+            @Override
+            public String toString() {
+                formatted.incrementAndGet();
+                return "expensive";
+            }
+        };
+
+        // Act
+        log.debug("Value {}", argument);
+        log.flush();
+
+        // Assert
+        assertThat(formatted).hasValue(0);
+        assertThat(out.toString()).isEmpty();
+        log.close();
+    }
+
+    @Test
+    void event_ShouldWriteKeyValuePairs() {
+        // Arrange
+        StringWriter out = new StringWriter();
+        AsyncLogger log = new AsyncLogger(AsyncLogger.Level.INFO, 16, out);
+
+        // Act
+        log.event(AsyncLogger.Level.INFO, "order_processed", "order_number", "ORD-1", "total", Money.formatted(1205));
+        log.flush();
+
+        // Assert
+        assertThat(out.toString()).contains("event=order_processed order_number=ORD-1 total=12.05");
+        log.close();
+    }
+
+    @Test
+    void info_AfterWriterWentIdle_ShouldWakeItWithoutPolling() throws InterruptedException {
+        // Arrange - remember which thread writes
+        AtomicReference<Thread> writer = new AtomicReference<>();
+        StringWriter out = new StringWriter() {
+            @Override
+            public StringWriter append(CharSequence text) {
+                writer.set(Thread.currentThread());
+                return super.append(text);
+            }
+        };
+        AsyncLogger log = new AsyncLogger(AsyncLogger.Level.INFO, 16, out);
+        log.info("first");
+        log.flush();
+
+        // Act - wait for the writer to park
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writer.get().getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.State idle = writer.get().getState();
+        log.info("second");
+        log.flush();
+
+        // Assert - parked with no timeout, and a new message still gets written
+        assertThat(idle).isEqualTo(Thread.State.WAITING);
+        assertThat(out.toString()).contains("second");
+        log.close();
+    }
+
+    @Test
+    void info_WhenBufferIsFull_ShouldDropAndCount() throws InterruptedException {
+        // Arrange - a writer stuck on its first message leaves no room in the ring
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        Writer blocked = new StringWriter() {
+            @Override
+            public StringWriter append(CharSequence text) {
+                writing.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.append(text);
+            }
+        };
+        AsyncLogger log = new AsyncLogger(AsyncLogger.Level.INFO, 4, blocked);
+        log.info("first");
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            log.info("message {}", i);
+        }
+
+        // Assert - the slot being written is still held, so only 3 more fit
+        assertThat(log.getDropped()).isEqualTo(7);
+        release.countDown();
+        log.close();
+    }
+}
@@ -0,0 +1,159 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ConnectionPoolTests {
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() {
+        ConnectionPoolSettings settings = new ConnectionPoolSettings();
+        settings.setMinIdle(1);
+        settings.setMaxSize(2);
+        settings.setMaxWaitMillis(200);
+        pool = new ConnectionPool(settings);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void constructor_ShouldPreWarmMinIdleConnections() {
+        assertThat(pool.getTotalConnections()).isEqualTo(1);
+        assertThat(pool.getIdleConnections()).isEqualTo(1);
+    }
+
+    @Test
+    void close_ShouldReturnConnectionForReuse() throws SQLException {
+        // Arrange
+        Connection first = pool.getConnection();
+        String backendPid = backendPid(first);
+        first.close();
+
+        // Act
+        Connection second = pool.getConnection();
+
+        // Assert - the same physical connection is handed out again
+        assertThat(backendPid(second)).isEqualTo(backendPid);
+        assertThat(pool.getTotalConnections()).isEqualTo(1);
+        second.close();
+    }
+
+    @Test
+    void getConnection_WhenPoolExhausted_ShouldTimeOut() throws SQLException {
+        // Arrange
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+
+        // Act & Assert
+        assertThatThrownBy(() -> pool.getConnection())
+                .isInstanceOf(SQLTransientConnectionException.class)
+                .hasMessageContaining("waiting for a connection");
+
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void housekeeping_WithConnectionHeldPastThreshold_ShouldReportLeakOnce() throws Exception {
+        // Arrange
+        ConnectionPoolSettings settings = new ConnectionPoolSettings();
+        settings.setMinIdle(0);
+        settings.setLeakDetectionThresholdMillis(50);
+        settings.setHousekeepingIntervalMillis(20);
+        settings.setCaptureBorrowSite(true);
+        try (ConnectionPool leaky = new ConnectionPool(settings)) {
+            // Act
+            Connection held = leaky.getConnection();
+            Thread.sleep(200);
+
+            // Assert
+            assertThat(leaky.getLeaksDetected()).isEqualTo(1);
+            held.close();
+        }
+    }
+
+    @Test
+    void closedHandle_ShouldRejectFurtherUse() throws SQLException {
+        // Arrange
+        Connection connection = pool.getConnection();
+        connection.close();
+
+        // Act & Assert
+        assertThat(connection.isClosed()).isTrue();
+        assertThatThrownBy(() -> connection.createStatement())
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("returned to the pool");
+    }
+
+    @Test
+    void close_ShouldRollBackUncommittedWork() throws SQLException {
+        // Arrange
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        connection.createStatement().executeUpdate("UPDATE products SET stock_quantity = stock_quantity WHERE id = -1");
+
+        // Act
+        connection.close();
+
+        // Assert - the next borrower gets an autocommit connection
+        try (Connection next = pool.getConnection()) {
+            assertThat(next.getAutoCommit()).isTrue();
+        }
+    }
+
+    @Test
+    void prepareStatement_WithSameSqlOnReturnedConnection_ShouldHitStatementCache() throws SQLException {
+        // Arrange
+        String sql = "SELECT name FROM products WHERE id = ?";
+        try (Connection connection = pool.getConnection()) {
+            connection.prepareStatement(sql).close();
+        }
+
+        // Act
+        PreparedStatement reused;
+        try (Connection connection = pool.getConnection()) {
+            reused = connection.prepareStatement(sql);
+            reused.setInt(1, -1);
+            assertThat(reused.executeQuery().next()).isFalse();
+        }
+
+        // Assert
+        assertThat(pool.getStatementCacheMisses()).isEqualTo(1);
+        assertThat(pool.getStatementCacheHits()).isEqualTo(1);
+        assertThat(reused.isClosed()).isTrue();
+    }
+
+    @Test
+    void prepareStatement_WithSameSqlOpenTwice_ShouldNotShareStatement() throws SQLException {
+        // Arrange
+        String sql = "SELECT name FROM products WHERE id = ?";
+        try (Connection connection = pool.getConnection()) {
+            // Act
+            PreparedStatement first = connection.prepareStatement(sql);
+            PreparedStatement second = connection.prepareStatement(sql);
+
+            // Assert
+            assertThat(first.unwrap(PreparedStatement.class)).isNotSameAs(second.unwrap(PreparedStatement.class));
+            assertThat(pool.getStatementCacheMisses()).isEqualTo(2);
+        }
+    }
+
+    private String backendPid(Connection connection) throws SQLException {
+        var rs = connection.createStatement().executeQuery("SELECT pg_backend_pid()");
+        rs.next();
+        return rs.getString(1);
+    }
+}
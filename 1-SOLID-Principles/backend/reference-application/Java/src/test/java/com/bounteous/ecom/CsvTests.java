@@ -0,0 +1,56 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.*;
+
+class CsvTests {
+
+    @Test
+    void appendField_ShouldQuoteOnlyWhenNeeded() {
+        // Arrange
+        StringBuilder out = new StringBuilder();
+
+        // Act
+        for (String value : new String[] {"plain", null, "", "a,b", "say \"hi\"", "two\nlines", "\\."}) {
+            Csv.appendField(out, value);
+            out.append('|');
+        }
+
+        // Assert
+        assertThat(out.toString()).isEqualTo("plain||\"\"|\"a,b\"|\"say \"\"hi\"\"\"|\"two\nlines\"|\"\\.\"|");
+    }
+
+    @Test
+    void reader_ShouldReadWhatAppendFieldWrote() throws IOException {
+        // Arrange
+        String[] values = {"plain", null, "", "a,b", "say \"hi\"", "two\r\nlines"};
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) out.append(',');
+            Csv.appendField(out, values[i]);
+        }
+        out.append("\r\nlast\n");
+        Csv.Reader reader = new Csv.Reader(new StringReader(out.toString()));
+
+        // Act & Assert
+        assertThat(reader.next()).isEqualTo(Arrays.asList(values));
+        assertThat(reader.next()).containsExactly("last");
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void reader_WithUnterminatedQuote_ShouldThrow() {
+        // Arrange
+        Csv.Reader reader = new Csv.Reader(new StringReader("ok,\"never closed\n"));
+
+        // Act & Assert
+        assertThatThrownBy(reader::next)
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Unterminated quoted field in CSV record 1");
+    }
+}
@@ -0,0 +1,139 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+class CustomerCacheTests {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Customer load(int customerId) {
+        loads.incrementAndGet();
+        return customerId < 0 ? null : new Customer(customerId, "c" + customerId + "@example.com", "First", "Last", "555-0100", "1 Main St");
+    }
+
+    @Test
+    void get_ShouldLoadOnceAndThenServeFromCache() throws SQLException {
+        // Arrange
+        CustomerCache cache = new CustomerCache(10, Duration.ofMinutes(1));
+
+        // Act
+        cache.get(1, this::load);
+        Customer second = cache.get(1, this::load);
+
+        // Assert
+        assertThat(second.getEmail()).isEqualTo("c1@example.com");
+        assertThat(loads).hasValue(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHitRatio()).isEqualTo(0.5);
+    }
+
+    @Test
+    void get_ShouldReturnCopiesCallersCannotCorrupt() throws SQLException {
+        // Arrange
+        CustomerCache cache = new CustomerCache(10, Duration.ofMinutes(1));
+        cache.get(1, this::load).setEmail("changed@example.com");
+
+        // Act
+        Customer cached = cache.get(1, this::load);
+
+        // Assert
+        assertThat(cached.getEmail()).isEqualTo("c1@example.com");
+    }
+
+    @Test
+    void get_WithMissingCustomer_ShouldNotCacheNull() throws SQLException {
+        CustomerCache cache = new CustomerCache(10, Duration.ofMinutes(1));
+
+        assertThat(cache.get(-1, this::load)).isNull();
+        assertThat(cache.get(-1, this::load)).isNull();
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void get_AfterTtl_ShouldReload() throws SQLException {
+        // Arrange
+        CustomerCache cache = new CustomerCache(10, Duration.ZERO);
+        cache.get(1, this::load);
+
+        // Act
+        cache.get(1, this::load);
+
+        // Assert
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void put_BeyondMaxSize_ShouldEvict() {
+        // Arrange
+        CustomerCache cache = new CustomerCache(3, Duration.ofMinutes(1));
+
+        // Act
+        for (int id = 1; id <= 5; id++) {
+            cache.put(load(id));
+        }
+
+        // Assert
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.getEvictions()).isEqualTo(2);
+    }
+
+    @Test
+    void put_BeyondMaxSize_ShouldKeepEntriesReadSinceTheHandPassed() throws SQLException {
+        // Arrange
+        CustomerCache cache = new CustomerCache(3, Duration.ofMinutes(1));
+        for (int id = 1; id <= 3; id++) {
+            cache.put(load(id));
+        }
+        cache.get(1, this::load);
+
+        // Act
+        cache.put(load(4));
+        cache.put(load(5));
+
+        // Assert - 2 and 3 were evicted, 1 was spared
+        assertThat(cache.getEvictions()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(3);
+        loads.set(0);
+        cache.get(1, this::load);
+        assertThat(loads).hasValue(0);
+        cache.get(2, this::load);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void invalidate_ShouldFreeItsSlot() throws SQLException {
+        // Arrange
+        CustomerCache cache = new CustomerCache(2, Duration.ofMinutes(1));
+        cache.put(load(1));
+        cache.put(load(2));
+
+        // Act
+        cache.invalidate(1);
+        cache.put(load(3));
+
+        // Assert
+        assertThat(cache.getEvictions()).isZero();
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void invalidate_ShouldForceReload() throws SQLException {
+        // Arrange
+        CustomerCache cache = new CustomerCache(10, Duration.ofMinutes(1));
+        cache.get(1, this::load);
+
+        // Act
+        cache.invalidate(1);
+        cache.get(1, this::load);
+
+        // Assert
+        assertThat(loads).hasValue(2);
+    }
+}
@@ -0,0 +1,253 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+// One shared manager hammered from many threads, the way a server would use it
+class EcommerceManagerConcurrencyTests {
+
+    private static final String CONNECTION_STRING = "jdbc:postgresql://localhost:5432/bounteous_ecom";
+    private static final String USERNAME = "postgres";
+    private static final String PASSWORD = "postgres123";
+    private static final int THREADS = 8;
+
+    private EcommerceManager ecommerceManager;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        ecommerceManager = new EcommerceManager();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        executor.shutdownNow();
+        ecommerceManager.close();
+        try (Connection connection = DriverManager.getConnection(CONNECTION_STRING, USERNAME, PASSWORD);
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM invoices");
+            statement.executeUpdate("DELETE FROM order_items");
+            statement.executeUpdate("DELETE FROM orders");
+            statement.executeUpdate("DELETE FROM cart_items");
+            statement.executeUpdate("DELETE FROM carts");
+            statement.executeUpdate("DELETE FROM customers");
+        }
+    }
+
+    @Test
+    void addToCart_FromManyThreads_ShouldNotLoseUpdates() throws Exception {
+        // Arrange - read-then-write mode, which relies on the per-customer lock
+        int customerId = newCustomerWithCart();
+        int productId = ecommerceManager.getProducts().get(0).getId();
+
+        // Act
+        runConcurrently(THREADS * 25, () -> {
+            ecommerceManager.addToCart(customerId, productId, 1);
+            return null;
+        });
+
+        // Assert
+        assertThat(ecommerceManager.getCartByCustomerId(customerId).getItems())
+                .singleElement().extracting(CartItem::getQuantity).isEqualTo(THREADS * 25);
+    }
+
+    @Test
+    void addToCart_ForDifferentCustomers_ShouldKeepCartsSeparate() throws Exception {
+        // Arrange
+        List<Integer> customerIds = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            customerIds.add(newCustomerWithCart());
+        }
+        List<Product> products = ecommerceManager.getProducts();
+
+        // Act
+        runConcurrently(THREADS * 20, new Callable<>() {
+            private final AtomicInteger next = new AtomicInteger();
+
+            @Override
+            public Void call() throws SQLException {
+                int n = next.getAndIncrement();
+                ecommerceManager.addToCart(customerIds.get(n % THREADS), products.get(n % products.size()).getId(), 1);
+                return null;
+            }
+        });
+
+        // Assert
+        for (int customerId : customerIds) {
+            int quantity = ecommerceManager.getCartByCustomerId(customerId).getItems().stream()
+                    .mapToInt(CartItem::getQuantity).sum();
+            assertThat(quantity).isEqualTo(20);
+        }
+    }
+
+    @Test
+    void processOrder_FromManyThreads_ShouldCreateExactlyOneOrder() throws Exception {
+        // Arrange
+        int customerId = newCustomerWithCart();
+        ecommerceManager.addToCart(customerId, ecommerceManager.getProducts().get(0).getId(), 2);
+
+        // Act
+        runConcurrently(THREADS, () -> {
+            ecommerceManager.processOrder(customerId);
+            return null;
+        });
+
+        // Assert
+        assertThat(count("SELECT COUNT(*) FROM orders WHERE customer_id = " + customerId)).isEqualTo(1);
+        assertThat(ecommerceManager.getCartByCustomerId(customerId).getItems()).isEmpty();
+    }
+
+    @Test
+    void processOrder_InFlashSaleWithInventoryLedger_ShouldSellExactlyTheStock() throws Exception {
+        // Arrange - more shoppers than units, each with one unit in the cart
+        int productId = ecommerceManager.getProducts().get(0).getId();
+        Integer originalStock = ecommerceManager.getStore().findProductStock(productId);
+        ecommerceManager.updateProductStock(productId, THREADS * 2);
+        try {
+            ecommerceManager.enableInventoryLedger(3);
+            List<Integer> customerIds = new ArrayList<>();
+            for (int i = 0; i < THREADS * 3; i++) {
+                int customerId = newCustomerWithCart();
+                ecommerceManager.addToCart(customerId, productId, 1);
+                customerIds.add(customerId);
+            }
+            AtomicInteger next = new AtomicInteger();
+            AtomicInteger soldOut = new AtomicInteger();
+
+            // Act
+            runConcurrently(customerIds.size(), () -> {
+                try {
+                    ecommerceManager.processOrder(customerIds.get(next.getAndIncrement()));
+                } catch (InsufficientStockException e) {
+                    soldOut.incrementAndGet();
+                }
+                return null;
+            });
+            ecommerceManager.getInventoryLedger().returnLeases();
+
+            // Assert
+            assertThat(count("SELECT COUNT(*) FROM orders")).isEqualTo(THREADS * 2);
+            assertThat(soldOut.get()).isEqualTo(THREADS);
+            assertThat(count("SELECT stock_quantity FROM products WHERE id = " + productId)).isZero();
+        } finally {
+            ecommerceManager.updateProductStock(productId, originalStock);
+        }
+    }
+
+    @Test
+    void processOrder_WithInventoryLedgerOnASmallPool_ShouldNotWaitForASecondConnection() throws Exception {
+        // Arrange - two connections and a lease per unit, so every checkout leases while the others check out
+        ConnectionPoolSettings settings = new ConnectionPoolSettings();
+        settings.setMaxSize(2);
+        settings.setMaxWaitMillis(2_000);
+        try (ConnectionPool pool = new ConnectionPool(settings);
+             EcommerceManager manager = new EcommerceManager(pool)) {
+            int productId = manager.getProducts().get(0).getId();
+            Integer originalStock = manager.getStore().findProductStock(productId);
+            manager.updateProductStock(productId, THREADS * 2);
+            try {
+                manager.enableInventoryLedger(1);
+                List<Integer> customerIds = new ArrayList<>();
+                for (int i = 0; i < THREADS * 2; i++) {
+                    String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+                    int customerId = manager.createCustomer(email, "Small", "Pool", "555-0100", "1 Test St");
+                    manager.createCart(customerId);
+                    manager.addToCart(customerId, productId, 1);
+                    customerIds.add(customerId);
+                }
+                AtomicInteger next = new AtomicInteger();
+
+                // Act
+                runConcurrently(customerIds.size(), () -> {
+                    manager.processOrder(customerIds.get(next.getAndIncrement()));
+                    return null;
+                });
+
+                // Assert
+                assertThat(count("SELECT COUNT(*) FROM orders")).isEqualTo(THREADS * 2);
+                assertThat(count("SELECT stock_quantity FROM products WHERE id = " + productId)).isZero();
+            } finally {
+                manager.updateProductStock(productId, originalStock);
+            }
+        }
+    }
+
+    @Test
+    void processOrder_WithCheckoutBatching_ShouldCommitEveryOrderInFewerTransactions() throws Exception {
+        // Arrange
+        ecommerceManager.enableCheckoutBatching(2, THREADS, Duration.ofMillis(20));
+        int productId = ecommerceManager.getProducts().get(0).getId();
+        List<Integer> customerIds = new ArrayList<>();
+        for (int i = 0; i < THREADS * 4; i++) {
+            int customerId = newCustomerWithCart();
+            ecommerceManager.addToCart(customerId, productId, 1);
+            customerIds.add(customerId);
+        }
+        AtomicInteger next = new AtomicInteger();
+
+        // Act
+        runConcurrently(customerIds.size(), () -> {
+            assertThat(ecommerceManager.processOrder(customerIds.get(next.getAndIncrement()))).isNotNull();
+            return null;
+        });
+
+        // Assert
+        CheckoutBatcher batcher = ecommerceManager.getCheckoutBatcher();
+        assertThat(count("SELECT COUNT(*) FROM orders")).isEqualTo(THREADS * 4);
+        assertThat(count("SELECT COUNT(DISTINCT order_number) FROM orders")).isEqualTo(THREADS * 4);
+        assertThat(count("SELECT COUNT(*) FROM cart_items")).isZero();
+        assertThat(batcher.getCheckouts()).isEqualTo(THREADS * 4);
+        assertThat(batcher.getBatches()).isLessThan(THREADS * 4);
+    }
+
+    private int newCustomerWithCart() throws SQLException {
+        String email = "load" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Load", "Test", "555-0200", "1 Stress Ave");
+        ecommerceManager.createCart(customerId);
+        return customerId;
+    }
+
+    // Releases all tasks at once so they really overlap, then rethrows the first failure
+    private void runConcurrently(int tasks, Callable<Void> task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < tasks; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(CONNECTION_STRING, USERNAME, PASSWORD);
+             Statement statement = connection.createStatement()) {
+            var rs = statement.executeQuery(sql);
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
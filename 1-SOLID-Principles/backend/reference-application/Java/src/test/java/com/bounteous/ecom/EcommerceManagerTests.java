@@ -3,35 +3,58 @@ package com.bounteous.ecom;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.*;
 
 class EcommerceManagerTests {
 
-    private EcommerceManager ecommerceManager;
+    protected EcommerceManager ecommerceManager;
     private static final String CONNECTION_STRING = "jdbc:postgresql://localhost:5432/bounteous_ecom";
     private static final String USERNAME = "postgres";
     private static final String PASSWORD = "postgres123";
 
     @BeforeEach
     void setUp() {
-        ecommerceManager = new EcommerceManager();
+        ecommerceManager = createManager();
+    }
+
+    // Every manager a test creates shares the same data; subclasses run the suite against another store
+    protected EcommerceManager createManager() {
+        return new EcommerceManager();
     }
 
     @AfterEach
-    void tearDown() {
+    void tearDown() throws SQLException {
+        // Let pending side effects finish before their rows disappear
+        ecommerceManager.close();
         // Clean up test data after each test (except products table which is seeded)
         cleanupTestData();
     }
 
-    private void cleanupTestData() {
+    protected void cleanupTestData() {
         try (Connection connection = DriverManager.getConnection(CONNECTION_STRING, USERNAME, PASSWORD);
              Statement statement = connection.createStatement()) {
             
@@ -49,6 +72,83 @@ class EcommerceManagerTests {
         }
     }
 
+    private int countRows(String sql) {
+        try (Connection connection = DriverManager.getConnection(CONNECTION_STRING, USERNAME, PASSWORD);
+             Statement statement = connection.createStatement()) {
+            var rs = statement.executeQuery(sql);
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private String queryString(String sql) {
+        try (Connection connection = DriverManager.getConnection(CONNECTION_STRING, USERNAME, PASSWORD);
+             Statement statement = connection.createStatement()) {
+            var rs = statement.executeQuery(sql);
+            rs.next();
+            return rs.getString(1);
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void executeUpdate(String sql) {
+        try (Connection connection = DriverManager.getConnection(CONNECTION_STRING, USERNAME, PASSWORD);
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // What the store holds, read behind the manager's back
+
+    // All products when category is null
+    protected int countProducts(String category) {
+        return countRows(category == null
+            ? "SELECT COUNT(*) FROM products"
+            : "SELECT COUNT(*) FROM products WHERE category = '" + category + "'");
+    }
+
+    // All orders when customerId is null
+    protected int countOrders(Integer customerId) {
+        return countRows(customerId == null
+            ? "SELECT COUNT(*) FROM orders"
+            : "SELECT COUNT(*) FROM orders WHERE customer_id = " + customerId);
+    }
+
+    protected int countOrderItems(int customerId) {
+        return countRows("SELECT COUNT(*) FROM order_items oi JOIN orders o ON oi.order_id = o.id WHERE o.customer_id = " + customerId);
+    }
+
+    protected int countInvoices(int customerId) {
+        return countRows("SELECT COUNT(*) FROM invoices i JOIN orders o ON i.order_id = o.id WHERE o.customer_id = " + customerId);
+    }
+
+    protected int countCartItems(int cartId) {
+        return countRows("SELECT COUNT(*) FROM cart_items WHERE cart_id = " + cartId);
+    }
+
+    protected int sumCartQuantity(int cartId) {
+        return countRows("SELECT SUM(quantity) FROM cart_items WHERE cart_id = " + cartId);
+    }
+
+    // subtotal, tax_amount or total_amount of the customer's order as stored, e.g. "12.34"
+    protected String storedOrderAmount(int customerId, String column) {
+        return queryString("SELECT " + column + " FROM orders WHERE customer_id = " + customerId);
+    }
+
+    // Takes the invoice number this manager will generate next, so its next invoice insert fails
+    protected void occupyNextInvoiceNumber() {
+        // The manager's first block starts at the next value of invoice_number_seq
+        long hi = Long.parseLong(queryString("SELECT CASE WHEN is_called THEN last_value + 1 ELSE last_value END FROM invoice_number_seq"));
+        String invoiceNumber = "INV-" + java.time.LocalDate.now().format(java.time.format.DateTimeFormatter.BASIC_ISO_DATE)
+                + "-" + String.format("%04d", hi * NumberAllocator.DEFAULT_BLOCK_SIZE);
+        executeUpdate("INSERT INTO invoices (invoice_number, amount, total_amount) VALUES ('" + invoiceNumber + "', 0, 0)");
+    }
+
     @Test
     void getProducts_ShouldReturnListOfProducts() throws SQLException {
         // Act
@@ -61,6 +161,73 @@ class EcommerceManagerTests {
         assertThat(result).hasSizeGreaterThan(0);
     }
 
+    @Test
+    void getProducts_ShouldReturnIndependentLists() throws SQLException {
+        // Arrange
+        List<Product> first = ecommerceManager.getProducts();
+
+        // Act
+        first.clear();
+        List<Product> second = ecommerceManager.getProducts();
+
+        // Assert
+        assertThat(second).hasSize(countProducts(null));
+    }
+
+    @Test
+    void streamProducts_WithSmallFetchSize_ShouldReturnAllProductsInIdOrder() throws SQLException {
+        // Arrange
+        ProductQuery query = new ProductQuery();
+        query.setFetchSize(2);
+
+        // Act
+        List<Integer> ids;
+        try (var products = ecommerceManager.streamProducts(query)) {
+            ids = products.map(Product::getId).toList();
+        }
+
+        // Assert
+        assertThat(ids).hasSize(countProducts(null)).isSorted();
+    }
+
+    @Test
+    void getProductsPage_ShouldWalkCatalogWithKeysetPaging() throws SQLException {
+        // Arrange
+        List<Product> all = new ArrayList<>();
+        int afterId = 0;
+
+        // Act
+        List<Product> page;
+        while (!(page = ecommerceManager.getProductsPage(afterId, 3, null)).isEmpty()) {
+            assertThat(page).hasSizeLessThanOrEqualTo(3);
+            all.addAll(page);
+            afterId = page.get(page.size() - 1).getId();
+        }
+
+        // Assert
+        assertThat(all).extracting(Product::getId)
+                .containsExactlyElementsOf(ecommerceManager.getProducts().stream().map(Product::getId).toList());
+    }
+
+    @Test
+    void getProductsPage_WithCategory_ShouldFilter() throws SQLException {
+        // Act
+        List<Product> electronics = ecommerceManager.getProductsPage(0, 100, "Electronics");
+
+        // Assert
+        assertThat(electronics).hasSize(countProducts("Electronics"));
+    }
+
+    @Test
+    void getProductsPage_WithLimitBelowOne_ShouldThrow() {
+        // Act & Assert - 0 would otherwise mean the whole catalog
+        assertThatThrownBy(() -> ecommerceManager.getProductsPage(0, 0, null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Page limit must be positive: 0");
+        assertThatThrownBy(() -> ecommerceManager.getProductsPage(0, -5, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     void createCustomer_ShouldReturnCustomerId() throws SQLException {
         // Arrange
@@ -246,6 +413,143 @@ class EcommerceManagerTests {
                 .doesNotThrowAnyException();
     }
 
+    @Test
+    void addToCart_WithoutLoadingProductsFirst_ShouldUseProductCatalog() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Catalog", "User", "555-0117", "246 Cedar St");
+        ecommerceManager.createCart(customerId);
+        Product product = createManager().getProducts().get(0);
+
+        // Act
+        ecommerceManager.addToCart(customerId, product.getId(), 1);
+
+        // Assert
+        assertThat(ecommerceManager.calculateCartTotal(customerId)).isEqualTo(product.getPrice());
+        assertThat(ecommerceManager.getProductCatalog().findBySku(product.getSku()).getId()).isEqualTo(product.getId());
+    }
+
+    @Test
+    void addToCartAtomic_WithNewProduct_ShouldReturnAdded() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Atomic", "User", "555-0112", "963 Fir St");
+        ecommerceManager.createCart(customerId);
+        Product product = ecommerceManager.getProducts().get(0);
+
+        // Act
+        AddToCartResult result = ecommerceManager.addToCartAtomic(customerId, product.getId(), 2);
+
+        // Assert
+        assertThat(result).isEqualTo(AddToCartResult.ADDED);
+        assertThat(ecommerceManager.calculateCartTotal(customerId)).isEqualTo(product.getPrice() * 2);
+    }
+
+    @Test
+    void addToCartAtomic_WithExistingItem_ShouldMergeQuantity() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Atomic", "User", "555-0112", "963 Fir St");
+        ecommerceManager.createCart(customerId);
+        int productId = ecommerceManager.getProducts().get(0).getId();
+        ecommerceManager.addToCartAtomic(customerId, productId, 2);
+
+        // Act
+        AddToCartResult result = ecommerceManager.addToCartAtomic(customerId, productId, 3);
+
+        // Assert
+        assertThat(result).isEqualTo(AddToCartResult.UPDATED);
+        Cart cart = ecommerceManager.getCartByCustomerId(customerId);
+        assertThat(cart.getItems()).hasSize(1);
+        assertThat(cart.getItems().get(0).getQuantity()).isEqualTo(5);
+    }
+
+    @Test
+    void addToCartAtomic_WithMissingCustomerCartOrProduct_ShouldReportWhatIsMissing() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerWithoutCart = ecommerceManager.createCustomer(email, "Atomic", "User", "555-0112", "963 Fir St");
+        String otherEmail = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerWithCart = ecommerceManager.createCustomer(otherEmail, "Atomic", "User", "555-0113", "964 Fir St");
+        ecommerceManager.createCart(customerWithCart);
+        int productId = ecommerceManager.getProducts().get(0).getId();
+
+        // Act & Assert
+        assertThat(ecommerceManager.addToCartAtomic(99999, productId, 1)).isEqualTo(AddToCartResult.CUSTOMER_NOT_FOUND);
+        assertThat(ecommerceManager.addToCartAtomic(customerWithoutCart, productId, 1)).isEqualTo(AddToCartResult.CART_NOT_FOUND);
+        assertThat(ecommerceManager.addToCartAtomic(customerWithCart, 99999, 1)).isEqualTo(AddToCartResult.PRODUCT_NOT_FOUND);
+    }
+
+    @Test
+    void addAllToCart_ShouldUpsertEveryLineInOneRoundTrip() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Bulk", "Cart", "555-0114", "965 Fir St");
+        ecommerceManager.createCart(customerId);
+        List<Product> products = ecommerceManager.getProducts();
+        ecommerceManager.addToCartAtomic(customerId, products.get(1).getId(), 2);
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        quantities.put(products.get(2).getId(), 1);
+        quantities.put(products.get(1).getId(), 3);
+        quantities.put(99999, 4);
+        quantities.put(products.get(0).getId(), 2);
+        OperationMetrics<EcommerceManager.Operation> metrics = ecommerceManager.getOperationMetrics();
+
+        // Act
+        Map<Integer, AddToCartResult> results = ecommerceManager.addAllToCart(customerId, quantities);
+
+        // Assert
+        assertThat(results).containsExactly(
+            entry(products.get(2).getId(), AddToCartResult.ADDED),
+            entry(products.get(1).getId(), AddToCartResult.UPDATED),
+            entry(99999, AddToCartResult.PRODUCT_NOT_FOUND),
+            entry(products.get(0).getId(), AddToCartResult.ADDED));
+        Cart cart = ecommerceManager.getCartByCustomerId(customerId);
+        assertThat(cart.getItems()).hasSize(3);
+        CartItem merged = cart.getItems().stream().filter(item -> item.getProductId() == products.get(1).getId()).findFirst().orElseThrow();
+        assertThat(merged.getQuantity()).isEqualTo(5);
+        assertThat(merged.getTotalPriceCents()).isEqualTo(5 * products.get(1).getPriceCents());
+        if (ecommerceManager.getStore() instanceof PostgresStore) {
+            assertThat(metrics.snapshot(EcommerceManager.Operation.ADD_ALL_TO_CART).getRoundTrips()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void addAllToCart_WithMissingCustomerOrCart_ShouldReportItForEveryLine() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerWithoutCart = ecommerceManager.createCustomer(email, "Bulk", "Cart", "555-0115", "966 Fir St");
+        Map<Integer, Integer> quantities = Map.of(1, 1, 2, 1);
+
+        // Act & Assert
+        assertThat(ecommerceManager.addAllToCart(99999, quantities))
+            .containsOnlyKeys(1, 2)
+            .allSatisfy((productId, result) -> assertThat(result).isEqualTo(AddToCartResult.CUSTOMER_NOT_FOUND));
+        assertThat(ecommerceManager.addAllToCart(customerWithoutCart, quantities))
+            .allSatisfy((productId, result) -> assertThat(result).isEqualTo(AddToCartResult.CART_NOT_FOUND));
+        assertThat(ecommerceManager.addAllToCart(customerWithoutCart, Map.of())).isEmpty();
+    }
+
+    @Test
+    void addAllToCart_WithNonPositiveQuantity_ShouldRejectEveryLine() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Bulk", "Cart", "555-0116", "967 Fir St");
+        ecommerceManager.createCart(customerId);
+        List<Product> products = ecommerceManager.getProducts();
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        quantities.put(products.get(0).getId(), 2);
+        quantities.put(products.get(1).getId(), 0);
+
+        // Act & Assert
+        assertThatThrownBy(() -> ecommerceManager.addAllToCart(customerId, quantities))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Quantity must be positive: 0");
+        assertThatThrownBy(() -> ecommerceManager.addAllToCart(customerId, Map.of(products.get(2).getId(), -1)))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThat(ecommerceManager.getCartByCustomerId(customerId).getItems()).isEmpty();
+    }
+
     @Test
     void calculateCartTotal_WithEmptyCart_ShouldReturnZero() throws SQLException {
         // Arrange
@@ -280,6 +584,51 @@ class EcommerceManagerTests {
         assertThat(result).isEqualTo(expectedTotal);
     }
 
+    @Test
+    void getCartView_ShouldReturnLinesAndTotalsFromOneQuery() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Cart", "View", "555-0116", "655 Maple St");
+        int cartId = ecommerceManager.createCart(customerId);
+        List<Product> products = ecommerceManager.getProducts();
+        ecommerceManager.addToCart(customerId, products.get(1).getId(), 3);
+        ecommerceManager.addToCart(customerId, products.get(0).getId(), 2);
+        OperationMetrics<EcommerceManager.Operation> metrics = ecommerceManager.getOperationMetrics();
+
+        // Act
+        EcommerceStore.CartView view = ecommerceManager.getCartView(customerId);
+
+        // Assert
+        assertThat(view.cart().getId()).isEqualTo(cartId);
+        assertThat(view.cart().getItems()).extracting(CartItem::getProductId)
+            .containsExactly(products.get(1).getId(), products.get(0).getId());
+        assertThat(view.totals()).isEqualTo(new EcommerceStore.CartTotals(cartId, 2, 5,
+            3 * products.get(1).getPriceCents() + 2 * products.get(0).getPriceCents()));
+        if (ecommerceManager.getStore() instanceof PostgresStore) {
+            assertThat(metrics.snapshot(EcommerceManager.Operation.GET_CART_VIEW).getRoundTrips()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void getCartTotals_ShouldMatchCartViewAndHandleEmptyOrMissingCart() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Cart", "Badge", "555-0117", "656 Maple St");
+        int cartId = ecommerceManager.createCart(customerId);
+        EcommerceStore.CartTotals empty = ecommerceManager.getCartTotals(customerId);
+        ecommerceManager.addToCart(customerId, ecommerceManager.getProducts().get(2).getId(), 4);
+
+        // Act
+        EcommerceStore.CartTotals totals = ecommerceManager.getCartTotals(customerId);
+
+        // Assert
+        assertThat(empty).isEqualTo(new EcommerceStore.CartTotals(cartId, 0, 0, 0));
+        assertThat(totals).isEqualTo(ecommerceManager.getCartView(customerId).totals());
+        assertThat(ecommerceManager.getCartTotals(99999)).isNull();
+        assertThat(ecommerceManager.getCartView(99999)).isNull();
+        assertThat(ecommerceManager.getCartView(customerId).cart().getItems()).hasSize(1);
+    }
+
     @Test
     void processOrder_WithEmptyCart_ShouldNotThrow() throws SQLException {
         // Arrange
@@ -312,6 +661,304 @@ class EcommerceManagerTests {
         assertThat(cartTotal).isEqualTo(0);
     }
 
+    @Test
+    void processOrder_ShouldRunSideEffectsAfterCommit() throws SQLException, InterruptedException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Order", "Async", "555-0119", "680 Birch St");
+        ecommerceManager.createCart(customerId);
+        ecommerceManager.addToCart(customerId, ecommerceManager.getProducts().get(0).getId(), 1);
+        long completedBefore = ecommerceManager.getSideEffects().getCompleted();
+
+        // Act
+        ecommerceManager.processOrder(customerId);
+
+        // Assert
+        assertThat(countOrders(customerId)).isEqualTo(1);
+        assertThat(ecommerceManager.getSideEffects().awaitIdle(Duration.ofSeconds(5))).isTrue();
+        assertThat(ecommerceManager.getSideEffects().getCompleted() - completedBefore).isEqualTo(3);
+        assertThat(ecommerceManager.getSideEffects().getDeadLetters()).isEmpty();
+    }
+
+    @Test
+    void processOrder_ShouldRecordOperationMetrics() throws SQLException, InterruptedException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Order", "Metrics", "555-0120", "681 Birch St");
+        ecommerceManager.createCart(customerId);
+        ecommerceManager.addToCart(customerId, ecommerceManager.getProducts().get(0).getId(), 2);
+        OperationMetrics<EcommerceManager.Operation> metrics = ecommerceManager.getOperationMetrics();
+
+        // Act
+        ecommerceManager.processOrder(customerId);
+        ecommerceManager.getSideEffects().awaitIdle(Duration.ofSeconds(5));
+
+        // Assert - one connection, the cart read, the order/items/invoice writes and the cart clear in one call
+        OperationSnapshot checkout = metrics.snapshot(EcommerceManager.Operation.PROCESS_ORDER);
+        assertThat(checkout.getCalls()).isEqualTo(1);
+        assertThat(checkout.getErrors()).isZero();
+        assertThat(checkout.getConnections()).isEqualTo(1);
+        assertThat(checkout.getRoundTrips()).isGreaterThanOrEqualTo(6);
+        assertThat(checkout.getRowsRead()).isGreaterThanOrEqualTo(2);
+        assertThat(checkout.getRowsWritten()).isGreaterThanOrEqualTo(4);
+        assertThat(metrics.snapshot(EcommerceManager.Operation.INVOICE_PDF).getCalls()).isEqualTo(1);
+        assertThat(metrics.snapshot(EcommerceManager.Operation.CONFIRMATION_EMAIL).getCalls()).isEqualTo(1);
+        assertThat(metrics.getSnapshotText()).contains("processOrder", "sideEffect.confirmationEmail");
+    }
+
+    @Test
+    void createCustomer_WithDuplicateEmail_ShouldRecordError() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        ecommerceManager.createCustomer(email, "First", "Customer", "555-0121", "682 Birch St");
+
+        // Act
+        assertThatThrownBy(() -> ecommerceManager.createCustomer(email, "Second", "Customer", "555-0122", "683 Birch St"))
+            .isInstanceOf(SQLException.class);
+
+        // Assert
+        OperationSnapshot createCustomer = ecommerceManager.getOperationMetrics().snapshot(EcommerceManager.Operation.CREATE_CUSTOMER);
+        assertThat(createCustomer.getCalls()).isEqualTo(2);
+        assertThat(createCustomer.getErrors()).isEqualTo(1);
+    }
+
+    @Test
+    void processOrder_WithSeveralItems_ShouldPersistOrderItemsAndInvoiceTogether() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Order", "Batch", "555-0114", "159 Oak St");
+        ecommerceManager.createCart(customerId);
+        List<Product> products = ecommerceManager.getProducts();
+        for (int i = 0; i < 3; i++) {
+            ecommerceManager.addToCart(customerId, products.get(i).getId(), i + 1);
+        }
+
+        // Act
+        ecommerceManager.processOrder(customerId);
+
+        // Assert
+        assertThat(countOrders(customerId)).isEqualTo(1);
+        assertThat(countOrderItems(customerId)).isEqualTo(3);
+        assertThat(countInvoices(customerId)).isEqualTo(1);
+    }
+
+    @Test
+    void processOrder_WhenInvoiceInsertFails_ShouldRollBackWholeCheckout() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Order", "Rollback", "555-0115", "753 Elm St");
+        ecommerceManager.createCart(customerId);
+        int productId = ecommerceManager.getProducts().get(0).getId();
+        ecommerceManager.addToCart(customerId, productId, 1);
+        occupyNextInvoiceNumber();
+
+        // Act & Assert
+        assertThatThrownBy(() -> ecommerceManager.processOrder(customerId))
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("duplicate key value violates unique constraint");
+        assertThat(countOrders(customerId)).isEqualTo(0);
+        assertThat(ecommerceManager.getCartByCustomerId(customerId).getItems()).hasSize(1);
+    }
+
+    @Test
+    void processOrder_WithCheckoutBatching_ShouldFailOnlyTheOrderThatFailed() throws Exception {
+        // Arrange - three shoppers checking out together; whichever draws the occupied invoice number fails
+        ecommerceManager.enableCheckoutBatching(1, 3, Duration.ofSeconds(2));
+        int productId = ecommerceManager.getProducts().get(0).getId();
+        List<Integer> customerIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+            int customerId = ecommerceManager.createCustomer(email, "Batch", "Shopper" + i, "555-0120", "4 Queue Ln");
+            ecommerceManager.createCart(customerId);
+            ecommerceManager.addToCart(customerId, productId, i + 1);
+            customerIds.add(customerId);
+        }
+        occupyNextInvoiceNumber();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<Future<Order>> futures = new ArrayList<>();
+
+        // Act
+        try {
+            for (int customerId : customerIds) {
+                futures.add(executor.submit(() -> ecommerceManager.processOrder(customerId)));
+            }
+            List<Integer> failed = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    assertThat(futures.get(i).get()).isNotNull();
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause()).isInstanceOf(SQLException.class)
+                            .hasMessageContaining("duplicate key value violates unique constraint");
+                    failed.add(customerIds.get(i));
+                }
+            }
+
+            // Assert - one batch, one failure, and the failed shopper's cart untouched
+            assertThat(ecommerceManager.getCheckoutBatcher().getBatches()).isEqualTo(1);
+            assertThat(failed).hasSize(1);
+            for (int customerId : customerIds) {
+                boolean placed = !failed.contains(customerId);
+                assertThat(countOrders(customerId)).isEqualTo(placed ? 1 : 0);
+                assertThat(countInvoices(customerId)).isEqualTo(placed ? 1 : 0);
+                assertThat(ecommerceManager.getCartByCustomerId(customerId).getItems()).hasSize(placed ? 0 : 1);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void processOrder_WithInventoryLedger_ShouldSellOnlyWhatIsInStock() throws SQLException {
+        // Arrange - 6 on hand, leased 2 at a time
+        int productId = ecommerceManager.getProducts().get(0).getId();
+        Integer originalStock = ecommerceManager.getStore().findProductStock(productId);
+        ecommerceManager.updateProductStock(productId, 6);
+        try {
+            ecommerceManager.enableInventoryLedger(2);
+            int first = ecommerceManager.createCustomer("test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com", "Stock", "First", "555-0118", "1 Depot Rd");
+            int second = ecommerceManager.createCustomer("test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com", "Stock", "Second", "555-0119", "2 Depot Rd");
+            ecommerceManager.createCart(first);
+            ecommerceManager.createCart(second);
+            ecommerceManager.addToCart(first, productId, 3);
+            ecommerceManager.addToCart(second, productId, 4);
+
+            // Act
+            Order placed = ecommerceManager.processOrder(first);
+
+            // Assert
+            assertThat(placed).isNotNull();
+            assertThatThrownBy(() -> ecommerceManager.processOrder(second))
+                    .isInstanceOf(InsufficientStockException.class)
+                    .hasMessageContaining("requested 4, available 3");
+            assertThat(countOrders(second)).isZero();
+            assertThat(ecommerceManager.getCartByCustomerId(second).getItems()).hasSize(1);
+            assertThat(ecommerceManager.getStore().findProductStock(productId)).isZero();
+            assertThat(ecommerceManager.getInventoryLedger().getAvailable(productId)).isEqualTo(3);
+
+            // Act
+            ecommerceManager.getInventoryLedger().returnLeases();
+
+            // Assert
+            assertThat(ecommerceManager.getStore().findProductStock(productId)).isEqualTo(3);
+            assertThat(ecommerceManager.getInventoryLedger().getAvailable(productId)).isZero();
+        } finally {
+            ecommerceManager.updateProductStock(productId, originalStock);
+        }
+    }
+
+    @Test
+    void processOrder_WithInventoryLedgerSafetyBuffer_ShouldNotSellTheBuffer() throws SQLException {
+        // Arrange - 6 on hand, 2 held back
+        int productId = ecommerceManager.getProducts().get(0).getId();
+        Integer originalStock = ecommerceManager.getStore().findProductStock(productId);
+        ecommerceManager.updateProductStock(productId, 6);
+        try {
+            ecommerceManager.enableInventoryLedger(10, 2);
+            int customerId = ecommerceManager.createCustomer("test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com", "Stock", "Buffer", "555-0120", "3 Depot Rd");
+            ecommerceManager.createCart(customerId);
+            ecommerceManager.addToCart(customerId, productId, 5);
+
+            // Act & Assert
+            assertThatThrownBy(() -> ecommerceManager.processOrder(customerId))
+                    .isInstanceOf(InsufficientStockException.class)
+                    .hasMessageContaining("requested 5, available 4");
+            ecommerceManager.getInventoryLedger().returnLeases();
+            assertThat(ecommerceManager.getStore().findProductStock(productId)).isEqualTo(6);
+        } finally {
+            ecommerceManager.updateProductStock(productId, originalStock);
+        }
+    }
+
+    @Test
+    void processOrder_ShouldPersistExactCentTotals() throws SQLException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Order", "Cents", "555-0116", "357 Pine St");
+        ecommerceManager.createCart(customerId);
+        Product product = ecommerceManager.getProducts().get(0);
+        ecommerceManager.addToCart(customerId, product.getId(), 3);
+        BigDecimal subtotal = BigDecimal.valueOf(product.getPriceCents() * 3, 2);
+        BigDecimal tax = subtotal.multiply(new BigDecimal("0.08")).setScale(2, RoundingMode.HALF_UP);
+        BigDecimal total = subtotal.add(tax).add(new BigDecimal("9.99"));
+
+        // Act
+        ecommerceManager.processOrder(customerId);
+
+        // Assert
+        assertThat(storedOrderAmount(customerId, "subtotal")).isEqualTo(subtotal.toPlainString());
+        assertThat(storedOrderAmount(customerId, "tax_amount")).isEqualTo(tax.toPlainString());
+        assertThat(storedOrderAmount(customerId, "total_amount")).isEqualTo(total.toPlainString());
+    }
+
+    @Test
+    void addToCart_WithWriteBehindCarts_ShouldWriteCartItemsOnlyOnFlush() throws SQLException {
+        // Arrange
+        ecommerceManager.enableWriteBehindCarts(Duration.ofHours(1));
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Write", "Behind", "555-0117", "468 Cedar St");
+        int cartId = ecommerceManager.createCart(customerId);
+        int productId = ecommerceManager.getProducts().get(0).getId();
+
+        // Act
+        ecommerceManager.addToCart(customerId, productId, 1);
+        ecommerceManager.addToCart(customerId, productId, 2);
+
+        // Assert
+        assertThat(ecommerceManager.getCartByCustomerId(customerId).getItems())
+            .singleElement().extracting(CartItem::getQuantity).isEqualTo(3);
+        assertThat(countCartItems(cartId)).isZero();
+
+        ecommerceManager.getCartStore().flushAll();
+        assertThat(sumCartQuantity(cartId)).isEqualTo(3);
+        assertThat(ecommerceManager.getCartStore().getDirtyCartCount()).isZero();
+    }
+
+    @Test
+    void flushAll_WithWriteBehindCartsAndOneDeletedCart_ShouldWriteTheOthersAndDeadLetterIt() throws SQLException {
+        // Arrange - the second customer is deleted behind the cart store's back, e.g. by another instance
+        ecommerceManager.enableWriteBehindCarts(Duration.ofHours(1));
+        int productId = ecommerceManager.getProducts().get(0).getId();
+        int kept = ecommerceManager.createCustomer("test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com", "Write", "Kept", "555-0120", "1 Flush Ln");
+        int gone = ecommerceManager.createCustomer("test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com", "Write", "Gone", "555-0121", "2 Flush Ln");
+        int keptCartId = ecommerceManager.createCart(kept);
+        ecommerceManager.createCart(gone);
+        ecommerceManager.addToCart(kept, productId, 2);
+        ecommerceManager.addToCart(gone, productId, 1);
+        ecommerceManager.getStore().deleteCustomer(gone);
+
+        // Act
+        assertThatThrownBy(() -> ecommerceManager.getCartStore().flushAll())
+                .isInstanceOf(SQLException.class)
+                .extracting(e -> ((SQLException) e).getSQLState()).isEqualTo("23503");
+        ecommerceManager.getCartStore().flushAll();
+
+        // Assert
+        assertThat(sumCartQuantity(keptCartId)).isEqualTo(2);
+        assertThat(ecommerceManager.getCartStore().getDirtyCartCount()).isZero();
+        assertThat(ecommerceManager.getCartStore().getDeadLetters())
+                .singleElement().extracting(deadLetter -> deadLetter.cart().getCustomerId()).isEqualTo(gone);
+        assertThat(ecommerceManager.getCartByCustomerId(gone)).isNull();
+    }
+
+    @Test
+    void processOrder_WithWriteBehindCarts_ShouldFlushCartAndEmptyIt() throws SQLException {
+        // Arrange
+        ecommerceManager.enableWriteBehindCarts(Duration.ofHours(1));
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Write", "Checkout", "555-0118", "579 Cedar St");
+        int cartId = ecommerceManager.createCart(customerId);
+        ecommerceManager.addToCart(customerId, ecommerceManager.getProducts().get(0).getId(), 2);
+
+        // Act
+        ecommerceManager.processOrder(customerId);
+        ecommerceManager.close();
+
+        // Assert
+        assertThat(countOrderItems(customerId)).isEqualTo(1);
+        assertThat(countCartItems(cartId)).isZero();
+        assertThat(ecommerceManager.getCartByCustomerId(customerId).getItems()).isEmpty();
+    }
+
     @Test
     void updateCustomer_ShouldUpdateCustomerData() throws SQLException {
         // Arrange
@@ -355,6 +1002,56 @@ class EcommerceManagerTests {
         assertThat(deletedCustomer).isNull();
     }
 
+    @Test
+    void importCustomers_FromCsv_ShouldInsertValidRowsAndRejectTheRest(@TempDir Path dir) throws SQLException, IOException {
+        // Arrange
+        ecommerceManager.createCustomer("taken@example.com", "Already", "Here", "555-0140", "1 Import St");
+        ecommerceManager.setImportChunkSize(2);
+        String csv = "email,first_name,last_name,phone,address\n"
+            + "ada@example.com,Ada,Lovelace,555-0141,\"12 St James's Sq, London\"\n"
+            + "taken@example.com,Second,Owner,555-0142,2 Import St\n"
+            + "alan@example.com,Alan,Turing,,\n"
+            + "nolast@example.com,No,,555-0144,4 Import St\n"
+            + "grace@example.com,Grace,Hopper,555-0145,5 Import St\n"
+            + "grace@example.com,Grace,Again,555-0143,3 Import St\n"
+            + "ada@example.com,Ada,Third,555-0146,6 Import St\n";
+        Path rejects = dir.resolve("rejects.csv");
+
+        // Act
+        EcommerceStore.ImportResult result = ecommerceManager.importCustomers(new StringReader(csv), rejects);
+
+        // Assert
+        assertThat(result.imported()).isEqualTo(3);
+        assertThat(result.rejected()).isEqualTo(4);
+        assertThat(Files.readAllLines(rejects)).containsExactly(
+            "position,reason,email,first_name,last_name,phone,address",
+            "2,email already exists,taken@example.com,Second,Owner,555-0142,2 Import St",
+            "4,missing required field,nolast@example.com,No,,555-0144,4 Import St",
+            "6,duplicate email in input,grace@example.com,Grace,Again,555-0143,3 Import St",
+            "7,email already exists,ada@example.com,Ada,Third,555-0146,6 Import St");
+        assertThat(ecommerceManager.getOperationMetrics().snapshot(EcommerceManager.Operation.IMPORT_CUSTOMERS).getErrors()).isZero();
+    }
+
+    @Test
+    void importCustomers_ShouldStoreFieldsAsGiven(@TempDir Path dir) throws SQLException, IOException {
+        // Arrange
+        Iterator<Customer> rows = List.of(
+            new Customer(0, "ada@example.com", "Ada", "Lovelace", null, "12 St James's Sq, London\n\"Top floor\""),
+            new Customer(0, "x".repeat(250) + "@example.com", "Too", "Long", null, null)).iterator();
+
+        // Act
+        EcommerceStore.ImportResult result = ecommerceManager.importCustomers(rows, dir.resolve("rejects.csv"));
+
+        // Assert
+        assertThat(result).isEqualTo(new EcommerceStore.ImportResult(1, 1));
+        assertThat(Files.readAllLines(dir.resolve("rejects.csv")).get(1)).startsWith("2,value too long,xxx");
+        int customerId = ecommerceManager.createCustomer("probe@example.com", "Probe", "Customer", null, null);
+        Customer ada = ecommerceManager.getCustomer(customerId - 1);
+        assertThat(ada.getEmail()).isEqualTo("ada@example.com");
+        assertThat(ada.getPhone()).isNull();
+        assertThat(ada.getAddress()).isEqualTo("12 St James's Sq, London\n\"Top floor\"");
+    }
+
     @Test
     void generateSalesReport_ShouldNotThrow() throws SQLException {
         // Act & Assert
@@ -362,6 +1059,25 @@ class EcommerceManagerTests {
                 .doesNotThrowAnyException();
     }
 
+    @Test
+    void generateSalesReport_ShouldIncludeOrdersFromBeforeStartup() throws SQLException {
+        // Arrange - an order placed by another manager (e.g. before a restart)
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Sales", "Report", "555-0120", "791 Oak St");
+        ecommerceManager.createCart(customerId);
+        ecommerceManager.addToCart(customerId, ecommerceManager.getProducts().get(0).getId(), 1);
+        ecommerceManager.processOrder(customerId);
+        EcommerceManager restarted = createManager();
+
+        // Act
+        restarted.generateSalesReport();
+
+        // Assert
+        assertThat(restarted.getSalesMetrics().getTotals().orders())
+                .isEqualTo(countOrders(null));
+        assertThat(restarted.getSalesMetrics().last(SalesMetrics.Granularity.MINUTE, 5).orders()).isGreaterThanOrEqualTo(1);
+    }
+
     @Test
     void updateProductStock_ShouldNotThrow() throws SQLException {
         // Arrange
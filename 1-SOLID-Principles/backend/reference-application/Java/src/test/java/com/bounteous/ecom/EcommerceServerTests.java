@@ -0,0 +1,147 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.*;
+
+class EcommerceServerTests {
+
+    private static final String CONNECTION_STRING = "jdbc:postgresql://localhost:5432/bounteous_ecom";
+    private static final String USERNAME = "postgres";
+    private static final String PASSWORD = "postgres123";
+
+    private EcommerceServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new EcommerceServer(new EcommerceManager(), new InetSocketAddress("localhost", 0), 1024);
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        server.close();
+        try (Connection connection = DriverManager.getConnection(CONNECTION_STRING, USERNAME, PASSWORD);
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM invoices");
+            statement.executeUpdate("DELETE FROM order_items");
+            statement.executeUpdate("DELETE FROM orders");
+            statement.executeUpdate("DELETE FROM cart_items");
+            statement.executeUpdate("DELETE FROM carts");
+            statement.executeUpdate("DELETE FROM customers");
+        }
+    }
+
+    @Test
+    void getProducts_ShouldStreamJsonArray() throws Exception {
+        // Act
+        HttpResponse<String> response = send("GET", "/products?category=Electronics&limit=2", null);
+
+        // Assert
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.headers().firstValue("Content-Type")).hasValue("application/json");
+        assertThat(response.body()).startsWith("[{\"id\":").endsWith("}]");
+        assertThat(response.body().split("\"sku\"")).hasSize(3);
+    }
+
+    @Test
+    void getProducts_WithLimitOutOfRange_ShouldReturn400() throws Exception {
+        assertThat(send("GET", "/products?limit=0", null).statusCode()).isEqualTo(400);
+        assertThat(send("GET", "/products?limit=-1", null).statusCode()).isEqualTo(400);
+        assertThat(send("GET", "/products?limit=1001", null).statusCode()).isEqualTo(400);
+        assertThat(send("GET", "/products", null).statusCode()).isEqualTo(200);
+    }
+
+    @Test
+    void shopperFlow_ShouldCreateCustomerFillCartAndCheckOut() throws Exception {
+        // Arrange
+        String email = "http" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        HttpResponse<String> created = send("POST", "/customers",
+                "email=" + email + "&firstName=Http&lastName=Client&phone=555-0300&address=1+Web+Way");
+        int customerId = Integer.parseInt(extract(created.body(), "\"id\":(\\d+)"));
+        send("POST", "/customers/" + customerId + "/cart", "");
+        String productId = extract(send("GET", "/products?limit=1", null).body(), "\"id\":(\\d+)");
+
+        // Act
+        HttpResponse<String> added = send("POST", "/customers/" + customerId + "/cart/items", "productId=" + productId + "&quantity=2");
+        HttpResponse<String> cart = send("GET", "/customers/" + customerId + "/cart", null);
+        HttpResponse<String> totals = send("GET", "/customers/" + customerId + "/cart/totals", null);
+        HttpResponse<String> checkout = send("POST", "/customers/" + customerId + "/checkout", "");
+        HttpResponse<String> secondCheckout = send("POST", "/customers/" + customerId + "/checkout", "");
+
+        // Assert
+        assertThat(created.statusCode()).isEqualTo(201);
+        assertThat(added.statusCode()).isEqualTo(201);
+        assertThat(added.body()).isEqualTo("{\"result\":\"ADDED\"}");
+        assertThat(cart.body()).contains("\"quantity\":2").contains("\"lineCount\":1,\"itemCount\":2");
+        assertThat(totals.body()).startsWith("{\"lineCount\":1,\"itemCount\":2,\"subtotal\":");
+        assertThat(checkout.statusCode()).isEqualTo(201);
+        assertThat(checkout.body()).contains("\"orderNumber\":\"ORD-");
+        assertThat(secondCheckout.statusCode()).isEqualTo(409);
+    }
+
+    @Test
+    void createCustomer_WithDuplicateEmail_ShouldReturnConflict() throws Exception {
+        // Arrange
+        String form = "email=dup" + UUID.randomUUID().toString().substring(0, 8) + "@example.com&firstName=A&lastName=B";
+        send("POST", "/customers", form);
+
+        // Act
+        HttpResponse<String> response = send("POST", "/customers", form);
+
+        // Assert
+        assertThat(response.statusCode()).isEqualTo(409);
+        assertThat(response.body()).startsWith("{\"error\":");
+    }
+
+    @Test
+    void post_WithOversizedBody_ShouldReturn413() throws Exception {
+        // Act
+        HttpResponse<String> response = send("POST", "/customers", "email=" + "x".repeat(2000));
+
+        // Assert
+        assertThat(response.statusCode()).isEqualTo(413);
+    }
+
+    @Test
+    void unknownRouteAndWrongMethod_ShouldReturn404And405() throws Exception {
+        assertThat(send("GET", "/nothing-here", null).statusCode()).isEqualTo(404);
+        assertThat(send("DELETE", "/products", null).statusCode()).isEqualTo(405);
+        assertThat(send("GET", "/products/abc", null).statusCode()).isEqualTo(400);
+    }
+
+    private HttpResponse<String> send(String method, String path, String form) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path));
+        if (form == null) {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            request.header("Content-Type", "application/x-www-form-urlencoded")
+                    .method(method, HttpRequest.BodyPublishers.ofString(form));
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String extract(String body, String regex) {
+        Matcher matcher = Pattern.compile(regex).matcher(body);
+        assertThat(matcher.find()).as("%s in %s", regex, body).isTrue();
+        return matcher.group(1);
+    }
+}
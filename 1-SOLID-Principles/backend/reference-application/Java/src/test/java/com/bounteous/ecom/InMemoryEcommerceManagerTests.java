@@ -0,0 +1,175 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+
+// The whole EcommerceManagerTests suite against InMemoryStore, plus the rules the schema would otherwise enforce.
+// Each test gets a fresh store, so there is nothing to clean up.
+class InMemoryEcommerceManagerTests extends EcommerceManagerTests {
+
+    private final InMemoryStore store = InMemoryStore.withSampleData();
+
+    @Override
+    protected EcommerceManager createManager() {
+        return new EcommerceManager(store);
+    }
+
+    @Override
+    protected void cleanupTestData() {
+    }
+
+    @Override
+    protected int countProducts(String category) {
+        ProductQuery query = new ProductQuery();
+        query.setCategory(category);
+        try (var products = store.streamProducts(query)) {
+            return (int) products.count();
+        }
+    }
+
+    @Override
+    protected int countOrders(Integer customerId) {
+        if (customerId != null) {
+            return store.findOrders(customerId).size();
+        }
+        // Every order came from a cart, and a customer with orders cannot be deleted
+        int orders = 0;
+        for (Cart cart : store.findAllCarts()) {
+            orders += store.findOrders(cart.getCustomerId()).size();
+        }
+        return orders;
+    }
+
+    @Override
+    protected int countOrderItems(int customerId) {
+        return store.findOrders(customerId).stream().mapToInt(order -> order.getItems().size()).sum();
+    }
+
+    @Override
+    protected int countInvoices(int customerId) {
+        return (int) store.findOrders(customerId).stream()
+            .filter(order -> store.findInvoiceByOrder(order.getId()) != null)
+            .count();
+    }
+
+    @Override
+    protected int countCartItems(int cartId) {
+        return itemsOf(cartId).size();
+    }
+
+    @Override
+    protected int sumCartQuantity(int cartId) {
+        return itemsOf(cartId).stream().mapToInt(CartItem::getQuantity).sum();
+    }
+
+    @Override
+    protected String storedOrderAmount(int customerId, String column) {
+        Order order = store.findOrders(customerId).get(0);
+        long cents = switch (column) {
+            case "subtotal" -> order.getSubtotalCents();
+            case "tax_amount" -> order.getTaxAmountCents();
+            case "total_amount" -> order.getTotalAmountCents();
+            default -> throw new IllegalArgumentException(column);
+        };
+        return Money.format(cents);
+    }
+
+    @Override
+    protected void occupyNextInvoiceNumber() {
+        store.reserveInvoiceNumber(store.peekNextInvoiceNumber());
+    }
+
+    private List<CartItem> itemsOf(int cartId) {
+        return store.findAllCarts().stream()
+            .filter(cart -> cart.getId() == cartId)
+            .findFirst()
+            .map(Cart::getItems)
+            .orElse(List.of());
+    }
+
+    // No database, so no connections or round trips to count
+    @Override
+    @Test
+    void processOrder_ShouldRecordOperationMetrics() throws SQLException, InterruptedException {
+        // Arrange
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Order", "Metrics", "555-0120", "681 Birch St");
+        ecommerceManager.createCart(customerId);
+        ecommerceManager.addToCart(customerId, ecommerceManager.getProducts().get(0).getId(), 2);
+        OperationMetrics<EcommerceManager.Operation> metrics = ecommerceManager.getOperationMetrics();
+
+        // Act
+        ecommerceManager.processOrder(customerId);
+        ecommerceManager.getSideEffects().awaitIdle(Duration.ofSeconds(5));
+
+        // Assert
+        OperationSnapshot checkout = metrics.snapshot(EcommerceManager.Operation.PROCESS_ORDER);
+        assertThat(checkout.getCalls()).isEqualTo(1);
+        assertThat(checkout.getErrors()).isZero();
+        assertThat(checkout.getConnections()).isZero();
+        assertThat(checkout.getRoundTrips()).isZero();
+        assertThat(metrics.snapshot(EcommerceManager.Operation.INVOICE_PDF).getCalls()).isEqualTo(1);
+    }
+
+    @Test
+    void createCart_Twice_ShouldKeepOneCartPerCustomer() throws SQLException {
+        // Arrange
+        int customerId = store.insertCustomer("once@example.com", "One", "Cart", "555-0130", "1 Elm St");
+        int cartId = store.insertCart(customerId);
+
+        // Act & Assert
+        assertThatThrownBy(() -> store.insertCart(customerId))
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("duplicate key value violates unique constraint \"carts_customer_id_key\"")
+                .extracting(e -> ((SQLException) e).getSQLState()).isEqualTo("23505");
+        assertThat(ecommerceManager.createCart(customerId)).isEqualTo(cartId);
+    }
+
+    @Test
+    void insertCartItem_ForProductAlreadyInCart_ShouldViolateUniqueLine() throws SQLException {
+        // Arrange
+        int customerId = store.insertCustomer("line@example.com", "One", "Line", "555-0131", "2 Elm St");
+        int cartId = store.insertCart(customerId);
+        store.insertCartItem(cartId, 1, 1, 1299);
+
+        // Act & Assert
+        assertThatThrownBy(() -> store.insertCartItem(cartId, 1, 2, 1299))
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("cart_items_cart_id_product_id_key");
+        assertThat(store.findCart(customerId).getItems()).singleElement().extracting(CartItem::getQuantity).isEqualTo(1);
+    }
+
+    @Test
+    void updateCustomer_ToAnotherCustomersEmail_ShouldThrowAndKeepBoth() throws SQLException {
+        // Arrange
+        int first = ecommerceManager.createCustomer("first@example.com", "First", "Customer", "555-0132", "3 Elm St");
+        ecommerceManager.createCustomer("second@example.com", "Second", "Customer", "555-0133", "4 Elm St");
+
+        // Act & Assert
+        assertThatThrownBy(() -> ecommerceManager.updateCustomer(first, "second@example.com", "First", "Customer", "555-0132", "3 Elm St"))
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("customers_email_key");
+        assertThat(store.findCustomer(first).getEmail()).isEqualTo("first@example.com");
+    }
+
+    @Test
+    void deleteCustomer_WithOrders_ShouldViolateForeignKey() throws SQLException {
+        // Arrange
+        int customerId = ecommerceManager.createCustomer("ordered@example.com", "Has", "Orders", "555-0134", "5 Elm St");
+        ecommerceManager.createCart(customerId);
+        ecommerceManager.addToCart(customerId, 1, 1);
+        ecommerceManager.processOrder(customerId);
+
+        // Act & Assert
+        assertThatThrownBy(() -> ecommerceManager.deleteCustomer(customerId))
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("violates foreign key constraint \"orders_customer_id_fkey\"");
+        assertThat(store.findCustomer(customerId)).isNotNull();
+    }
+}
@@ -0,0 +1,61 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+class IntObjectHashMapTests {
+
+    @Test
+    void put_ShouldReturnPreviousValueAndKeepSize() {
+        // Arrange
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        map.put(7, "first");
+
+        // Act
+        String previous = map.put(7, "second");
+
+        // Assert
+        assertThat(previous).isEqualTo("first");
+        assertThat(map.get(7)).isEqualTo("second");
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test
+    void get_WithMissingKey_ShouldReturnNull() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        map.put(0, "zero");
+
+        assertThat(map.get(1)).isNull();
+        assertThat(map.get(0)).isEqualTo("zero");
+    }
+
+    @Test
+    void randomOperations_ShouldMatchHashMap() {
+        // Arrange - small key range forces long probe runs, growth and backward-shift deletes
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        // Act
+        for (int i = 0; i < 50_000; i++) {
+            int key = random.nextInt(512) - 256;
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            } else {
+                assertThat(map.put(key, i)).isEqualTo(expected.put(key, i));
+            }
+        }
+
+        // Assert
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (int key = -256; key < 256; key++) {
+            assertThat(map.get(key)).isEqualTo(expected.get(key));
+        }
+        assertThat(map.values()).containsExactlyInAnyOrderElementsOf(expected.values());
+    }
+}
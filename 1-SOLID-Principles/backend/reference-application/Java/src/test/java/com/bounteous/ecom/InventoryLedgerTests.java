@@ -0,0 +1,199 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.*;
+
+class InventoryLedgerTests {
+
+    // Sample data: product 1 has 50 units, product 2 has 200
+    private final InMemoryStore store = InMemoryStore.withSampleData();
+    private final InventoryLedger ledger = new InventoryLedger(store, 20);
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        ledger.close();
+    }
+
+    @Test
+    void reserve_ShouldLeaseABlockAndSellFromIt() throws SQLException {
+        // Act
+        InventoryLedger.Reservation reservation = ledger.reserve(List.of(line(1, 10), line(2, 3)));
+        ledger.commit(reservation);
+        ledger.commit(ledger.reserve(List.of(line(1, 5))));
+
+        // Assert - one lease of 20 per product so far
+        assertThat(store.findProductStock(1)).isEqualTo(30);
+        assertThat(store.findProductStock(2)).isEqualTo(180);
+        assertThat(ledger.getAvailable(1)).isEqualTo(5);
+
+        // Act
+        ledger.returnLeases();
+
+        // Assert - only the units sold are gone
+        assertThat(store.findProductStock(1)).isEqualTo(35);
+        assertThat(store.findProductStock(2)).isEqualTo(197);
+        assertThat(ledger.getAvailable(1)).isZero();
+    }
+
+    @Test
+    void reserve_BeyondStock_ShouldThrowAndTakeNothing() throws SQLException {
+        // Act & Assert - the second line leases all 50 units and still falls short
+        assertThatThrownBy(() -> ledger.reserve(List.of(line(2, 4), line(1, 51))))
+                .isInstanceOf(InsufficientStockException.class)
+                .hasMessage("Insufficient stock for product 1: requested 51, available 50")
+                .extracting(e -> ((SQLException) e).getSQLState()).isEqualTo("23514");
+        assertThat(ledger.getAvailable(1)).isEqualTo(50);
+        assertThat(ledger.getAvailable(2)).isEqualTo(20);
+        ledger.returnLeases();
+        assertThat(store.findProductStock(1)).isEqualTo(50);
+        assertThat(store.findProductStock(2)).isEqualTo(200);
+    }
+
+    @Test
+    void reserve_WithSafetyBuffer_ShouldNeverLeaseTheBuffer() throws SQLException {
+        // Arrange
+        try (InventoryLedger buffered = new InventoryLedger(store, 20, 10)) {
+            // Act
+            buffered.commit(buffered.reserve(List.of(line(1, 30))));
+
+            // Assert - 40 of the 50 units can be sold
+            assertThatThrownBy(() -> buffered.reserve(List.of(line(1, 11))))
+                    .isInstanceOf(InsufficientStockException.class)
+                    .hasMessageContaining("requested 11, available 10");
+            buffered.commit(buffered.reserve(List.of(line(1, 10))));
+            assertThat(store.findProductStock(1)).isEqualTo(10);
+        }
+    }
+
+    @Test
+    void release_ShouldReturnUnitsOnce() throws SQLException {
+        // Arrange
+        InventoryLedger.Reservation reservation = ledger.reserve(List.of(line(1, 15)));
+
+        // Act
+        ledger.release(reservation);
+        ledger.release(reservation);
+        ledger.commit(reservation);
+
+        // Assert
+        assertThat(ledger.getAvailable(1)).isEqualTo(20);
+    }
+
+    @Test
+    void commit_WithFewerLinesOrdered_ShouldReturnTheRestToTheLease() throws SQLException {
+        // Arrange
+        InventoryLedger.Reservation reservation = ledger.reserve(List.of(line(1, 6), line(2, 4)));
+
+        // Act
+        boolean coversMore = reservation.covers(List.of(line(1, 7)));
+        ledger.commit(reservation, List.of(line(1, 2)));
+
+        // Assert - 4 of product 1 and all of product 2 can be sold again
+        assertThat(coversMore).isFalse();
+        assertThat(reservation.covers(List.of(line(1, 6), line(2, 1)))).isTrue();
+        assertThat(ledger.getAvailable(1)).isEqualTo(18);
+        assertThat(ledger.getAvailable(2)).isEqualTo(20);
+    }
+
+    @Test
+    void reserve_OnTwoInstances_ShouldNeverSellTheSameUnitTwice() throws SQLException {
+        // Arrange - a second app instance on the same store
+        try (InventoryLedger other = new InventoryLedger(store, 20)) {
+            // Act
+            ledger.commit(ledger.reserve(List.of(line(1, 15))));
+            ledger.commit(ledger.reserve(List.of(line(1, 15))));
+
+            // Assert - two leases of 20 here, 10 left for the other instance
+            assertThatThrownBy(() -> other.reserve(List.of(line(1, 11))))
+                    .isInstanceOf(InsufficientStockException.class)
+                    .hasMessageContaining("requested 11, available 10");
+            other.commit(other.reserve(List.of(line(1, 10))));
+            assertThat(store.findProductStock(1)).isZero();
+            assertThat(ledger.getAvailable(1)).isEqualTo(10);
+        }
+    }
+
+    @Test
+    void setStock_ShouldDropTheLeaseAndSetTheCount() throws SQLException {
+        // Arrange
+        ledger.commit(ledger.reserve(List.of(line(1, 5))));
+
+        // Act
+        ledger.setStock(1, 8);
+
+        // Assert
+        assertThat(ledger.getAvailable(1)).isZero();
+        assertThat(store.findProductStock(1)).isEqualTo(8);
+        assertThatThrownBy(() -> ledger.reserve(List.of(line(1, 9))))
+                .isInstanceOf(InsufficientStockException.class);
+        assertThatThrownBy(() -> ledger.reserve(List.of(line(99999, 1))))
+                .isInstanceOf(InsufficientStockException.class);
+    }
+
+    @Test
+    void release_AfterSetStock_ShouldNotGiveBackUnitsTheRecountAlreadyCounted() throws SQLException {
+        // Arrange - 5 units reserved, then a recount of what is on the shelf (the 5 included)
+        InventoryLedger.Reservation reservation = ledger.reserve(List.of(line(1, 5)));
+        ledger.setStock(1, 8);
+        ledger.commit(ledger.reserve(List.of(line(1, 3))));
+
+        // Act
+        ledger.release(reservation);
+
+        // Assert - only the 5 units leased after the recount are left to sell
+        assertThat(ledger.getAvailable(1)).isEqualTo(5);
+        assertThat(store.findProductStock(1)).isZero();
+    }
+
+    @Test
+    void reserve_FromManyThreadsOnTwoInstances_ShouldNeverOversell() throws Exception {
+        // Arrange - 50 units, 8 threads over two instances each trying 20 single-unit checkouts
+        InventoryLedger other = new InventoryLedger(store, 7);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+
+        // Act
+        for (int t = 0; t < 8; t++) {
+            InventoryLedger instance = t % 2 == 0 ? ledger : other;
+            futures.add(executor.submit(() -> {
+                start.await();
+                int sold = 0;
+                for (int i = 0; i < 20; i++) {
+                    try {
+                        instance.commit(instance.reserve(List.of(line(1, 1))));
+                        sold++;
+                    } catch (InsufficientStockException e) {
+                        // sold out
+                    }
+                }
+                return sold;
+            }));
+        }
+        start.countDown();
+        int sold = 0;
+        for (Future<Integer> future : futures) {
+            sold += future.get();
+        }
+        executor.shutdown();
+        other.close();
+
+        // Assert
+        assertThat(sold).isEqualTo(50);
+        assertThat(store.findProductStock(1)).isZero();
+    }
+
+    private static CartItem line(int productId, int quantity) {
+        return new CartItem(0, productId, quantity, 100, 100L * quantity, "Product " + productId);
+    }
+}
@@ -0,0 +1,45 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.*;
+
+class JsonWriterTests {
+
+    @Test
+    void nestedValues_ShouldBeSeparatedCorrectly() throws IOException {
+        // Arrange
+        StringWriter out = new StringWriter();
+        JsonWriter json = new JsonWriter(out);
+
+        // Act
+        json.beginObject()
+            .name("id").value(7)
+            .name("items").beginArray()
+                .beginObject().name("price").money(129999).endObject()
+                .beginObject().name("price").money(5).endObject()
+            .endArray()
+            .name("active").value(true)
+            .name("note").value((String) null)
+            .endObject();
+
+        // Assert
+        assertThat(out.toString())
+            .isEqualTo("{\"id\":7,\"items\":[{\"price\":1299.99},{\"price\":0.05}],\"active\":true,\"note\":null}");
+    }
+
+    @Test
+    void value_ShouldEscapeQuotesBackslashesAndControlCharacters() throws IOException {
+        // Arrange
+        StringWriter out = new StringWriter();
+
+        // Act
+        new JsonWriter(out).value("Monitor 24\" \\ tab\there\n\u0001");
+
+        // Assert
+        assertThat(out.toString()).isEqualTo("\"Monitor 24\\\" \\\\ tab\\there\\n\\u0001\"");
+    }
+}
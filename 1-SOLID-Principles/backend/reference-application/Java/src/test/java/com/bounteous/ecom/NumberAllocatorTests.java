@@ -0,0 +1,121 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.*;
+
+class NumberAllocatorTests {
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ConnectionPool(new ConnectionPoolSettings());
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void next_ShouldUseDailyPrefixAndPadding() throws SQLException {
+        // Arrange
+        NumberAllocator allocator = new NumberAllocator("ORD", "order_number_seq", 10);
+
+        // Act
+        String number;
+        try (Connection conn = pool.getConnection()) {
+            number = allocator.next(conn);
+        }
+
+        // Assert
+        assertThat(number).matches("ORD-" + LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE) + "-\\d{4,}");
+    }
+
+    @Test
+    void next_FromTwoInstances_ShouldNeverCollide() throws SQLException {
+        // Arrange - two allocators on one sequence behave like two app nodes
+        NumberAllocator nodeA = new NumberAllocator("ORD", "order_number_seq", 5);
+        NumberAllocator nodeB = new NumberAllocator("ORD", "order_number_seq", 5);
+        Set<String> numbers = new HashSet<>();
+
+        // Act
+        try (Connection conn = pool.getConnection()) {
+            for (int i = 0; i < 23; i++) {
+                numbers.add(nodeA.next(conn));
+                numbers.add(nodeB.next(conn));
+            }
+        }
+
+        // Assert
+        assertThat(numbers).hasSize(46);
+    }
+
+    @Test
+    void next_AlongsideGenerateOrderNumber_ShouldNeverCollide() throws SQLException {
+        // Arrange - the SQL function in init.sql draws from the same sequence
+        NumberAllocator allocator = new NumberAllocator("ORD", "order_number_seq", NumberAllocator.DEFAULT_BLOCK_SIZE);
+        Set<String> numbers = new HashSet<>();
+
+        // Act
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT generate_order_number()")) {
+            for (int i = 0; i < 150; i++) {
+                numbers.add(allocator.next(conn));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    numbers.add(rs.getString(1));
+                }
+            }
+        }
+
+        // Assert
+        assertThat(numbers).hasSize(300);
+    }
+
+    @Test
+    void next_FromManyThreads_ShouldHandOutEachNumberOnce() throws Exception {
+        // Arrange
+        NumberAllocator allocator = new NumberAllocator("INV", "invoice_number_seq", 50);
+        Set<Long> numbers = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // Act
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                try (Connection conn = pool.getConnection()) {
+                    for (int i = 0; i < 500; i++) {
+                        numbers.add(allocator.nextNumber(conn));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Assert
+        assertThat(numbers).hasSize(4000);
+    }
+}
@@ -0,0 +1,87 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+class OperationMetricsTests {
+
+    enum TestOperation { OUTER, INNER }
+
+    @Test
+    void latencyHistogram_ShouldReportPercentilesWithinBucketPrecision() {
+        // Arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // Act - 1..1000 microseconds
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        // Assert
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(histogram.getValueAtPercentile(50)).isBetween(500_000L, 532_000L);
+        assertThat(histogram.getValueAtPercentile(99)).isBetween(990_000L, 1_000_000L);
+        assertThat(histogram.getMaxNanos()).isEqualTo(1_000_000L);
+        assertThat(histogram.getMeanNanos()).isEqualTo(500_500L);
+    }
+
+    @Test
+    void begin_WhenNested_ShouldCountOnlyTheOuterCall() {
+        // Arrange
+        OperationMetrics<TestOperation> metrics = new OperationMetrics<>(TestOperation.class);
+
+        // Act
+        OperationMetrics.Call outer = metrics.begin(TestOperation.OUTER);
+        OperationMetrics.Call inner = metrics.begin(TestOperation.INNER);
+        OperationMetrics.activeCall().roundTrip(1_000);
+        inner.fail();
+        inner.end();
+        outer.end();
+
+        // Assert
+        assertThat(metrics.snapshot(TestOperation.OUTER).getCalls()).isEqualTo(1);
+        assertThat(metrics.snapshot(TestOperation.OUTER).getRoundTrips()).isEqualTo(1);
+        assertThat(metrics.snapshot(TestOperation.OUTER).getErrors()).isZero();
+        assertThat(metrics.snapshot(TestOperation.INNER).getCalls()).isZero();
+        assertThat(OperationMetrics.activeCall()).isNull();
+    }
+
+    @Test
+    void fail_ShouldCountErrorAndResetForNextCall() {
+        // Arrange
+        OperationMetrics<TestOperation> metrics = new OperationMetrics<>(TestOperation.class);
+
+        // Act
+        OperationMetrics.Call call = metrics.begin(TestOperation.OUTER);
+        call.fail();
+        call.end();
+        metrics.begin(TestOperation.OUTER).end();
+
+        // Assert
+        assertThat(metrics.snapshot(TestOperation.OUTER).getCalls()).isEqualTo(2);
+        assertThat(metrics.snapshot(TestOperation.OUTER).getErrors()).isEqualTo(1);
+        assertThat(metrics.getSnapshotText()).contains("OUTER").doesNotContain("INNER");
+    }
+
+    @Test
+    void registerMBean_ShouldExposeOperationsUntilClosed() throws Exception {
+        // Arrange
+        OperationMetrics<TestOperation> metrics = new OperationMetrics<>(TestOperation.class);
+        metrics.begin(TestOperation.OUTER).end();
+        ObjectName name = new ObjectName("com.bounteous.ecom:type=OperationMetricsTests");
+
+        // Act
+        metrics.registerMBean(name.toString());
+        Object snapshotText = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "SnapshotText");
+        metrics.close();
+
+        // Assert
+        assertThat((String) snapshotText).contains("OUTER");
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name)).isFalse();
+    }
+}
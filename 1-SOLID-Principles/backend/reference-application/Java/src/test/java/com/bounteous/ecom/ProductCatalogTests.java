@@ -0,0 +1,48 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ProductCatalogTests {
+
+    private final InMemoryStore store = InMemoryStore.withSampleData();
+    private final ProductCatalog catalog = new ProductCatalog(store, Duration.ofMinutes(5));
+
+    @AfterEach
+    void tearDown() {
+        catalog.close();
+    }
+
+    @Test
+    void findBySku_OnFirstUse_ShouldLoadTheCatalog() throws SQLException {
+        // Act
+        Product mouse = catalog.findBySku("MOUSE-001");
+
+        // Assert
+        assertThat(mouse.getName()).isEqualTo("Wireless Mouse");
+        assertThat(catalog.findById(mouse.getId())).isSameAs(mouse);
+    }
+
+    @Test
+    void getProducts_AfterInvalidate_ShouldServeThePreviousSnapshotWhileReloading() throws Exception {
+        // Arrange
+        assertThat(catalog.getProducts()).hasSize(8);
+        store.insertProduct("Desk Lamp", "LED desk lamp", 3499, "LAMP-001", "Furniture", 40);
+
+        // Act
+        catalog.invalidate();
+
+        // Assert - the caller is not held up by the reload
+        assertThat(catalog.getProducts()).hasSize(8);
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (catalog.findBySku("LAMP-001") == null && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(catalog.getProducts()).hasSize(9);
+    }
+}
@@ -0,0 +1,192 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+
+// "Replicas" here are separate pools on the course database, i.e. replicas with no lag, plus one pool on a port
+// nothing listens on. Point the pool settings at real standbys to run the same routing against them.
+class ReplicaRouterTests {
+
+    private static final String CONNECTION_STRING = "jdbc:postgresql://localhost:5432/bounteous_ecom";
+    private static final String USERNAME = "postgres";
+    private static final String PASSWORD = "postgres123";
+
+    private final ConnectionPool primaryPool = new ConnectionPool(new ConnectionPoolSettings());
+    private final List<ConnectionPool> replicaPools = new ArrayList<>();
+    private final EcommerceManager ecommerceManager = new EcommerceManager(primaryPool);
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        ecommerceManager.close();
+        replicaPools.forEach(ConnectionPool::close);
+        primaryPool.close();
+        try (Connection connection = DriverManager.getConnection(CONNECTION_STRING, USERNAME, PASSWORD);
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM cart_items");
+            statement.executeUpdate("DELETE FROM carts");
+            statement.executeUpdate("DELETE FROM customers");
+        }
+    }
+
+    @Test
+    void getProducts_WithRoundRobin_ShouldAlternateReplicas() throws SQLException {
+        // Arrange
+        ecommerceManager.enableReadReplicas(List.of(replica(), replica()), ReplicaRouter.Selection.ROUND_ROBIN, Duration.ofSeconds(5));
+        ReplicaRouter router = ecommerceManager.getReplicaRouter();
+
+        // Act
+        for (int i = 0; i < 4; i++) {
+            assertThat(ecommerceManager.getProducts()).isNotEmpty();
+        }
+
+        // Assert
+        assertThat(router.getReplicaReads(0)).isEqualTo(2);
+        assertThat(router.getReplicaReads(1)).isEqualTo(2);
+        assertThat(router.getPrimaryReads()).isZero();
+    }
+
+    @Test
+    void getProducts_WithLeastLoaded_ShouldAvoidTheBusyReplica() throws SQLException {
+        // Arrange - replica 0 has a connection out
+        ConnectionPool busy = replica();
+        ecommerceManager.enableReadReplicas(List.of(busy, replica()), ReplicaRouter.Selection.LEAST_LOADED, Duration.ofSeconds(5));
+        ReplicaRouter router = ecommerceManager.getReplicaRouter();
+
+        // Act
+        try (Connection held = busy.getConnection()) {
+            for (int i = 0; i < 3; i++) {
+                ecommerceManager.getProducts();
+            }
+        }
+
+        // Assert
+        assertThat(router.getReplicaReads(0)).isZero();
+        assertThat(router.getReplicaReads(1)).isEqualTo(3);
+    }
+
+    @Test
+    void getCartByCustomerId_AfterOwnWrite_ShouldReadThePrimaryUntilTheWindowPasses() throws Exception {
+        // Arrange
+        ecommerceManager.enableReadReplicas(List.of(replica()), ReplicaRouter.Selection.ROUND_ROBIN, Duration.ofMillis(300));
+        ReplicaRouter router = ecommerceManager.getReplicaRouter();
+        int productId = ecommerceManager.getProducts().get(0).getId();
+        int writer = newCustomerWithCart();
+        ecommerceManager.addToCart(writer, productId, 2);
+
+        // Act & Assert - the writer reads the primary, everyone else the replica
+        assertThat(ecommerceManager.getCartByCustomerId(writer).getItems()).hasSize(1);
+        assertThat(router.getPrimaryReads()).isEqualTo(1);
+        assertThat(ecommerceManager.calculateCartTotal(writer)).isPositive();
+        assertThat(router.getPrimaryReads()).isEqualTo(2);
+        assertThat(ecommerceManager.getCartTotals(writer + 100_000)).isNull();
+        assertThat(router.getPrimaryReads()).isEqualTo(2);
+
+        // Act
+        Thread.sleep(350);
+        ecommerceManager.getCartView(writer);
+
+        // Assert
+        assertThat(router.getPrimaryReads()).isEqualTo(2);
+        assertThat(router.getReplicaReads(0)).isEqualTo(3);
+    }
+
+    @Test
+    void addToCartAtomic_ForMissingCustomer_ShouldNotPinReadsToThePrimary() throws SQLException {
+        // Arrange
+        ecommerceManager.enableReadReplicas(List.of(replica()), ReplicaRouter.Selection.ROUND_ROBIN, Duration.ofSeconds(5));
+        ReplicaRouter router = ecommerceManager.getReplicaRouter();
+        int productId = ecommerceManager.getProducts().get(0).getId();
+        int missing = newCustomerWithCart() + 100_000;
+
+        // Act
+        AddToCartResult result = ecommerceManager.addToCartAtomic(missing, productId, 1);
+        ecommerceManager.getCartTotals(missing);
+
+        // Assert - nothing was written, so the read still goes to the replica
+        assertThat(result).isEqualTo(AddToCartResult.CUSTOMER_NOT_FOUND);
+        assertThat(router.getPrimaryReads()).isZero();
+    }
+
+    @Test
+    void addAllToCart_WithNothingAdded_ShouldNotPinReadsToThePrimary() throws SQLException {
+        // Arrange
+        ecommerceManager.enableReadReplicas(List.of(replica()), ReplicaRouter.Selection.ROUND_ROBIN, Duration.ofSeconds(5));
+        ReplicaRouter router = ecommerceManager.getReplicaRouter();
+        int productId = ecommerceManager.getProducts().get(0).getId();
+        int missing = newCustomerWithCart() + 100_000;
+
+        // Act
+        Map<Integer, AddToCartResult> results = ecommerceManager.addAllToCart(missing, Map.of(productId, 1, 99999, 1));
+        ecommerceManager.getCartTotals(missing);
+
+        // Assert - nothing was written, so the read still goes to the replica
+        assertThat(results).containsValues(AddToCartResult.CUSTOMER_NOT_FOUND);
+        assertThat(router.getPrimaryReads()).isZero();
+    }
+
+    @Test
+    void processOrder_WithEmptyCart_ShouldNotPinReadsToThePrimary() throws SQLException {
+        // Arrange
+        int customerId = newCustomerWithCart();
+        ecommerceManager.enableReadReplicas(List.of(replica()), ReplicaRouter.Selection.ROUND_ROBIN, Duration.ofSeconds(5));
+        ReplicaRouter router = ecommerceManager.getReplicaRouter();
+
+        // Act
+        Order order = ecommerceManager.processOrder(customerId);
+        ecommerceManager.getCartTotals(customerId);
+
+        // Assert - no order was placed, so the read still goes to the replica
+        assertThat(order).isNull();
+        assertThat(router.getPrimaryReads()).isZero();
+    }
+
+    @Test
+    void getProducts_WhenReplicaIsDown_ShouldFallBackToThePrimaryAndSkipTheReplica() throws SQLException {
+        // Arrange
+        ConnectionPoolSettings settings = new ConnectionPoolSettings();
+        settings.setUrl("jdbc:postgresql://localhost:1/bounteous_ecom");
+        settings.setMinIdle(0);
+        ConnectionPool down = new ConnectionPool(settings);
+        replicaPools.add(down);
+        ecommerceManager.enableReadReplicas(List.of(down), ReplicaRouter.Selection.ROUND_ROBIN, Duration.ofSeconds(5));
+        ReplicaRouter router = ecommerceManager.getReplicaRouter();
+
+        // Act
+        List<Product> first = ecommerceManager.getProducts();
+        List<Product> second = ecommerceManager.getProducts();
+
+        // Assert - only the first read tried the replica
+        assertThat(first).isNotEmpty();
+        assertThat(second).hasSameSizeAs(first);
+        assertThat(router.getFailovers()).isEqualTo(1);
+        assertThat(router.getPrimaryReads()).isEqualTo(2);
+        assertThat(router.getReplicaReads(0)).isZero();
+    }
+
+    private ConnectionPool replica() {
+        ConnectionPoolSettings settings = new ConnectionPoolSettings();
+        settings.setMinIdle(1);
+        ConnectionPool pool = new ConnectionPool(settings);
+        replicaPools.add(pool);
+        return pool;
+    }
+
+    private int newCustomerWithCart() throws SQLException {
+        String email = "test" + UUID.randomUUID().toString().substring(0, 8) + "@example.com";
+        int customerId = ecommerceManager.createCustomer(email, "Replica", "Reader", "555-0121", "5 Standby Ct");
+        ecommerceManager.createCart(customerId);
+        return customerId;
+    }
+}
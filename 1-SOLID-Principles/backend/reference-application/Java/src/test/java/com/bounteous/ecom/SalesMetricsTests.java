@@ -0,0 +1,59 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+class SalesMetricsTests {
+
+    private static final long NOW = TimeUnit.DAYS.toMillis(20_000) + TimeUnit.HOURS.toMillis(13) + TimeUnit.MINUTES.toMillis(30);
+
+    @Test
+    void record_ShouldUpdateTotalsAndEveryGranularity() {
+        // Arrange
+        SalesMetrics metrics = new SalesMetrics();
+
+        // Act
+        metrics.record(NOW, 1_000);
+        metrics.record(NOW - TimeUnit.MINUTES.toMillis(5), 2_500);
+
+        // Assert
+        assertThat(metrics.getTotals()).isEqualTo(new SalesMetrics.Totals(2, 3_500));
+        assertThat(metrics.getTotals().averageCents()).isEqualTo(1_750);
+        assertThat(metrics.last(SalesMetrics.Granularity.MINUTE, 1, NOW)).isEqualTo(new SalesMetrics.Totals(1, 1_000));
+        assertThat(metrics.last(SalesMetrics.Granularity.MINUTE, 10, NOW)).isEqualTo(new SalesMetrics.Totals(2, 3_500));
+        assertThat(metrics.last(SalesMetrics.Granularity.HOUR, 1, NOW)).isEqualTo(new SalesMetrics.Totals(2, 3_500));
+        assertThat(metrics.last(SalesMetrics.Granularity.DAY, 1, NOW)).isEqualTo(new SalesMetrics.Totals(2, 3_500));
+    }
+
+    @Test
+    void last_ShouldIgnorePeriodsOutsideTheWindow() {
+        // Arrange
+        SalesMetrics metrics = new SalesMetrics();
+        metrics.record(NOW - TimeUnit.HOURS.toMillis(3), 700);
+
+        // Act
+        SalesMetrics.Totals lastHour = metrics.last(SalesMetrics.Granularity.MINUTE, 60, NOW);
+        SalesMetrics.Totals lastDay = metrics.last(SalesMetrics.Granularity.HOUR, 24, NOW);
+
+        // Assert
+        assertThat(lastHour.orders()).isZero();
+        assertThat(lastDay.orders()).isEqualTo(1);
+    }
+
+    @Test
+    void record_AfterRingWrapsAround_ShouldReplaceStaleBucket() {
+        // Arrange - one full day later the same minute slot is reused
+        SalesMetrics metrics = new SalesMetrics();
+        metrics.record(NOW - TimeUnit.DAYS.toMillis(1), 400);
+
+        // Act
+        metrics.record(NOW, 900);
+
+        // Assert
+        assertThat(metrics.last(SalesMetrics.Granularity.MINUTE, 1, NOW)).isEqualTo(new SalesMetrics.Totals(1, 900));
+        assertThat(metrics.last(SalesMetrics.Granularity.DAY, 2, NOW)).isEqualTo(new SalesMetrics.Totals(2, 1_300));
+    }
+}
@@ -0,0 +1,121 @@
+package com.bounteous.ecom;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+class SideEffectPipelineTests {
+
+    @Test
+    void submit_ShouldReturnBeforeTaskCompletes() throws InterruptedException {
+        // Arrange
+        SideEffectPipeline pipeline = new SideEffectPipeline(10, 1, Duration.ZERO);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Act
+        pipeline.submit("slow", () -> release.await(5, TimeUnit.SECONDS));
+
+        // Assert
+        assertThat(pipeline.getQueueDepth()).isEqualTo(1);
+        release.countDown();
+        assertThat(pipeline.awaitIdle(Duration.ofSeconds(5))).isTrue();
+        assertThat(pipeline.getCompleted()).isEqualTo(1);
+        pipeline.close();
+    }
+
+    @Test
+    void submit_WithTransientFailure_ShouldRetry() throws InterruptedException {
+        // Arrange
+        SideEffectPipeline pipeline = new SideEffectPipeline(10, 3, Duration.ofMillis(1));
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act
+        pipeline.submit("flaky", () -> {
+            if (attempts.incrementAndGet() < 3) throw new IllegalStateException("smtp down");
+        });
+        pipeline.awaitIdle(Duration.ofSeconds(5));
+
+        // Assert
+        assertThat(attempts).hasValue(3);
+        assertThat(pipeline.getRetries()).isEqualTo(2);
+        assertThat(pipeline.getDeadLetters()).isEmpty();
+        pipeline.close();
+    }
+
+    @Test
+    void submit_WhenAttemptsRunOut_ShouldDeadLetter() throws InterruptedException {
+        // Arrange
+        SideEffectPipeline pipeline = new SideEffectPipeline(10, 2, Duration.ofMillis(1));
+
+        // Act
+        pipeline.submit("broken", () -> { throw new IllegalStateException("no template"); });
+        pipeline.awaitIdle(Duration.ofSeconds(5));
+
+        // Assert
+        assertThat(pipeline.getDeadLetters()).singleElement().satisfies(letter -> {
+            assertThat(letter.name()).isEqualTo("broken");
+            assertThat(letter.attempts()).isEqualTo(2);
+            assertThat(letter.error()).hasMessage("no template");
+        });
+        pipeline.close();
+    }
+
+    @Test
+    void submit_BeyondCapacity_ShouldDeadLetterWithoutRunning() throws InterruptedException {
+        // Arrange
+        SideEffectPipeline pipeline = new SideEffectPipeline(1, 1, Duration.ZERO);
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline.submit("blocking", () -> release.await(5, TimeUnit.SECONDS));
+        AtomicInteger ran = new AtomicInteger();
+
+        // Act
+        pipeline.submit("overflow", ran::incrementAndGet);
+
+        // Assert
+        assertThat(ran).hasValue(0);
+        assertThat(pipeline.getOverflows()).isEqualTo(1);
+        assertThat(pipeline.getDeadLetters()).singleElement().satisfies(letter -> {
+            assertThat(letter.name()).isEqualTo("overflow");
+            assertThat(letter.attempts()).isZero();
+            assertThat(letter.error()).isInstanceOf(RejectedExecutionException.class);
+        });
+
+        // Act
+        release.countDown();
+        assertThat(pipeline.awaitIdle(Duration.ofSeconds(5))).isTrue();
+        int resubmitted = pipeline.resubmitDeadLetters();
+        pipeline.awaitIdle(Duration.ofSeconds(5));
+
+        // Assert
+        assertThat(resubmitted).isEqualTo(1);
+        assertThat(ran).hasValue(1);
+        assertThat(pipeline.getDeadLetters()).isEmpty();
+        pipeline.close();
+    }
+
+    @Test
+    void shutdown_ShouldDrainQueuedTasks() throws InterruptedException {
+        // Arrange
+        SideEffectPipeline pipeline = new SideEffectPipeline(100, 1, Duration.ZERO);
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 50; i++) {
+            pipeline.submit("task", () -> {
+                Thread.sleep(2);
+                done.incrementAndGet();
+            });
+        }
+
+        // Act
+        boolean drained = pipeline.shutdown(Duration.ofSeconds(10));
+
+        // Assert
+        assertThat(drained).isTrue();
+        assertThat(done).hasValue(50);
+    }
+}
@@ -138,19 +138,27 @@ INSERT INTO products (name, description, price, sku, category, stock_quantity) V
 ON CONFLICT (sku) DO NOTHING;
 
 -- Create a function to generate order numbers
+-- The Java app hands out order numbers in hi/lo blocks: each nextval(hi) reserves hi * 100 .. hi * 100 + 99.
+-- This function takes a whole block too and uses its first number, so the two never hand out the same one.
 CREATE OR REPLACE FUNCTION generate_order_number() RETURNS TEXT AS $$
+DECLARE
+    digits TEXT := (nextval('order_number_seq') * 100)::TEXT;
 BEGIN
-    RETURN 'ORD-' || TO_CHAR(CURRENT_DATE, 'YYYYMMDD') || '-' || LPAD(nextval('order_number_seq')::TEXT, 4, '0');
+    -- Padded to at least 4 digits, never cut: LPAD alone would truncate longer numbers into duplicates
+    RETURN 'ORD-' || TO_CHAR(CURRENT_DATE, 'YYYYMMDD') || '-' || LPAD(digits, GREATEST(4, LENGTH(digits)), '0');
 END;
 $$ LANGUAGE plpgsql;
 
 -- Create a sequence for order numbers
 CREATE SEQUENCE IF NOT EXISTS order_number_seq START 1;
 
--- Create a function to generate invoice numbers
+-- Create a function to generate invoice numbers (one hi/lo block per call, as above)
 CREATE OR REPLACE FUNCTION generate_invoice_number() RETURNS TEXT AS $$
+DECLARE
+    digits TEXT := (nextval('invoice_number_seq') * 100)::TEXT;
 BEGIN
-    RETURN 'INV-' || TO_CHAR(CURRENT_DATE, 'YYYYMMDD') || '-' || LPAD(nextval('invoice_number_seq')::TEXT, 4, '0');
+    -- Padded to at least 4 digits, never cut: LPAD alone would truncate longer numbers into duplicates
+    RETURN 'INV-' || TO_CHAR(CURRENT_DATE, 'YYYYMMDD') || '-' || LPAD(digits, GREATEST(4, LENGTH(digits)), '0');
 END;
 $$ LANGUAGE plpgsql;
 